@@ -0,0 +1,72 @@
+package ptp.pacman.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The benchmarks of BenchmarkSuite, run by JMH instead of BenchmarkRunner (see the jmh profile of pom.xml).
+ * Every benchmark of the suite is a value of the name parameter, with the same warmup and measurement times as
+ * a full run of the suite. JMH forks a JVM per benchmark, so they don't affect each other's JIT profile.
+ *
+ * Usage: mvn -P jmh verify [-Djmh.args="-p name=game.tick[map1]"]
+ *  @see ptp.pacman.bench.BenchmarkSuite
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Dfile.encoding=UTF-8", "-Djava.awt.headless=true"})
+public class SuiteBenchmarks
+{
+    /** Name of the benchmark of the suite, as in res/bench/baseline.txt. */
+    @Param({
+        "actor.move[map1]", "actor.canApplyMovement[map1]",
+        "collision.nested[512,64x2500]", "collision.grid[512,64x2500]",
+        "dijkstra.next[map1]", "dijkstra.next[map2]", "dijkstra.next[maze101]",
+        "dijkstra2.next[map1]", "dijkstra2.next[map2]", "dijkstra2.next[maze101]",
+        "astar.next[map1]", "astar.next[map2]", "astar.next[maze101]",
+        "distances.compute[map1]", "distances.compute[map2]",
+        "mapdrawer.background[map1,8px]", "mapdrawer.background[map1,16px]", "mapdrawer.background[map1,32px]",
+        "mapdrawer.draw[map1,8px]", "mapdrawer.draw[map1,16px]", "mapdrawer.draw[map1,32px]",
+        "game.tick[map1]", "game.tick[map2]", "game.tick[maze101]", "arena.tick[map1,2x64]",
+        "dijkstra2.next[maze127]", "astar.next[maze127]", "game.tick[maze127]",
+        "dijkstra2.next[maze511]", "astar.next[maze511]", "game.tick[maze511]",
+        "mapdrawer.background[maze127,8px]", "mapdrawer.draw[maze127,8px]",
+    })
+    public String name;
+
+    private Benchmark mBenchmark;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        for(Benchmark b : BenchmarkSuite.CreateBenchmarks()) {
+            if(b.getName().equals(name)) {
+                mBenchmark = b;
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Unknown benchmark: " + name);
+    }
+
+    /** Runs the benchmark once. JMH consumes the returned value, so the JIT can't remove the operation.
+     * @return The value computed by the benchmark.
+     * */
+    @org.openjdk.jmh.annotations.Benchmark
+    public long run()
+    {
+        return mBenchmark.run();
+    }
+}
@@ -1,5 +1,7 @@
 package ptp.pacman.base;
 
+import java.nio.ByteBuffer;
+
 import ptp.pacman.Vec2f;
 import ptp.pacman.Vec2i;
 
@@ -42,13 +44,26 @@ public abstract class Actor
     protected PacmanMap mMap;
     private ActorController mActorController;
     private boolean mSuccessInLastMovement;
+    // If the controller asked to be called again only at the next junction
+    private boolean mWaitingForJunction;
     protected Vec2i mInitialPosition;
+    // Controller timing for the TickProfiler: the duration of the last decision, or -1 once it has been read
+    boolean mTimeDecisions;
+    long mDecisionNanos = -1;
+    // Decisions taken by a ControllerBudget: the call to the controller (reused for all of them), when it was
+    // asked, if it was asked in this tick, if this tick's one has already been applied, and if the last one ran
+    // out of time (until the TickProfiler reads it)
+    ControllerBudget.Decision mDecision;
+    long mDecisionSubmitNanos;
+    boolean mDecisionSubmitted;
+    private boolean mDecisionTaken;
+    boolean mOverrun;
     
     /** Base actor constructor.
      * @param initialPos actor's initial position. The actor will come back here when it is eaten
      * @param speed The actor's speed
      * @param map Map where the actor moves
-     * @param controller Controller that will be called on every movement to get the next direction
+     * @param controller Controller that will be called at every cell to get the next direction
 	 * */
     public Actor(Vec2i initialPos, Speed speed, PacmanMap map, ActorController controller)
     {
@@ -73,6 +88,7 @@ public abstract class Actor
     }
     
     /** Gets the current actor position, given its current cell and its offset.
+     * It creates a new vector on every call, so getSubCellX() and getSubCellY() are preferred in loops.
      * @return The current actor position within a map.
      * */
     public Vec2f getPosition()
@@ -81,6 +97,24 @@ public abstract class Actor
                           mCell.y + (float)mOffset.y/OFFSET_STEPS_FLOAT);
     }
     
+    /** Gets the horizontal position of the actor in fixed point, in units of 1/OFFSET_STEPS of a cell.
+     * It doesn't allocate anything.
+     * @return The horizontal position, that is, cell*OFFSET_STEPS + offset.
+     * */
+    public int getSubCellX()
+    {
+        return mCell.x*OFFSET_STEPS + mOffset.x;
+    }
+    
+    /** Gets the vertical position of the actor in fixed point, in units of 1/OFFSET_STEPS of a cell.
+     * It doesn't allocate anything.
+     * @return The vertical position, that is, cell*OFFSET_STEPS + offset.
+     * */
+    public int getSubCellY()
+    {
+        return mCell.y*OFFSET_STEPS + mOffset.y;
+    }
+    
     /** Gets the current actor direction.
      * @return The current direction.
      * */
@@ -89,6 +123,14 @@ public abstract class Actor
         return mDirection;
     }
     
+    /** Gets the direction requested by the controller in the last movement (the one taken in the next intersection).
+     * @return The requested direction.
+     * */
+    public Direction getRequestedDirection()
+    {
+        return mNextDirection;
+    }
+    
     /** Sets the actor controller. The actor controller will be called in every call to move() to know
      *  where the actor should go when it is in the next intersection (=> the offset is zero).
      * @param ac The new actor controller.
@@ -119,11 +161,10 @@ public abstract class Actor
      * */
     public boolean collides(Actor c)
     {
-        // Done in two steps to improve detection (first int, then float)
+        // Done in two steps to improve detection (first cells, then fixed point positions)
         if(Math.abs(mCell.x-c.mCell.x)<1 && Math.abs(mCell.y-c.mCell.y)<1) {
-            final Vec2f p1 = getPosition();
-            final Vec2f p2 = c.getPosition();
-            if(Math.abs(p1.x-p2.x)<1 && Math.abs(p1.y-p2.y)<1)
+            if(Math.abs(getSubCellX()-c.getSubCellX())<OFFSET_STEPS &&
+                    Math.abs(getSubCellY()-c.getSubCellY())<OFFSET_STEPS)
                 return true;
             else
                 return false;
@@ -155,6 +196,15 @@ public abstract class Actor
      * */
     protected abstract boolean checkCellForWall(Vec2i coord);
     
+    /** Abstract method that has to be implemented by subclasses. Returns the directions the actor can take from
+     * the start of a cell, with the same rules as checkCellForWall(), read from the map in a single load.
+     * @param x The x coordinate of the cell.
+     * @param y The y coordinate of the cell.
+     * @return A bit for every direction that isn't blocked, in the order of Actor.DIRECTIONS.
+     * @see ptp.pacman.base.PacmanMap#getGhostExits(int, int)
+     * */
+    protected abstract int getExits(int x, int y);
+    
     /** Checks if the actor can move to the given direction.
      * @param direction The direction where the actor wants to move
      * @return If the actor can move to the given direction.
@@ -164,11 +214,16 @@ public abstract class Actor
          				  testComp = new Vec2i();
     public final boolean canApplyMovement(Direction direction)
     {
+        // At the start of a cell, where the controllers decide, the map already knows if it's blocked
+        final boolean cellStart = mOffset.isZero();
+        if(cellStart && (direction == Direction.STOPPED || (getExits(mCell.x, mCell.y) & 1 << direction.ordinal()) == 0))
+            return false;
+        
         testCell.set(mCell);
         testOffset.set(mOffset);
         
-        final int xdim = mMap.getDimensions().x,
-                  ydim = mMap.getDimensions().y;
+        final int xdim = mMap.getWidth(),
+                  ydim = mMap.getHeight();
         final int xmax = xdim-1,
                   ymax = ydim-1;
         switch(direction){
@@ -220,6 +275,8 @@ public abstract class Actor
                 return false;
         }
         
+        if(cellStart)
+            return true;
         testComp.set(testCell);
 
         if(testOffset.y>0)
@@ -236,12 +293,26 @@ public abstract class Actor
     
     /** Moves the actor depending on the speed. This method checks if the actor is in an intersection (=>offset=0)
      * and tries to apply the next desired direction. If it fails, keeps moving in the current one.
+     * The controller is only asked for the next direction there, since it's ignored between two cells,
+     * and not even there if it's a JunctionController waiting for the next junction.
      * */
     public void move()
     {
-        // 1. Get next direction from controller
-        if(mActorController != null)
-            mNextDirection = mActorController.getNextDirection();
+        // 1. Get next direction from controller, where it can be applied
+        if(mDecisionTaken) {
+            mDecisionTaken = false;
+        } else if(mActorController != null && mOffset.isZero()) {
+            final Direction corridor = mWaitingForJunction ? corridorDirection() : Direction.STOPPED;
+            if(corridor != Direction.STOPPED) {
+                mNextDirection = corridor;
+            } else if(mTimeDecisions) {
+                final long start = System.nanoTime();
+                decide();
+                mDecisionNanos = System.nanoTime() - start;
+            } else {
+                decide();
+            }
+        }
         
         // 2. Check 
         if(mNextDirection==Direction.STOPPED || !mOffset.isZero()){
@@ -276,6 +347,117 @@ public abstract class Actor
     {
     	mCell.set(mInitialPosition);
         mOffset.setZero();
+        mWaitingForJunction = false;
+        mDecisionTaken = false;
+    }
+    
+    private void decide()
+    {
+        mNextDirection = mActorController.getNextDirection();
+        mWaitingForJunction = mActorController instanceof JunctionController
+                && ((JunctionController)mActorController).waitsForJunction();
+    }
+
+    /** Makes the controller decide again at the next cell, even if it was waiting for the next junction
+     * (i.e. when what it decided on has changed).
+     * */
+    void stopWaitingForJunction()
+    {
+        mWaitingForJunction = false;
+    }
+
+    /** Tells if the controller has to be asked for a direction before the next move, for a ControllerBudget.
+     * @return If the actor is exactly on a cell, and it isn't following a corridor.
+     * */
+    boolean needsDecision()
+    {
+        return mActorController != null && mOffset.isZero()
+                && (!mWaitingForJunction || corridorDirection() == Direction.STOPPED);
+    }
+
+    /** Tells if the actor moves in the current tick (i.e. dead Pacmans don't).
+     * @return If the game moves the actor.
+     * */
+    boolean canMove()
+    {
+        return true;
+    }
+
+    /** Sets the decision of the controller for the next move, taken by a ControllerBudget.
+     * @param direction The direction returned by the controller.
+     * @param waitsForJunction If the controller waits for the next junction (see JunctionController).
+     * @param nanos The time that the controller took.
+     * */
+    void applyDecision(Direction direction, boolean waitsForJunction, long nanos)
+    {
+        mNextDirection = direction;
+        mWaitingForJunction = waitsForJunction;
+        mDecisionTaken = true;
+        if(mTimeDecisions)
+            mDecisionNanos = nanos;
+    }
+
+    /** Waits for the last decision of a ControllerBudget to finish, if it's still running late, so that nothing
+     * changes the controller state while it's saved or restored.
+     * */
+    void awaitDecision()
+    {
+        if(mDecision != null)
+            mDecision.await();
+    }
+
+    /** Keeps the last direction for the next move, because the controller ran out of time.
+     * The controller will be asked again at the next cell.
+     * */
+    void keepDirection()
+    {
+        mWaitingForJunction = false;
+        mDecisionTaken = true;
+        mOverrun = true;
+    }
+
+    // Direction that follows the corridor of the current cell, or STOPPED if it's a junction or it can't be followed
+    private Direction corridorDirection()
+    {
+        final NavigationGraph graph = mMap.getNavigationGraph();
+        if(graph == null || mDirection == Direction.STOPPED || graph.isDecisionCell(mCell.x, mCell.y))
+            return Direction.STOPPED;
+        final Direction d = graph.getCorridorDirection(mCell, mDirection);
+        return d != Direction.STOPPED && canApplyMovement(d) ? d : Direction.STOPPED;
+    }
+    
+    /** Writes the state of the actor (position, directions and speed) in a game checkpoint.
+     * Subclasses append their own state after it.
+     * @param out The checkpoint buffer.
+     * */
+    void writeState(ByteBuffer out)
+    {
+        out.putShort((short)mCell.x);
+        out.putShort((short)mCell.y);
+        out.put((byte)mOffset.x);
+        out.put((byte)mOffset.y);
+        out.put((byte)(mDirection.ordinal()<<4 | mNextDirection.ordinal()));
+        out.put((byte)(mSpeed.ordinal()<<4 | (mWaitingForJunction ? 4 : 0) | (mSuccessInLastMovement ? 2 : 0)
+                | (mIsAlive ? 1 : 0)));
+    }
+    
+    /** Reads the state written by writeState().
+     * @param in The checkpoint buffer.
+     * */
+    void readState(ByteBuffer in)
+    {
+        mCell.x = in.getShort();
+        mCell.y = in.getShort();
+        mOffset.x = in.get();
+        mOffset.y = in.get();
+        int directions = in.get();
+        mDirection = DIRECTIONS[directions>>4 & 0x0F];
+        mNextDirection = DIRECTIONS[directions & 0x0F];
+        int flags = in.get();
+        setSpeed(Speed.values()[flags>>4 & 0x0F]);
+        mWaitingForJunction = (flags & 4) != 0;
+        mSuccessInLastMovement = (flags & 2) != 0;
+        mIsAlive = (flags & 1) != 0;
     }
 
 }
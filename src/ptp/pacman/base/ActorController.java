@@ -8,6 +8,7 @@ package ptp.pacman.base;
 public interface ActorController
 {
 	/** Gets the next direction to be followed, as soon as the actor is in a intersection.
+	 * It's only called when the actor is exactly on a cell, where a new direction can be applied.
 	 * @return The next direction
 	 * */
     public Actor.Direction getNextDirection();
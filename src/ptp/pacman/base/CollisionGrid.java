@@ -0,0 +1,99 @@
+package ptp.pacman.base;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Uniform grid (a spatial hash keyed on the actors' cells) used to find the actors that may collide with another one.
+ * It is rebuilt on every tick in O(actors), and a query only looks at the 3x3 cells around the given one,
+ * instead of testing every pair of actors.
+ * The buffers are reused between ticks, so neither building nor querying allocates memory once they are big enough.
+ * */
+public final class CollisionGrid
+{
+    private final int mWidth, mHeight;
+    private final int[] mHeads;          // First actor of every cell, or -1
+    private int[] mNext = new int[0];    // Next actor in the same cell, or -1
+    private int[] mTouched = new int[0]; // Cells whose head has to be cleared in the next build
+    private int mNumTouched;
+    private int[] mCandidates = new int[0];
+    
+    /** Constructor.
+     * @param width The width of the map.
+     * @param height The height of the map.
+     * */
+    public CollisionGrid(int width, int height)
+    {
+        mWidth = width;
+        mHeight = height;
+        mHeads = new int[width*height];
+        Arrays.fill(mHeads, -1);
+    }
+    
+    /** Puts the given actors in the grid, replacing the previous ones.
+     * @param actors The actors. Queries return indexes of this list.
+     * */
+    public void build(List<? extends Actor> actors)
+    {
+        for(int i=0; i<mNumTouched; ++i)
+            mHeads[mTouched[i]] = -1;
+        mNumTouched = 0;
+        
+        final int n = actors.size();
+        if(mNext.length < n) {
+            mNext = new int[n];
+            mTouched = new int[n];
+            mCandidates = new int[n];
+        }
+        
+        // Inserted backwards, so that every cell list is sorted by index
+        for(int i=n-1; i>=0; --i) {
+            final Actor a = actors.get(i);
+            final int cell = a.mCell.y*mWidth + a.mCell.x;
+            if(mHeads[cell] == -1)
+                mTouched[mNumTouched++] = cell;
+            mNext[i] = mHeads[cell];
+            mHeads[cell] = i;
+        }
+    }
+    
+    /** Collects the actors that are in the given cell or in the adjacent ones (including the ones at the other side of the map).
+     * @param x The x coordinate of the cell.
+     * @param y The y coordinate of the cell.
+     * @return The number of candidates, that can be read with getCandidate().
+     * */
+    public int query(int x, int y)
+    {
+        int count = 0;
+        // On maps less than 3 cells wide or high the neighbourhood wraps onto itself, so every column and row is
+        // visited only once (otherwise an actor would be a candidate twice)
+        final int lastDx = Math.min(3, mWidth) - 2, lastDy = Math.min(3, mHeight) - 2;
+        for(int dy=-1; dy<=lastDy; ++dy) {
+            final int cy = (y + dy + mHeight) % mHeight;
+            for(int dx=-1; dx<=lastDx; ++dx) {
+                final int cx = (x + dx + mWidth) % mWidth;
+                for(int i=mHeads[cy*mWidth + cx]; i!=-1; i=mNext[i])
+                    mCandidates[count++] = i;
+            }
+        }
+        
+        // Keep the same order than a loop over the whole list (usually there are just a few candidates)
+        for(int i=1; i<count; ++i) {
+            final int c = mCandidates[i];
+            int j = i-1;
+            for(; j>=0 && mCandidates[j]>c; --j)
+                mCandidates[j+1] = mCandidates[j];
+            mCandidates[j+1] = c;
+        }
+        return count;
+    }
+    
+    /** Returns a candidate found by the last query.
+     * @param i The number of the candidate, lower than the value returned by query().
+     * @return The index of the actor in the list given to build().
+     * */
+    public int getCandidate(int i)
+    {
+        return mCandidates[i];
+    }
+}
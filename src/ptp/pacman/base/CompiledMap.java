@@ -0,0 +1,214 @@
+package ptp.pacman.base;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+import ptp.pacman.Util;
+import ptp.pacman.Vec2i;
+
+/**
+ * Binary format of a map with everything that is derived from it when it's read, so loading it doesn't parse
+ * nor compute anything: the cells (with their wall flags), their exits, the start positions, the index of the
+ * points, the navigation graph and, if the map has one, the distance table. A map file name ending in
+ * EXTENSION is read in this format (see PacmanMap#PacmanMap(String)).
+ *
+ * The file is mapped into memory. The distance table, which is the biggest part by far, is used in place, so
+ * only its pages that are read are loaded; the other sections are copied in bulk into the arrays of the map,
+ * since they are read on every wall test. The checksum covers everything but the distance table.
+ *
+ * File layout: header (magic, version, width, height, number of Pacman starts, ghost starts, points and graph
+ * nodes, cells of the distance table or -1, checksum), cells, exits, start cells, point index, graph and the
+ * distance table, aligned to 8 bytes. All numbers are big endian.
+ *
+ * Usage: CompiledMap map1.map [map2.map ...]  (writes map1.pmap next to every map)
+ *  @see ptp.pacman.base.PacmanMap
+ * */
+public final class CompiledMap
+{
+    /** Extension of the compiled maps. */
+    public static final String EXTENSION = ".pmap";
+
+    private static final int MAGIC = 0x504D4150; // "PMAP"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 9*4 + 8;
+
+    private CompiledMap()
+    {
+    }
+
+    /** Writes a compiled map, through a temporary file so readers never see it half written.
+     * @param map The map, with all its points.
+     * @param file The compiled map file.
+     * @throws IOException If the file can't be written.
+     * */
+    public static void Write(PacmanMap map, File file) throws IOException
+    {
+        final int width = map.getWidth(), height = map.getHeight();
+        final NavigationGraph graph = map.getNavigationGraph();
+        final DistanceTable table = map.getDistanceTable();
+        final int pacmans = map.getNumberOfPacmanStartPositions(), ghosts = map.getNumberOfGhostStartPositions();
+        final int tableCells = table != null ? table.getNumberOfCells() : -1;
+
+        ByteBuffer body = ByteBuffer.allocate(BodySize(width, height, pacmans, ghosts, graph.getNumberOfNodes()));
+        body.put(map.mCells);
+        body.put(map.mExits);
+        for(int i=0; i<pacmans; ++i)
+            body.putInt(CellOf(map.getPacmanStart(i), width));
+        for(int i=0; i<ghosts; ++i)
+            body.putInt(CellOf(map.getGhostStart(i), width));
+        NavigationGraph.Put(body, map.mPointIndex);
+        graph.write(body);
+        CRC32 crc = new CRC32();
+        crc.update(body.array());
+        body.flip();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(pacmans).putInt(ghosts)
+              .putInt(map.mTotalPoints).putInt(graph.getNumberOfNodes()).putInt(tableCells).putLong(crc.getValue());
+        header.flip();
+
+        // Zeros up to the alignment of the table, and the table
+        final int padding = Padding(HEADER_BYTES + body.remaining()) - HEADER_BYTES - body.remaining();
+        ByteBuffer distances = ByteBuffer.allocate(padding + (table != null ? 2*tableCells*tableCells : 0));
+        distances.position(padding);
+        if(table != null)
+            table.write(distances);
+        distances.flip();
+
+        File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+            try {
+                FileChannel channel = raf.getChannel();
+                while(header.hasRemaining())
+                    channel.write(header);
+                while(body.hasRemaining())
+                    channel.write(body);
+                while(distances.hasRemaining())
+                    channel.write(distances);
+            } finally {
+                raf.close();
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /** Reads a compiled map into an empty map. Called by its constructor.
+     * @param map The map, with its name and nothing else.
+     * @param file The compiled map file.
+     * @throws IOException If the file can't be read, or it isn't a compiled map (or it's damaged).
+     * */
+    static void Read(PacmanMap map, File file) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        MappedByteBuffer buffer;
+        try {
+            // The mapping stays valid once the channel is closed
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+        if(buffer.capacity() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+            throw new IOException("Not a compiled map: " + file);
+        final int width = buffer.getInt(), height = buffer.getInt(), pacmans = buffer.getInt(),
+                  ghosts = buffer.getInt(), points = buffer.getInt(), nodes = buffer.getInt(),
+                  tableCells = buffer.getInt();
+        final long checksum = buffer.getLong();
+        if(width <= 0 || height <= 0 || pacmans < 0 || ghosts < 0 || points < 0 || nodes < 0
+                || (long)width*height > Integer.MAX_VALUE/16 || tableCells > DistanceTable.MAX_CELLS)
+            throw new IOException("Wrong compiled map header: " + file);
+        final int bodySize = BodySize(width, height, pacmans, ghosts, nodes),
+                  tableOffset = Padding(HEADER_BYTES + bodySize);
+        final long size = tableOffset + (tableCells >= 0 ? 2L*tableCells*tableCells : 0);
+        if(buffer.capacity() != size)
+            throw new IOException("Wrong compiled map size: " + file);
+        ByteBuffer body = buffer.duplicate();
+        body.limit(HEADER_BYTES + bodySize);
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        if(crc.getValue() != checksum)
+            throw new IOException("Damaged compiled map: " + file);
+
+        final int cells = width*height;
+        map.mWidth = width;
+        map.mHeight = height;
+        map.mDimensions.set(width, height);
+        map.mCells = new byte[cells];
+        body.get(map.mCells);
+        map.mExits = new byte[cells];
+        body.get(map.mExits);
+        for(int i=0; i<pacmans; ++i) {
+            final int cell = body.getInt();
+            map.mStartPositions.add(new Vec2i(cell % width, cell / width));
+        }
+        for(int i=0; i<ghosts; ++i) {
+            final int cell = body.getInt();
+            map.mGhostStartPositions.add(new Vec2i(cell % width, cell / width));
+        }
+        map.mPointIndex = new int[cells];
+        NavigationGraph.Get(body, map.mPointIndex);
+        map.mTotalPoints = points;
+        map.mPoints = new long[(points + 63) >>> 6];
+        map.reset();
+        map.mNavigationGraph = NavigationGraph.Read(body, width, height, nodes);
+
+        if(tableCells >= 0) {
+            buffer.position(tableOffset);
+            try {
+                map.mDistanceTable = DistanceTable.Wrap(map, buffer.slice().asShortBuffer());
+            } catch(IllegalArgumentException e) {
+                throw new IOException(e.getMessage() + " in " + file, e);
+            }
+        }
+    }
+
+    // Everything between the header and the distance table
+    private static int BodySize(int width, int height, int pacmans, int ghosts, int nodes)
+    {
+        final int cells = width*height;
+        return 2*cells + 4*(pacmans + ghosts) + 4*cells + NavigationGraph.CompiledSize(width, height, nodes);
+    }
+
+    // Offset of the distance table: the first multiple of 8 after the body
+    private static int Padding(int offset)
+    {
+        return (offset + 7) & ~7;
+    }
+
+    private static int CellOf(Vec2i v, int width)
+    {
+        return v.y*width + v.x;
+    }
+
+    public static void main(String [] args) throws IOException
+    {
+        if(args.length < 1) {
+            System.err.println("Usage: CompiledMap map1.map [map2.map ...]");
+            System.exit(1);
+        }
+        for(String name : args) {
+            PacmanMap map = new PacmanMap(name);
+            if(map.mCells == null) {
+                System.err.println("Can't read " + name);
+                continue;
+            }
+            final String base = name.endsWith(".map") ? name.substring(0, name.length() - 4) : name;
+            File file = new File(Util.MapPathWithName(base + EXTENSION));
+            Write(map, file);
+            System.out.println(file + ": " + map.getWidth() + "x" + map.getHeight() + ", "
+                    + map.getNavigationGraph().getNumberOfNodes() + " junctions, "
+                    + (map.getDistanceTable() != null ? "with" : "without") + " distance table, "
+                    + file.length() + " bytes");
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package ptp.pacman.base;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the controllers of a game on a pool of worker threads, with a time budget for every decision and another
+ * one for all the decisions of a tick, so a slow controller can't stall the game thread (and the UI with it).
+ * When a controller doesn't answer in time, its actor keeps the direction it had, and the overrun is counted here
+ * and in the TickProfiler of the game. The late answer is thrown away, and the controller isn't called again
+ * until it has finished.
+ *
+ * The Pacmans decide first and move, and then the ghosts decide and move, as in a game without budget. The
+ * controllers of each group run at the same time, so they must only read the game (its NavigationService is
+ * synchronized) and their own state. A controller that runs late may see the following ticks of the game.
+ * Decisions depend on the wall clock, so games with a budget aren't deterministic: record them with an
+ * InputRecorder to replay them. A budget can be shared by several games.
+ *
+ * Every actor reuses the same Decision for all its calls, and the queue of the workers is an array, so deciding
+ * doesn't allocate once the game is running. Game.checkpoint() and Game.restore() wait for the late decisions
+ * to finish, so they never see a controller in the middle of a call.
+ *  @see ptp.pacman.base.Game#setControllerBudget(ControllerBudget)
+ * */
+public final class ControllerBudget
+{
+    /** Maximum number of decisions waiting for a worker, for all the games that share the budget. */
+    public static final int MAX_QUEUED_DECISIONS = 1024;
+
+    private final ThreadPoolExecutor mExecutor;
+    private final long mActorBudgetNanos, mTickBudgetNanos;
+    private final AtomicLong mDecisions = new AtomicLong(), mOverruns = new AtomicLong();
+
+    /** Constructor.
+     * @param threads The number of worker threads.
+     * @param actorBudgetMicros Maximum time for a decision, in microseconds.
+     * @param tickBudgetMicros Maximum time for all the decisions of a tick, in microseconds.
+     * */
+    public ControllerBudget(int threads, long actorBudgetMicros, long tickBudgetMicros)
+    {
+        mActorBudgetNanos = TimeUnit.MICROSECONDS.toNanos(actorBudgetMicros);
+        mTickBudgetNanos = TimeUnit.MICROSECONDS.toNanos(tickBudgetMicros);
+        mExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_QUEUED_DECISIONS), new ThreadFactory() {
+            private int mCount = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "ControllerBudget-" + (++mCount));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        mExecutor.prestartAllCoreThreads();
+    }
+
+    /** @return The maximum time for a decision, in nanoseconds. */
+    public long getActorBudgetNanos()
+    {
+        return mActorBudgetNanos;
+    }
+
+    /** @return The maximum time for all the decisions of a tick, in nanoseconds. */
+    public long getTickBudgetNanos()
+    {
+        return mTickBudgetNanos;
+    }
+
+    /** @return The number of decisions asked to the controllers. */
+    public long getNumberOfDecisions()
+    {
+        return mDecisions.get();
+    }
+
+    /** @return The number of decisions that weren't taken in time (including the ones that weren't asked
+     * because the controller was still busy with a late one). */
+    public long getNumberOfOverruns()
+    {
+        return mOverruns.get();
+    }
+
+    /** Stops the worker threads. Controllers that are still running are interrupted.
+     * */
+    public void shutdown()
+    {
+        mExecutor.shutdownNow();
+    }
+
+    /** Takes the decisions of a group of actors for the current tick, waiting for them until their deadline.
+     * Called by the game before moving them; the actors that don't need a decision are skipped.
+     * @param actors The actors.
+     * @param tickStartNanos When the decisions of the tick started (System.nanoTime()).
+     * */
+    void decide(List<? extends Actor> actors, long tickStartNanos)
+    {
+        final int count = actors.size();
+        boolean waiting = false;
+        for(int i=0; i<count; ++i) {
+            final Actor a = actors.get(i);
+            a.mDecisionSubmitted = false;
+            if(!a.canMove() || !a.needsDecision())
+                continue;
+            mDecisions.incrementAndGet();
+            if(a.mDecision == null)
+                a.mDecision = new Decision(a);
+            else if(!a.mDecision.isDone()) {
+                // Still busy with a late decision
+                overrun(a);
+                continue;
+            }
+            a.mDecision.reset();
+            try {
+                mExecutor.execute(a.mDecision);
+            } catch(RejectedExecutionException e) {
+                // Too many decisions queued (or the budget has been shut down)
+                a.mDecision.finish(null);
+                overrun(a);
+                continue;
+            }
+            a.mDecisionSubmitNanos = System.nanoTime();
+            a.mDecisionSubmitted = true;
+            waiting = true;
+        }
+        if(!waiting)
+            return;
+
+        final long tickDeadline = tickStartNanos + mTickBudgetNanos;
+        for(int i=0; i<count; ++i) {
+            final Actor a = actors.get(i);
+            if(!a.mDecisionSubmitted)
+                continue;
+            a.mDecisionSubmitted = false;
+            final Decision d = a.mDecision;
+            final long deadline = Math.min(a.mDecisionSubmitNanos + mActorBudgetNanos, tickDeadline);
+            if(!d.await(deadline)) {
+                overrun(a);
+            } else if(d.mFailure != null) {
+                // The controller failed: it's reported, and its actor goes on as if it had run late
+                d.mFailure.printStackTrace();
+                overrun(a);
+            } else {
+                a.applyDecision(d.mDirection, d.mWaitsForJunction, d.mNanos);
+            }
+        }
+    }
+
+    private void overrun(Actor a)
+    {
+        mOverruns.incrementAndGet();
+        a.keepDirection();
+    }
+
+    /** Call to the controller of an actor, run by a worker. There is one per actor, that is run again for
+     * every decision once the last one has finished.
+     * */
+    static final class Decision implements Runnable
+    {
+        private final Actor mActor;
+        private volatile boolean mDone = true;
+        // The thread that waits for the decision, to be woken up when it's done
+        private volatile Thread mWaiter;
+        private Actor.Direction mDirection;
+        private boolean mWaitsForJunction;
+        private long mNanos;
+        private Throwable mFailure;
+
+        public Decision(Actor a)
+        {
+            mActor = a;
+        }
+
+        @Override
+        public void run()
+        {
+            final long start = System.nanoTime();
+            Throwable failure = null;
+            try {
+                final ActorController controller = mActor.getActorController();
+                mDirection = controller.getNextDirection();
+                mWaitsForJunction = controller instanceof JunctionController
+                        && ((JunctionController)controller).waitsForJunction();
+            } catch(Throwable t) {
+                failure = t;
+            }
+            mNanos = System.nanoTime() - start;
+            finish(failure);
+        }
+
+        /** @return If the controller isn't running (or waiting for a worker). */
+        boolean isDone()
+        {
+            return mDone;
+        }
+
+        /** Waits until the controller has finished, however long it takes. Interruptions are kept for later.
+         * */
+        void await()
+        {
+            boolean interrupted = false;
+            mWaiter = Thread.currentThread();
+            while(!mDone) {
+                LockSupport.park(this);
+                interrupted |= Thread.interrupted();
+            }
+            mWaiter = null;
+            if(interrupted)
+                Thread.currentThread().interrupt();
+        }
+
+        private void reset()
+        {
+            mFailure = null;
+            mDone = false;
+        }
+
+        // Waits until the controller has finished or the deadline (System.nanoTime()) has passed, and tells if
+        // it has finished
+        private boolean await(long deadline)
+        {
+            mWaiter = Thread.currentThread();
+            while(!mDone) {
+                final long left = deadline - System.nanoTime();
+                if(left <= 0 || Thread.currentThread().isInterrupted())
+                    break;
+                LockSupport.parkNanos(this, left);
+            }
+            mWaiter = null;
+            return mDone;
+        }
+
+        private void finish(Throwable failure)
+        {
+            mFailure = failure;
+            mDone = true;
+            final Thread waiter = mWaiter;
+            if(waiter != null)
+                LockSupport.unpark(waiter);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package ptp.pacman.base;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.CRC32;
+
+/**
+ * Length of the shortest path between every pair of walkable cells of a map, walking as a ghost does (lines
+ * aren't walls, and the map wraps around its borders), so any distance is read in O(1). It has a row of shorts
+ * per walkable cell, computed with a breadth-first search from every cell in parallel.
+ *
+ * The table of a map loaded from a file is cached next to it (map1.map.dist for map1.map), with the checksum of
+ * the walls it was computed for and of its own data. Later loads map the file into memory instead of computing
+ * it again, as long as both checksums match. The table takes 2*n*n bytes for n walkable cells, so maps with more
+ * than MAX_CELLS of them don't get one: their users fall back to a search around every Pacman, whose memory is
+ * bounded too (see NavigationService).
+ *
+ * Walls never change, so the table is immutable and it's shared by all the copies of its map.
+ *  @see ptp.pacman.base.PacmanMap#getDistanceTable()
+ * */
+public final class DistanceTable
+{
+    /** Distance between cells that can't reach each other. */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+    /** Maximum number of walkable cells of a map with a table (2 MB). */
+    public static final int MAX_CELLS = 1024;
+    /** Extension added to the map file name to get the name of the cache file. */
+    public static final String EXTENSION = ".dist";
+
+    private static final int MAGIC = 0x504D4454; // "PMDT"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 5*4 + 2*8;
+    private static final int ROWS_PER_TASK = 16;
+
+    private final int mWidth, mCells;
+    // Row and column of every cell of the map, or -1 for walls
+    private final int [] mIndex;
+    private final ShortBuffer mDistances;
+    private final boolean mMapped;
+
+    private DistanceTable(int width, int [] index, int cells, ShortBuffer distances, boolean mapped)
+    {
+        mWidth = width;
+        mIndex = index;
+        mCells = cells;
+        mDistances = distances;
+        mMapped = mapped;
+    }
+
+    /** Returns the table of a map, reading it from its cache file if it's up to date, or computing it
+     * (and writing the cache file) otherwise. A cache file that can't be read or written is just ignored.
+     * @param map The map.
+     * @param cache The cache file, or null not to cache the table.
+     * @return The table, or null if the map has more than MAX_CELLS walkable cells.
+     * */
+    public static DistanceTable ForMap(PacmanMap map, File cache)
+    {
+        final int [] index = IndexCells(map);
+        final int cells = CountCells(index);
+        if(cells > MAX_CELLS)
+            return null;
+        final long layout = LayoutChecksum(map);
+
+        if(cache != null && cache.isFile()) {
+            try {
+                DistanceTable table = Read(map.getWidth(), index, cells, layout, cache);
+                if(table != null)
+                    return table;
+            } catch(IOException e) {
+                System.err.println("Ignoring the distance cache " + cache + ": " + e.getMessage());
+            }
+        }
+
+        short [] distances = Compute(map, index, cells);
+        if(cache != null) {
+            try {
+                Write(map, cells, layout, distances, cache);
+            } catch(IOException e) {
+                System.err.println("Can't write the distance cache " + cache + ": " + e.getMessage());
+            }
+        }
+        return new DistanceTable(map.getWidth(), index, cells, ShortBuffer.wrap(distances), false);
+    }
+
+    /** Computes the table of a map, without any cache.
+     * @param map The map.
+     * @return The table, or null if the map has more than MAX_CELLS walkable cells.
+     * */
+    public static DistanceTable Compute(PacmanMap map)
+    {
+        return ForMap(map, null);
+    }
+
+    /** Returns the table of a map stored in a compiled map, without copying it.
+     * @param map The map.
+     * @param distances The rows of the table, as written by write() (i.e. a slice of a mapped file).
+     * @return The table.
+     * @throws IllegalArgumentException If the size of the table doesn't match the walls of the map.
+     * @see ptp.pacman.base.CompiledMap
+     * */
+    static DistanceTable Wrap(PacmanMap map, ShortBuffer distances)
+    {
+        final int [] index = IndexCells(map);
+        final int cells = CountCells(index);
+        if(distances.remaining() != cells*cells)
+            throw new IllegalArgumentException("Wrong distance table: " + distances.remaining() + " distances for "
+                    + cells + " cells");
+        return new DistanceTable(map.getWidth(), index, cells, distances.slice(), distances.isDirect());
+    }
+
+    /** Writes the rows of the table, in the same order as in its cache file.
+     * @param out The buffer. It must have room for getNumberOfCells() squared shorts.
+     * */
+    void write(ByteBuffer out)
+    {
+        out.asShortBuffer().put(mDistances.duplicate());
+        out.position(out.position() + 2*mCells*mCells);
+    }
+
+    /** Returns the length of the shortest path between two cells.
+     * @param from The index of a cell (y*width + x).
+     * @param to The index of the other cell.
+     * @return The number of steps, or UNREACHABLE if a cell is a wall or they can't reach each other.
+     * */
+    public int getDistance(int from, int to)
+    {
+        final int row = mIndex[from], column = mIndex[to];
+        if(row < 0 || column < 0)
+            return UNREACHABLE;
+        final short distance = mDistances.get(row*mCells + column);
+        return distance < 0 ? UNREACHABLE : distance;
+    }
+
+    /** Returns the length of the shortest path between two cells.
+     * @param x1 The x coordinate of a cell.
+     * @param y1 The y coordinate of a cell.
+     * @param x2 The x coordinate of the other cell.
+     * @param y2 The y coordinate of the other cell.
+     * @return The number of steps, or UNREACHABLE if a cell is a wall or they can't reach each other.
+     * */
+    public int getDistance(int x1, int y1, int x2, int y2)
+    {
+        return getDistance(y1*mWidth + x1, y2*mWidth + x2);
+    }
+
+    /** @return The number of walkable cells, that is, of rows of the table. */
+    public int getNumberOfCells()
+    {
+        return mCells;
+    }
+
+    /** @return If the table was read from a file (its cache file or a compiled map) instead of computed. */
+    public boolean isMapped()
+    {
+        return mMapped;
+    }
+
+    private static int [] IndexCells(PacmanMap map)
+    {
+        final int width = map.getWidth(), height = map.getHeight();
+        int [] index = new int[width*height];
+        int cells = 0;
+        for(int cell=0; cell<index.length; ++cell)
+            index[cell] = map.isWall(cell % width, cell / width) ? -1 : cells++;
+        return index;
+    }
+
+    private static int CountCells(int [] index)
+    {
+        int cells = 0;
+        for(int i : index)
+            if(i >= 0)
+                ++cells;
+        return cells;
+    }
+
+    // Checksum of the size and the walls of a map, the only things the distances depend on
+    private static long LayoutChecksum(PacmanMap map)
+    {
+        final int width = map.getWidth(), height = map.getHeight();
+        CRC32 crc = new CRC32();
+        ByteBuffer size = ByteBuffer.allocate(8);
+        size.putInt(width).putInt(height);
+        crc.update(size.array());
+        byte [] walls = new byte[width*height];
+        for(int cell=0; cell<walls.length; ++cell)
+            walls[cell] = (byte)(map.isWall(cell % width, cell / width) ? 1 : 0);
+        crc.update(walls);
+        return crc.getValue();
+    }
+
+    private static short [] Compute(PacmanMap map, int [] index, int cells)
+    {
+        final int width = map.getWidth(), height = map.getHeight();
+        // Moves between walkable cells, by their row, in the four directions of Actor.DIRECTIONS
+        int [] adjacency = new int[4*cells];
+        for(int cell=0; cell<index.length; ++cell) {
+            if(index[cell] < 0)
+                continue;
+            for(int d=0; d<4; ++d)
+                adjacency[4*index[cell] + d] = index[NavigationGraph.Neighbour(cell, d, width, height)];
+        }
+        short [] distances = new short[cells*cells];
+        new RowsTask(adjacency, cells, distances, 0, cells).invoke();
+        return distances;
+    }
+
+    /** Task that fills a range of rows, splitting it in halves while it's big enough.
+     * */
+    private static final class RowsTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 2847309155823710121L;
+
+        private final int [] mAdjacency;
+        private final int mCells;
+        private final short [] mDistances;
+        private final int mFrom, mTo;
+
+        public RowsTask(int [] adjacency, int cells, short [] distances, int from, int to)
+        {
+            mAdjacency = adjacency;
+            mCells = cells;
+            mDistances = distances;
+            mFrom = from;
+            mTo = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(mTo - mFrom <= ROWS_PER_TASK) {
+                int [] queue = new int[mCells];
+                for(int row=mFrom; row<mTo; ++row)
+                    search(row, queue);
+            } else {
+                final int middle = (mFrom + mTo) >>> 1;
+                invokeAll(new RowsTask(mAdjacency, mCells, mDistances, mFrom, middle),
+                          new RowsTask(mAdjacency, mCells, mDistances, middle, mTo));
+            }
+        }
+
+        // Breadth-first search from a cell, writing its row
+        private void search(int source, int [] queue)
+        {
+            final int base = source*mCells;
+            Arrays.fill(mDistances, base, base + mCells, (short)-1);
+            mDistances[base + source] = 0;
+            queue[0] = source;
+            int head = 0, tail = 1;
+            while(head < tail) {
+                final int cell = queue[head++];
+                final short distance = (short)(mDistances[base + cell] + 1);
+                for(int i=4*cell, end=i+4; i<end; ++i) {
+                    final int next = mAdjacency[i];
+                    if(next >= 0 && mDistances[base + next] < 0) {
+                        mDistances[base + next] = distance;
+                        queue[tail++] = next;
+                    }
+                }
+            }
+        }
+    }
+
+    // Maps a cache file, checking that it was computed for the same walls and that its data isn't damaged
+    private static DistanceTable Read(int width, int [] index, int cells, long layout, File file) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            final long size = HEADER_BYTES + 2L*cells*cells;
+            if(channel.size() != size)
+                return null;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getInt() != width
+                    || buffer.getInt() != index.length/width || buffer.getInt() != cells || buffer.getLong() != layout)
+                return null;
+            final long checksum = buffer.getLong();
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            if(crc.getValue() != checksum)
+                return null;
+            // The mapping stays valid once the channel is closed
+            return new DistanceTable(width, index, cells, buffer.slice().asShortBuffer(), true);
+        } finally {
+            raf.close();
+        }
+    }
+
+    // Writes a cache file, through a temporary one so readers never see it half written
+    private static void Write(PacmanMap map, int cells, long layout, short [] distances, File file) throws IOException
+    {
+        ByteBuffer data = ByteBuffer.allocate(2*distances.length);
+        data.asShortBuffer().put(distances);
+        CRC32 crc = new CRC32();
+        crc.update(data.array());
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt(map.getWidth()).putInt(map.getHeight()).putInt(cells)
+              .putLong(layout).putLong(crc.getValue());
+        header.flip();
+
+        File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+            try {
+                FileChannel channel = raf.getChannel();
+                while(header.hasRemaining())
+                    channel.write(header);
+                while(data.hasRemaining())
+                    channel.write(data);
+            } finally {
+                raf.close();
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            temp.delete();
+        }
+    }
+}
@@ -1,10 +1,16 @@
 package ptp.pacman.base;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
 
+import ptp.pacman.Vec2i;
 import ptp.pacman.base.Actor.Speed;
 import ptp.pacman.controller.AbstractGhostController;
+import ptp.pacman.controller.AbstractPacmanController;
 import ptp.pacman.controller.KeyboardController;
 
 /** This is the Game main class, where action happens
@@ -14,50 +20,121 @@ import ptp.pacman.controller.KeyboardController;
 public class Game
 {
     public static int SLEEP_MILLIS = 33; // 30 fps, aprox
+    /** Simulated time (in milliseconds) that every call to step() advances the game clock. */
+    public static final int TICK_MILLIS = 33;
     private static final int GAME_TIME_SECONDS = 180; // 180
     
-    private static PacmanMap mMap;
-	private static PacmanMap mOrigMap;
+    private final PacmanMap mMap;
+	private final GameControllers mControllers;
+	private final long mSeed;
+	private final GameRandom mRandom;
+	private int mRandomStreams;
+	private Speed mGhostSpeed;
+	private int mLevel;
 	
     private final List<Pacman> mPacmans = new ArrayList<Pacman>();
     private final List<Ghost> mGhosts = new ArrayList<Ghost>();
+    private final CollisionGrid mCollisionGrid;
+    private final NavigationService mNavigation = new NavigationService(this);
     
+    // Triple buffer of snapshots: the game writes mBackSnapshot, the reader owns mFrontSnapshot, and the
+    // last published one waits in the middle until one of them swaps it
+    private GameSnapshot mBackSnapshot = new GameSnapshot();
+    private final AtomicReference<GameSnapshot> mPublishedSnapshot = new AtomicReference<GameSnapshot>(new GameSnapshot());
+    private GameSnapshot mFrontSnapshot = new GameSnapshot();
+    private long mSnapshotSequence;
+    
+    // Checkpoint format
+    private static final int CHECKPOINT_MAGIC = 0x504D434B; // "PMCK"
+    private static final byte CHECKPOINT_VERSION = 1;
+    private int mCheckpointCapacity;
+    
+    private InputRecorder mInputRecorder;
+    private TickProfiler mProfiler;
+    private ControllerBudget mControllerBudget;
     private GameStatusListener mStatusListener;
     private GameRepresentationListener mRepresentationListener;
-    private boolean mPause, mRunning;
-    private long mStartTimeMillis, mStartTimePauseMillis;
+    private volatile boolean mPause;
+    private GameScheduler mScheduler;
+    private boolean mFinished;
+    private long mTick, mStartTick;
     
-    /** Constructor. 
+    /** Constructor. Creates its own set of keyboard controllers.
      * @param mapPath File path from where load a map.
      * @param pacmans Number of Pacmans that will try to eat all points on screen.
      * @param ghosts Number of ghosts that will appear on screen.
      * */
     public Game(String mapPath, int pacmans, int ghosts, int humanGhosts, int level)
     {
-        mMap = new PacmanMap(mapPath);
-        mOrigMap = new PacmanMap(mMap);
-        mPause = false;
-
-        GameControllers.InitGhostControllers(this);
+        this(mapPath, pacmans, ghosts, humanGhosts, level, new GameControllers());
+    }
+    
+    /** Constructor. All the game state is owned by this instance, so many games can run at the same time.
+     * @param mapPath File path from where load a map. It's only read once (see MapCatalog.Default()).
+     * @param pacmans Number of Pacmans that will try to eat all points on screen.
+     * @param ghosts Number of ghosts that will appear on screen.
+     * @param controllers The keyboard controllers that human players will use (i.e. shared between the games of a window).
+     * */
+    public Game(String mapPath, int pacmans, int ghosts, int humanGhosts, int level, GameControllers controllers)
+    {
+        this(MapCatalog.Default().newMap(mapPath), level, new Random().nextLong(), controllers);
+        
+        List<AbstractGhostController> ghostControllers = GameControllers.CreateGhostControllers(this);
 
         System.out.println("HumanGhost : " + humanGhosts);
     	System.out.println("Pacmans : " + pacmans);
         // Add some KeyWord Controllers
-        for(int i=0; i<pacmans+humanGhosts && i<GameControllers.KeyboardControllers().size(); i++) {
+        final List<KeyboardController> keyboardControllers = mControllers.getKeyboardControllers();
+        for(int i=0; i<pacmans+humanGhosts && i<keyboardControllers.size(); i++) {
         	// Add PacMan Human
         	if(i<pacmans)
-        		addPacman( GameControllers.KeyboardControllers().get(i));
+        		addPacman( keyboardControllers.get(i));
         	// Add Ghost Human
         	else{
-        		addGhost( GameControllers.KeyboardControllers().get(i));
+        		addGhost( keyboardControllers.get(i));
         	}
         }
         
         // Add some Ghost with Abstract Controllers
         for(int i=humanGhosts; i<ghosts; i++) {
-        	addGhost( GameControllers.GhostControllers().get(i));
+        	addGhost( ghostControllers.get(i));
         }
+    }
+    
+    /** Constructor for a game without actors, that have to be added with addPacman() and addGhost().
+     * All the randomness of the game (ghost start positions and controllers created with createRandom())
+     * comes from the given seed, so two games with the same seed and controllers play the same way.
+     * @param mapPath File path from where load a map. It's only read once (see MapCatalog.Default()).
+     * @param level The ghost level.
+     * @param seed The seed for the game randomness.
+     * */
+    public Game(String mapPath, int level, long seed)
+    {
+        this(MapCatalog.Default().newMap(mapPath), level, seed, new GameControllers());
+    }
+    
+    /** Constructor for a game without actors on an already loaded (or generated) map.
+     * @param map The map. The game eats its points, so it can't be shared with other games.
+     * @param level The ghost level.
+     * @param seed The seed for the game randomness.
+     * @see #Game(String, int, long)
+     * */
+    public Game(PacmanMap map, int level, long seed)
+    {
+        this(map, level, seed, new GameControllers());
+    }
+    
+    private Game(PacmanMap map, int level, long seed, GameControllers controllers)
+    {
+        mMap = map;
+        mCollisionGrid = new CollisionGrid(mMap.getWidth(), mMap.getHeight());
+        mPause = false;
+        mControllers = controllers;
+        mSeed = seed;
+        mRandom = new GameRandom(MixSeed(seed));
+        mRandomStreams = 0;
         setLevel(level);
+        publishSnapshot();
     }
     
     /** Sets the level of the game. 
@@ -72,10 +149,46 @@ public class Game
     	case 3: mSpeed = Speed.FAST; break;
     	case 4: mSpeed = Speed.VERY_FAST; break;
     	}
+    	mLevel = level;
+    	mGhostSpeed = mSpeed;
     	for(Ghost g: mGhosts)
     		g.setSpeed(mSpeed);
     }
     
+    /** Returns the level of the game.
+     * @return The ghost level.
+     * */
+    public int getLevel()
+    {
+    	return mLevel;
+    }
+    
+    /** Returns the seed from which all the randomness of this game comes.
+     * @return The game seed.
+     * */
+    public long getSeed()
+    {
+    	return mSeed;
+    }
+    
+    /** Creates a new random number generator for a controller of this game.
+     * Every call returns an independent stream derived from the game seed and the number of previous calls.
+     * @return A new random number generator.
+     * */
+    public GameRandom createRandom()
+    {
+    	++mRandomStreams;
+    	return new GameRandom(MixSeed(mSeed + 0x9E3779B97F4A7C15L*mRandomStreams));
+    }
+    
+    // SplitMix64 finalizer, so that close seeds give unrelated streams
+    private static long MixSeed(long z)
+    {
+    	z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    	z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    	return z ^ (z >>> 31);
+    }
+    
     /** Returns the current map of the game.
      * @return The current map.
      * */
@@ -84,6 +197,22 @@ public class Game
         return mMap;
     }
     
+    /** Returns the distance fields to the Pacmans, shared by all the ghosts of this game.
+     * @return The navigation service of the game.
+     * */
+    public NavigationService getNavigation()
+    {
+        return mNavigation;
+    }
+    
+    /** Returns the controllers used by this game.
+     * @return The game controllers.
+     * */
+    public GameControllers getControllers()
+    {
+        return mControllers;
+    }
+    
     /** Returns the list of Pacmans that play in the game.
      * @return The list of Pacmans.
      * */
@@ -100,17 +229,22 @@ public class Game
     	return mPause;
     }
     
-    /** Adds a Pacman to the game, given a keyboard controller.
-     * @param kc The keyboard controller that will rule the Pacman's movements.
+    /** Adds a Pacman to the game, given a controller (usually a keyboard one).
+     * @param c The controller that will rule the Pacman's movements.
      * @return If this Pacman is the last one that can be added.
      * */
-    public boolean addPacman(KeyboardController kc)
+    public boolean addPacman(ActorController c)
     {
         int index = mPacmans.size();
         int pacmanPositions = mMap.getNumberOfPacmanStartPositions();
         
-        Pacman p = new Pacman(mMap.getPacmanStart(index), Speed.VERY_FAST, mMap, 1, kc);
+        Pacman p = new Pacman(mMap.getPacmanStart(index), Speed.VERY_FAST, mMap, 1, c);
+        if(AbstractPacmanController.class.isAssignableFrom(c.getClass())) {
+        	((AbstractPacmanController)c).setPacman(p);
+        }
+        p.mTimeDecisions = mProfiler != null;
         mPacmans.add(p);
+        publishSnapshot();
         
         return index+1 < pacmanPositions; 
     }
@@ -121,11 +255,38 @@ public class Game
      * */
     public void addGhost (ActorController c)
     {
-        Ghost g = new Ghost(mMap.getRandomGhostStart(), Speed.NORMAL, mMap, c);
+        Ghost g = new Ghost(mMap.getRandomGhostStart(mRandom), mGhostSpeed, mMap, c);
         if(AbstractGhostController.class.isAssignableFrom(c.getClass())) {
         	((AbstractGhostController)c).setGhost(g);
         }
+        g.mTimeDecisions = mProfiler != null;
         mGhosts.add(g);
+        publishSnapshot();
+    }
+    
+    /** Returns the closest Pacman to a cell, of those who are alive and playing the current match.
+     * It doesn't allocate anything.
+     * @param cell The cell.
+     * @return The closest Pacman, or null if there are none.
+     * */
+    public Pacman getClosestPacman(Vec2i cell)
+    {
+        int minDistanceSquaredLength = Integer.MAX_VALUE;
+        Pacman closestPacman = null;
+        for(int i=0; i<mPacmans.size(); ++i) {
+        	final Pacman p = mPacmans.get(i);
+        	if (p.isAlive() && !p.isDead()){
+	            final int dx = cell.x - p.getCell().x,
+	                      dy = cell.y - p.getCell().y;
+	            int distanceLength = dx*dx + dy*dy;
+	            if(distanceLength < minDistanceSquaredLength) {
+	                closestPacman = p;
+	                minDistanceSquaredLength = distanceLength;
+	            }
+        	}
+        }
+        
+        return closestPacman;
     }
     
     /** Returns the ghost that are in this game.
@@ -136,6 +297,24 @@ public class Game
         return mGhosts;
     }
     
+    /** Returns the most recent snapshot of the game, that stays valid (and unchanged) until the next call.
+     * It's meant to be called by a single thread (i.e. the render thread), and never blocks the game.
+     * @return The latest published snapshot.
+     * */
+    public GameSnapshot getSnapshot()
+    {
+    	if(mPublishedSnapshot.get().mSequence > mFrontSnapshot.mSequence)
+    		mFrontSnapshot = mPublishedSnapshot.getAndSet(mFrontSnapshot);
+    	return mFrontSnapshot;
+    }
+    
+    // Copies the current state into the back snapshot and publishes it
+    private void publishSnapshot()
+    {
+    	mBackSnapshot.capture(this, ++mSnapshotSequence);
+    	mBackSnapshot = mPublishedSnapshot.getAndSet(mBackSnapshot);
+    }
+    
     /** Sets the game status listener
      * @param l The new status listener.
      * */
@@ -145,6 +324,54 @@ public class Game
         l.setMapName(mMap.getName());
     }
     
+    /** Sets the recorder of the directions chosen by the controllers. It has to be set before the first tick.
+     * @param r The new input recorder, or null.
+     * */
+    public void setInputRecorder(InputRecorder r)
+    {
+        mInputRecorder = r;
+    }
+    
+    /** Sets the profiler that measures the phases of every tick and the controller decisions.
+     * Measuring has a small cost, so it's disabled by default.
+     * @param p The new profiler, or null to stop profiling.
+     * */
+    public void setProfiler(TickProfiler p)
+    {
+        mProfiler = p;
+        for(int i=0; i<mPacmans.size(); ++i)
+        	mPacmans.get(i).mTimeDecisions = p != null;
+        for(int i=0; i<mGhosts.size(); ++i)
+        	mGhosts.get(i).mTimeDecisions = p != null;
+    }
+    
+    /** Sets the time budget of the controllers. With a budget, controllers run on its worker threads, and the
+     * actors whose controller doesn't answer in time keep their direction. It's meant for live games: the game
+     * isn't deterministic any more.
+     * @param b The new budget, or null to call the controllers from the game thread (the default).
+     * @see ptp.pacman.base.ControllerBudget
+     * */
+    public void setControllerBudget(ControllerBudget b)
+    {
+        mControllerBudget = b;
+    }
+    
+    /** Returns the time budget of the controllers.
+     * @return The budget, or null if the controllers run in the game thread.
+     * */
+    public ControllerBudget getControllerBudget()
+    {
+        return mControllerBudget;
+    }
+    
+    /** Returns the profiler of the game.
+     * @return The profiler, or null if the game isn't being profiled.
+     * */
+    public TickProfiler getProfiler()
+    {
+        return mProfiler;
+    }
+    
     /** Sets the game representation listener
      * @param l The new representation listener.
      * */
@@ -171,14 +398,158 @@ public class Game
             mRepresentationListener = null;
     }
     
+    /** Returns the number of ticks simulated since the game was created.
+     * @return The current tick.
+     * */
+    public long getTick()
+    {
+    	return mTick;
+    }
+    
+    /** Returns the simulated game clock, that is, the current tick multiplied by TICK_MILLIS.
+     * It doesn't advance while the game is paused, and has nothing to do with the wall clock.
+     * @return The simulated time, in milliseconds.
+     * */
+    public long getTimeMillis()
+    {
+    	return mTick*TICK_MILLIS;
+    }
+    
+    /** Tells if the game has finished (the Pacmans won or lost).
+     * @return If the game has finished.
+     * */
+    public boolean isFinished()
+    {
+    	return mFinished;
+    }
+    
+    /** Saves the whole state of the game in a new buffer, ready to be read by restore().
+     * @see ptp.pacman.base.Game#checkpoint(ByteBuffer)
+     * @return The checkpoint, flipped (from position 0 to its size).
+     * */
+    public ByteBuffer checkpoint()
+    {
+    	if(mCheckpointCapacity == 0)
+    		mCheckpointCapacity = 64 + mMap.getWidth()*mMap.getHeight()/8 + 48*(mPacmans.size() + mGhosts.size());
+    	while(true) {
+    		ByteBuffer out = ByteBuffer.allocate(mCheckpointCapacity);
+    		try {
+    			checkpoint(out);
+    			out.flip();
+    			return out;
+    		} catch(BufferOverflowException e) {
+    			// Controllers with long paths: retry with a bigger buffer, and keep it for next time
+    			mCheckpointCapacity *= 2;
+    		}
+    	}
+    }
+    
+    /** Writes the whole state of the game at the current position of the given buffer, in a compact binary form:
+     * the clock, the game random number generator, a bitset with the remaining points, and for every actor its
+     * packed position, directions and state (points, lives and eater timer for the Pacmans), followed by
+     * the state of its controller if it's a StatefulController.
+     * The map, the actors and their controllers themselves aren't saved, so the checkpoint can only be restored
+     * in this game, or in one created the same way (same map, level, seed, actors and controllers).
+     * It must be called from the thread that runs the game, or while the game isn't running. With a ControllerBudget,
+     * it first waits for the controllers that are still running late.
+     * @param out The buffer where the checkpoint is written. It can be reused between calls to avoid allocations.
+     * @throws BufferOverflowException If the checkpoint doesn't fit in the buffer.
+     * */
+    public void checkpoint(ByteBuffer out)
+    {
+    	awaitDecisions();
+    	out.putInt(CHECKPOINT_MAGIC);
+    	out.put(CHECKPOINT_VERSION);
+    	out.putShort((short)mMap.getWidth());
+    	out.putShort((short)mMap.getHeight());
+    	out.putShort((short)mPacmans.size());
+    	out.putShort((short)mGhosts.size());
+    	out.putLong(mTick);
+    	out.putLong(mStartTick);
+    	out.put((byte)(mFinished ? 1 : 0));
+    	out.putLong(mRandom.getState());
+    	out.putInt(mRandomStreams);
+    	mMap.writePoints(out);
+    	for(int i=0; i<mPacmans.size(); ++i)
+    		writeActorState(out, mPacmans.get(i));
+    	for(int i=0; i<mGhosts.size(); ++i)
+    		writeActorState(out, mGhosts.get(i));
+    }
+    
+    /** Restores a state of the game saved with checkpoint(), that is read from the current position of the buffer.
+     * It must be called from the thread that runs the game, or while the game isn't running. With a ControllerBudget,
+     * it first waits for the controllers that are still running late, so they don't change the restored state.
+     * @param in The buffer with the checkpoint.
+     * @throws IllegalArgumentException If the checkpoint doesn't belong to a game like this one.
+     * */
+    public void restore(ByteBuffer in)
+    {
+    	if(in.getInt() != CHECKPOINT_MAGIC || in.get() != CHECKPOINT_VERSION)
+    		throw new IllegalArgumentException("Not a game checkpoint");
+    	awaitDecisions();
+    	int width = in.getShort() & 0xFFFF, height = in.getShort() & 0xFFFF;
+    	int pacmans = in.getShort() & 0xFFFF, ghosts = in.getShort() & 0xFFFF;
+    	if(width != mMap.getWidth() || height != mMap.getHeight() ||
+    			pacmans != mPacmans.size() || ghosts != mGhosts.size())
+    		throw new IllegalArgumentException("The checkpoint belongs to a different game: map " + width + "x" + height +
+    				", " + pacmans + " Pacmans and " + ghosts + " ghosts");
+    	mTick = in.getLong();
+    	mStartTick = in.getLong();
+    	mFinished = in.get() != 0;
+    	mRandom.setState(in.getLong());
+    	mRandomStreams = in.getInt();
+    	mMap.readPoints(in);
+    	for(int i=0; i<pacmans; ++i)
+    		readActorState(in, mPacmans.get(i));
+    	for(int i=0; i<ghosts; ++i)
+    		readActorState(in, mGhosts.get(i));
+    	publishSnapshot();
+    }
+    
+    // Controllers that ran late with a ControllerBudget may still be running: their state is only read or written
+    // once they have finished
+    private void awaitDecisions()
+    {
+    	for(int i=0; i<mPacmans.size(); ++i)
+    		mPacmans.get(i).awaitDecision();
+    	for(int i=0; i<mGhosts.size(); ++i)
+    		mGhosts.get(i).awaitDecision();
+    }
+    
+    // The controller state is prefixed with its length, so it can be skipped if the controller is stateless
+    private static void writeActorState(ByteBuffer out, Actor a)
+    {
+    	a.writeState(out);
+    	final ActorController c = a.getActorController();
+    	final int lengthPosition = out.position();
+    	out.putInt(0);
+    	if(c instanceof StatefulController) {
+    		((StatefulController)c).saveState(out);
+    		out.putInt(lengthPosition, out.position() - lengthPosition - 4);
+    	}
+    }
+    
+    private static void readActorState(ByteBuffer in, Actor a)
+    {
+    	a.readState(in);
+    	final ActorController c = a.getActorController();
+    	final int length = in.getInt();
+    	final int end = in.position() + length;
+    	if(length > 0 && c instanceof StatefulController)
+    		((StatefulController)c).restoreState(in);
+    	in.position(end);
+    }
+    
     /** Restarts the game, returning everything to its initial state.
      * */
     public void restart()
     {
+    	mFinished = false;
     	restartTime();
     	mapRestart();
     	restartGhosts();
     	restartPacmans();
+    	publishSnapshot();
     	mainLoop();
     }
     
@@ -186,155 +557,223 @@ public class Game
      * */
     public synchronized void pause()
     {
-    	if(!mPause) {
-    		mStartTimePauseMillis = System.currentTimeMillis(); 
-    		mPause = true;
-    	} else {
-    		long currentTimeMillis = System.currentTimeMillis();
-    		mStartTimeMillis -= mStartTimePauseMillis - currentTimeMillis;
-    		mPause = false;
-    	}
+    	// The simulated clock doesn't advance while paused, so there is no time to compensate
+    	mPause = !mPause;
     }
     
     /** Destroys the current game and stops the main loop.
      * */
     public synchronized void destroy()
     {
-    	mRunning = false;
+    	if(mScheduler != null) {
+    		mScheduler.unschedule(this);
+    		mScheduler = null;
+    	}
     }
     
-    /** Revives all the Pacmans in the game.
+    /** Revives all the Pacmans in the game. It's called by step() after a death, so it doesn't allocate.
      * @see ptp.pacman.base.Pacman#revive()
      * */
     public void revivePacmans()
     {
-    	for(Pacman p: mPacmans)
-    		p.revive();
+    	for(int i=0; i<mPacmans.size(); ++i)
+    		mPacmans.get(i).revive();
     }
     
     private void restartPacmans()
     {
-    	for(Pacman p: mPacmans)
-    		p.restart();
+    	for(int i=0; i<mPacmans.size(); ++i)
+    		mPacmans.get(i).restart();
     }
     
     private void restartGhosts()
     {
-    	for(Ghost g: mGhosts)
-    		g.restart();
+    	for(int i=0; i<mGhosts.size(); ++i)
+    		mGhosts.get(i).restart();
     }
     
     private void restartTime()
     {
-    	mStartTimeMillis = System.currentTimeMillis();
+    	mStartTick = mTick;
     }
     
+    // The actors keep moving on the same map, so its points are put back instead of replacing it
     private void mapRestart()
     {
-    	mMap = mOrigMap;
-    	mOrigMap = new PacmanMap(mMap);
+    	mMap.reset();
+    }
+    
+    /** Advances the game a single tick of TICK_MILLIS simulated milliseconds: moves the actors,
+     * checks their interactions, updates the listeners and checks if the game has finished.
+     * It never sleeps nor reads the wall clock, so it can be called as fast as wanted (i.e. for headless games).
+     * If the game is paused, only the representation listener is refreshed.
+     * @return If the game goes on after this tick (false once it has finished).
+     * */
+    public boolean step()
+    {
+    	if(mFinished)
+    		return false;
+    	
+    	if(mPause) {
+    		if(mRepresentationListener != null)
+    			mRepresentationListener.refresh(this);
+    		return true;
+    	}
+    	
+    	// Phase timestamps, only taken if the game is being profiled
+    	final TickProfiler profiler = mProfiler;
+    	final long startNanos = profiler != null ? System.nanoTime() : 0;
+    	
+    	++mTick;
+    	final long timeMillis = getTimeMillis();
+    	boolean hasMathFinished, hasGameFinished;
+    	
+    	// Move stuff (indexed loops, so that the tick doesn't create iterators).
+    	// With a budget, the controllers of every group decide at once before it moves
+    	final ControllerBudget budget = mControllerBudget;
+    	final long decisionsNanos = budget != null ? System.nanoTime() : 0;
+    	final int numPacmans = mPacmans.size(), numGhosts = mGhosts.size();
+    	if(budget != null)
+    		budget.decide(mPacmans, decisionsNanos);
+    	for(int i=0; i<numPacmans; ++i) {
+    		final Pacman p = mPacmans.get(i);
+    		if (p.isAlive() && !p.isDead())
+    			p.move(timeMillis);
+    	}
+    	
+    	if(budget != null) {
+    		for(int i=0; i<numGhosts; ++i)
+    			updateGhostState(mGhosts.get(i));
+    		budget.decide(mGhosts, decisionsNanos);
+    	}
+    	for(int i=0; i<numGhosts; ++i) {
+    		final Ghost g = mGhosts.get(i);
+    		if(budget == null)
+    			updateGhostState(g);
+    		g.move();
+    	}
+    	if(mInputRecorder != null)
+    		mInputRecorder.record(this);
+    	final long movedNanos = profiler != null ? System.nanoTime() : 0;
+    	
+    	// Check interactions between actors (only the ghosts around every Pacman)
+    	mCollisionGrid.build(mGhosts);
+    	for(int j=0; j<numPacmans; ++j) {
+    		final Pacman p = mPacmans.get(j);
+    		boolean ghostsMoved = false;
+    		final int candidates = mCollisionGrid.query(p.mCell.x, p.mCell.y);
+    		for(int i=0; i<candidates; ++i) {
+    			Ghost g = mGhosts.get(mCollisionGrid.getCandidate(i));
+    			if(p.collides(g) && !p.isDead()) {
+    				if (p.getState() == Pacman.State.NORMAL) {
+    					g.capture();
+    					p.die();
+    				}
+    				else {
+    					p.eat();
+    					g.die();
+    					ghostsMoved = true;
+    				}
+    			}
+    		}
+    		// Eaten ghosts go back to their start position, where other Pacmans may be
+    		if(ghostsMoved)
+    			mCollisionGrid.build(mGhosts);
+    	}
+    	
+    	final long collidedNanos = profiler != null ? System.nanoTime() : 0;
+    	
+    	// Update game listeners
+    	int seconds = (int)((mTick - mStartTick)*TICK_MILLIS/1000);
+    	int secondsRemaining = GAME_TIME_SECONDS - seconds;
+    	if(mStatusListener != null)
+    		mStatusListener.setTime(seconds, secondsRemaining);
+    	// IF TIME OVER THEN ALL PACMANs DIE
+    	if (secondsRemaining<0){
+    		for(int i=0; i<numPacmans; ++i)
+    			mPacmans.get(i).die();
+    	}
+    	
+    	hasMathFinished = true;
+    	hasGameFinished = true;
+    	for(int i=0; i<numPacmans; ++i) {
+    		final Pacman p = mPacmans.get(i);
+    		if (!p.isDead())  hasMathFinished = false;
+    		if (p.isAlive()) hasGameFinished = false;
+    	}
+    	
+    	// The PacMan WIN
+    	if(mMap.areAllPointsEaten()){
+    		mFinished = true;
+    		if(mStatusListener != null)
+    			mStatusListener.pacmansWin();
+    	}
+    	// The Game Finishes
+    	else if(hasGameFinished){
+    		mFinished = true;
+    		if(mStatusListener != null)
+    			mStatusListener.gameOver();
+    	}
+    	// The Next Math
+    	else if(hasMathFinished){
+    		revivePacmans();
+    		restartGhosts();
+    		restartTime();
+    	}
+    	
+    	// Publish the final state of the tick for the representation
+    	final long checkedNanos = profiler != null ? System.nanoTime() : 0;
+    	publishSnapshot();
+    	if(mRepresentationListener != null)
+    		mRepresentationListener.refresh(this);
+    	
+    	if(profiler != null)
+    		profiler.recordTick(this, startNanos, movedNanos, collidedNanos, checkedNanos, System.nanoTime());
+    	return !mFinished;
+    }
+    
+    // Ghosts are scared while the closest Pacman is an eater, whatever their controller is
+    private void updateGhostState(Ghost g)
+    {
+    	final Pacman closestPacman = getClosestPacman(g.getCell());
+    	if(closestPacman != null && closestPacman.getState() == Pacman.State.EATER)
+    		g.setState(Ghost.State.SCARED);
+    	else
+    		g.setState(Ghost.State.ATTACKING);
+    }
+    
+    /** Advances the game the given number of ticks, or until it finishes.
+     * @see ptp.pacman.base.Game#step()
+     * @param ticks The number of ticks to simulate.
+     * @return The number of ticks that were actually simulated.
+     * */
+    public int stepN(int ticks)
+    {
+    	int i = 0;
+    	for(; i<ticks && !mFinished; ++i)
+    		step();
+    	return i;
     }
     
-    /** Game loop. Call this method to start the game in a separate thread.
+    /** Game loop. Call this method to start the game in real time, driven by the default scheduler.
+     * Calling it again while the game is running has no effect.
      * @see ptp.pacman.base.Game#destroy()
+     * @see ptp.pacman.base.GameScheduler#Default()
      * */
     public void mainLoop()
     {
-    	mRunning = true;
-    	
-        Thread t = new Thread() {
-            public void run()
-            {
-            	boolean hasMathFinished, hasGameFinished; 
-                mStartTimeMillis = System.currentTimeMillis();
-                while(mRunning) {
-                    try {
-                        Thread.sleep(SLEEP_MILLIS);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                    
-                    long timeMillis = System.currentTimeMillis();
-                    // Move stuff
-                    
-                    
-                    if (!mPause) {
-	                    for(Pacman p : mPacmans) {
-	                    	if (p.isAlive() && !p.isDead())
-	                    		p.move(timeMillis);
-	                    }
-	                    
-	                    for(Ghost g : mGhosts) {
-	                        g.move();
-	                    }
-                    }
-                    
-                    // Check interactions between actors
-                    for(Pacman p: mPacmans) {
-                        for(Ghost g: mGhosts) {
-                            if(p.collides(g) && !p.isDead()) {
-                            	if (p.getState() == Pacman.State.NORMAL) {
-                            		g.capture();
-                            		p.die();
-                            	}
-                            	else {
-                            		p.eat();
-                            		g.die();
-                            	}
-                            }
-                        }
-                    }
-                    
-                    long thinkTime = System.currentTimeMillis() - timeMillis;
-
-                    
-                    // Update game listeners
-                    if(mRepresentationListener != null)
-                        mRepresentationListener.refresh(Game.this);
-                    
-                    if(mStatusListener != null) {
-                        int seconds = (int)(timeMillis - mStartTimeMillis)/1000;
-                        int secondsRemaining = GAME_TIME_SECONDS - seconds;
-                        if (!mPause)
-                        	mStatusListener.setTime(seconds, secondsRemaining);
-                        // IF TIME OVER THEN ALL PACMANs DIE
-                        if (secondsRemaining<0){
-                        	for(Pacman p: mPacmans)
-                        		p.die();
-                        }
-                    }
-                    
-                    hasMathFinished = true;
-                    hasGameFinished = true;
-                    for(Pacman p: mPacmans) {
-                    	if (!p.isDead())  hasMathFinished = false;
-                    	if (p.isAlive()) hasGameFinished = false;
-                    }
-                    
-                    long fullTime = System.currentTimeMillis() - timeMillis;
-
-                    // The PacMan WIN
-                    if(mMap.areAllPointsEaten()){
-                    	mStatusListener.pacmansWin();
-                    	mRunning = false;
-                    }
-                    // The Game Finishes
-                    else if(hasGameFinished){
-                    	mStatusListener.gameOver();
-                    	mRunning = false;
-                    }
-                    // The Next Math                    
-                    else if(hasMathFinished){
-                    	revivePacmans();
-                    	restartGhosts();
-                    	restartTime();
-                    }
-                    
-                  //System.out.println("Think: "+thinkTime + " - Everything: "+fullTime);
-                }
-            }
-        };
-        
-        t.start();
+    	mainLoop(GameScheduler.Default());
+    }
+    
+    /** Starts the game in real time, driven by the given scheduler.
+     * @param scheduler The scheduler that will call step() on every tick.
+     * @see ptp.pacman.base.Game#destroy()
+     * */
+    public synchronized void mainLoop(GameScheduler scheduler)
+    {
+    	if(mScheduler != null && mScheduler != scheduler)
+    		mScheduler.unschedule(this);
+    	mScheduler = scheduler;
+    	scheduler.schedule(this);
     }
 }
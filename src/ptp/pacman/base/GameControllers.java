@@ -7,33 +7,18 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Class with static methods that contains the controllers for the played games.
+ * Class that contains the controllers for the played games.
+ * Every instance has its own keyboard controllers, so games that don't share an instance don't share any state.
  *  @author Jose Alcalá Correa, Gabriel Garrido Calvo
  *  @version 1.0
  * */
 public class GameControllers
 {
-	private static final List<KeyboardController> mKeyboardControllers = new ArrayList<KeyboardController>();
-	private static final List<AbstractGhostController> mAbstractControllers = new ArrayList<AbstractGhostController>();
+	private final List<KeyboardController> mKeyboardControllers = new ArrayList<KeyboardController>();
 	
-	/** Gives a list with the user keyboard controllers.
-	 * @return The keyboard controllers.
-	 * */
-	public static List<KeyboardController> KeyboardControllers()
-	{
-		return mKeyboardControllers;
-	}
-	
-	/** Gives a list with the ghost controllers.
-	 * @return The ghost controllers.
+	/** Constructor. Inits the keyboard controllers.
 	 * */
-	public static List<AbstractGhostController> GhostControllers()
-	{
-		return mAbstractControllers;
-	}
-	
-	// Static block that inits the keyboard controllers
-	static
+	public GameControllers()
 	{
         // Create PacMan Controllers
         KeyboardController kc0 = new KeyboardController("Player 1", KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT, KeyEvent.VK_UP, KeyEvent.VK_DOWN);
@@ -46,21 +31,32 @@ public class GameControllers
         mKeyboardControllers.add(kc3);
 	}
 	
-	/** Static method that creates the ghost controllers given the current game
+	/** Gives a list with the user keyboard controllers.
+	 * @return The keyboard controllers.
+	 * */
+	public List<KeyboardController> getKeyboardControllers()
+	{
+		return mKeyboardControllers;
+	}
+	
+	/** Static method that creates the ghost controllers given the current game.
+	 * A new list is returned on every call, so no controller is shared between games.
 	 * @param game The current game for which the controllers are created.
+	 * @return The ghost controllers.
 	 * */
-	public static void InitGhostControllers(Game game)
+	public static List<AbstractGhostController> CreateGhostControllers(Game game)
 	{
+		List<AbstractGhostController> controllers = new ArrayList<AbstractGhostController>();
         //	 Create Ghost Controllers
-		mAbstractControllers.clear();
-        AbstractGhostController dgc1 = new Dijkstra2GhostController(game);
-        AbstractGhostController dgc2 = new Dijkstra2GhostController(game);
-        AbstractGhostController dgc3 = new DijkstraGhostController(game);
-        AbstractGhostController dgc4 = new Dijkstra2GhostController(game);
-        mAbstractControllers.add(dgc1);
-        mAbstractControllers.add(dgc2);
-        mAbstractControllers.add(dgc3);
-        mAbstractControllers.add(dgc4);
+        AbstractGhostController dgc1 = new Dijkstra2GhostController(game, 1);
+        AbstractGhostController dgc2 = new Dijkstra2GhostController(game, 2);
+        AbstractGhostController dgc3 = new DijkstraGhostController(game, 1);
+        AbstractGhostController dgc4 = new Dijkstra2GhostController(game, 3);
+        controllers.add(dgc1);
+        controllers.add(dgc2);
+        controllers.add(dgc3);
+        controllers.add(dgc4);
+        return controllers;
 	}
 
 	
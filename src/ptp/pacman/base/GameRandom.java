@@ -0,0 +1,63 @@
+package ptp.pacman.base;
+
+import java.util.Random;
+
+/**
+ * Random number generator of the games. It generates exactly the same numbers as java.util.Random
+ * (it uses the same linear congruential generator), but its state can be read and set, so it can be
+ * saved in a game checkpoint.
+ * nextGaussian() keeps a hidden state in java.util.Random that isn't saved, so it shouldn't be used by the game.
+ *  @see ptp.pacman.base.Game#checkpoint()
+ * */
+public final class GameRandom extends Random
+{
+    private static final long serialVersionUID = 2391502573846208874L;
+
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    // No initializer: Random's constructor calls setSeed() before the fields of this class would be initialized
+    private long mState;
+
+    /** Constructor.
+     * @param seed The initial seed, as in java.util.Random.
+     * */
+    public GameRandom(long seed)
+    {
+        super(seed);
+    }
+
+    /** @see java.util.Random#setSeed(long)
+     * */
+    @Override
+    public void setSeed(long seed)
+    {
+        mState = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    /** @see java.util.Random#next(int)
+     * */
+    @Override
+    protected int next(int bits)
+    {
+        mState = (mState * MULTIPLIER + ADDEND) & MASK;
+        return (int)(mState >>> (48 - bits));
+    }
+
+    /** Returns the internal state of the generator (48 bits).
+     * @return The current state.
+     * */
+    public long getState()
+    {
+        return mState;
+    }
+
+    /** Sets the internal state of the generator, as returned by getState().
+     * @param state The new state.
+     * */
+    public void setState(long state)
+    {
+        mState = state & MASK;
+    }
+}
@@ -0,0 +1,163 @@
+package ptp.pacman.base;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives any number of games in real time from a fixed pool of threads.
+ * Every game is stepped at a fixed rate measured from the moment it was scheduled, so ticks don't drift.
+ * If a game falls behind (i.e. the pool was stalled) it runs the missed ticks back to back,
+ * up to a limit, and drops the rest.
+ *  @see ptp.pacman.base.Game#step()
+ * */
+public final class GameScheduler
+{
+    /** Maximum number of ticks that a game runs at once to catch up after a stall. */
+    public static final int MAX_CATCH_UP_TICKS = 5;
+    
+    private static GameScheduler sDefault;
+    
+    private final ScheduledExecutorService mExecutor;
+    private final long mPeriodNanos;
+    private final int mMaxCatchUpTicks;
+    private final ConcurrentHashMap<Game, GameTask> mTasks = new ConcurrentHashMap<Game, GameTask>();
+    
+    /** Constructor.
+     * @param threads The number of threads of the pool.
+     * @param periodMillis Real time between two ticks of a game, in milliseconds.
+     * @param maxCatchUpTicks Maximum number of ticks that a late game runs at once.
+     * */
+    public GameScheduler(int threads, long periodMillis, int maxCatchUpTicks)
+    {
+        mPeriodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+        mMaxCatchUpTicks = maxCatchUpTicks;
+        mExecutor = Executors.newScheduledThreadPool(threads, new ThreadFactory() {
+            private int mCount = 0;
+            
+            @Override
+            public synchronized Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "GameScheduler-" + (++mCount));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+    
+    /** Returns the scheduler shared by the games of the application, creating it if needed.
+     * It has one thread per core and ticks every Game.SLEEP_MILLIS milliseconds.
+     * @return The default scheduler.
+     * */
+    public static synchronized GameScheduler Default()
+    {
+        if(sDefault == null)
+            sDefault = new GameScheduler(Runtime.getRuntime().availableProcessors(),
+                    Game.SLEEP_MILLIS, MAX_CATCH_UP_TICKS);
+        return sDefault;
+    }
+    
+    /** Starts driving a game. Does nothing if the game is already scheduled here.
+     * @param game The game to be driven.
+     * */
+    public void schedule(Game game)
+    {
+        GameTask task = new GameTask(game);
+        if(mTasks.putIfAbsent(game, task) == null)
+            task.start();
+    }
+    
+    /** Stops driving a game. The current tick, if any, is allowed to finish.
+     * @param game The game to stop.
+     * */
+    public void unschedule(Game game)
+    {
+        GameTask task = mTasks.remove(game);
+        if(task != null)
+            task.cancel();
+    }
+    
+    /** Tells if a game is being driven by this scheduler.
+     * @param game The game.
+     * @return If the game is scheduled.
+     * */
+    public boolean isScheduled(Game game)
+    {
+        return mTasks.containsKey(game);
+    }
+    
+    /** Returns the number of games driven by this scheduler.
+     * @return The number of games.
+     * */
+    public int getNumberOfGames()
+    {
+        return mTasks.size();
+    }
+    
+    /** Stops all the games and the threads of this scheduler.
+     * */
+    public void shutdown()
+    {
+        mTasks.clear();
+        mExecutor.shutdownNow();
+    }
+    
+    /** Periodic task that steps a game. The executor never runs it twice at the same time.
+     * */
+    private final class GameTask implements Runnable
+    {
+        private final Game mGame;
+        private long mStartNanos;
+        private long mTicks;
+        private volatile ScheduledFuture<?> mFuture;
+        private volatile boolean mCancelled;
+        
+        public GameTask(Game game)
+        {
+            mGame = game;
+        }
+        
+        public void start()
+        {
+            mStartNanos = System.nanoTime();
+            mTicks = 0;
+            mFuture = mExecutor.scheduleAtFixedRate(this, mPeriodNanos, mPeriodNanos, TimeUnit.NANOSECONDS);
+        }
+        
+        public void cancel()
+        {
+            mCancelled = true;
+            ScheduledFuture<?> f = mFuture;
+            if(f != null)
+                f.cancel(false);
+        }
+        
+        @Override
+        public void run()
+        {
+            // Ticks that should have been done by now, measured from the start => no drift
+            long due = (System.nanoTime() - mStartNanos)/mPeriodNanos;
+            if(due - mTicks > mMaxCatchUpTicks)
+                mTicks = due - mMaxCatchUpTicks;
+            
+            try {
+                while(mTicks < due && !mCancelled) {
+                    ++mTicks;
+                    if(!mGame.step()) {
+                        // The game has finished, it doesn't need more ticks
+                        mTasks.remove(mGame, this);
+                        cancel();
+                    }
+                }
+            } catch (RuntimeException e) {
+                // An exception would silently stop the periodic task, so report it and remove the game
+                e.printStackTrace();
+                mTasks.remove(mGame, this);
+                cancel();
+            }
+        }
+    }
+}
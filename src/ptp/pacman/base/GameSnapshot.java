@@ -0,0 +1,204 @@
+package ptp.pacman.base;
+
+import java.util.List;
+
+import ptp.pacman.base.Actor.Direction;
+
+/**
+ * Copy of everything that is needed to draw a game at the end of a tick: actor positions and states, and the map points.
+ * The game fills a small pool of snapshots in turns and publishes each one with a single atomic swap,
+ * so the render thread can read a consistent frame while the next tick is being simulated, without locks.
+ * Once published, a snapshot is not modified until the reader gives it back.
+ * The lives and points of the Pacmans aren't copied, since the status panels get them from PacmanStatusListener.
+ *  @see ptp.pacman.base.Game#getSnapshot()
+ * */
+public final class GameSnapshot
+{
+    long mSequence;
+    long mTick;
+    long mTimeMillis;
+    
+    int mNumPacmans;
+    int[] mPacmanX = new int[0], mPacmanY = new int[0];
+    Direction[] mPacmanDirection = new Direction[0];
+    Pacman.State[] mPacmanState = new Pacman.State[0];
+    boolean[] mPacmanAlive = new boolean[0], mPacmanDead = new boolean[0];
+    
+    int mNumGhosts;
+    int[] mGhostX = new int[0], mGhostY = new int[0];
+    Ghost.State[] mGhostState = new Ghost.State[0];
+    
+    int mWidth, mHeight;
+    // Points that remained in the map, read through its cells (which never change)
+    long[] mPoints = new long[0];
+    // Map and number of modifications of the last copy, to copy the points only when one has been eaten
+    private PacmanMap mCellsMap;
+    private int mCellsModifications;
+    
+    /** Copies the current state of the game. Only called by the game that owns this snapshot.
+     * @param game The game.
+     * @param sequence The number of the snapshot, bigger than the ones published before.
+     * */
+    void capture(Game game, long sequence)
+    {
+        mSequence = sequence;
+        mTick = game.getTick();
+        mTimeMillis = game.getTimeMillis();
+        
+        final List<Pacman> pacmans = game.getPacmans();
+        mNumPacmans = pacmans.size();
+        if(mPacmanX.length < mNumPacmans) {
+            mPacmanX = new int[mNumPacmans];
+            mPacmanY = new int[mNumPacmans];
+            mPacmanDirection = new Direction[mNumPacmans];
+            mPacmanState = new Pacman.State[mNumPacmans];
+            mPacmanAlive = new boolean[mNumPacmans];
+            mPacmanDead = new boolean[mNumPacmans];
+        }
+        for(int i=0; i<mNumPacmans; ++i) {
+            final Pacman p = pacmans.get(i);
+            mPacmanX[i] = p.getSubCellX();
+            mPacmanY[i] = p.getSubCellY();
+            mPacmanDirection[i] = p.getDirection();
+            mPacmanState[i] = p.getState();
+            mPacmanAlive[i] = p.isAlive();
+            mPacmanDead[i] = p.isDead();
+        }
+        
+        final List<Ghost> ghosts = game.getGhosts();
+        mNumGhosts = ghosts.size();
+        if(mGhostX.length < mNumGhosts) {
+            mGhostX = new int[mNumGhosts];
+            mGhostY = new int[mNumGhosts];
+            mGhostState = new Ghost.State[mNumGhosts];
+        }
+        for(int i=0; i<mNumGhosts; ++i) {
+            final Ghost g = ghosts.get(i);
+            mGhostX[i] = g.getSubCellX();
+            mGhostY[i] = g.getSubCellY();
+            mGhostState[i] = g.getState();
+        }
+        
+        final PacmanMap map = game.getMap();
+        if(map != mCellsMap || map.mModifications != mCellsModifications) {
+            mWidth = map.mWidth;
+            mHeight = map.mHeight;
+            if(mPoints.length < map.mPoints.length)
+                mPoints = new long[map.mPoints.length];
+            System.arraycopy(map.mPoints, 0, mPoints, 0, map.mPoints.length);
+            mCellsMap = map;
+            mCellsModifications = map.mModifications;
+        }
+    }
+    
+    /** @return The tick when this snapshot was taken. */
+    public long getTick()
+    {
+        return mTick;
+    }
+    
+    /** @return The simulated game time when this snapshot was taken, in milliseconds. */
+    public long getTimeMillis()
+    {
+        return mTimeMillis;
+    }
+    
+    /** @return The number of Pacmans. */
+    public int getNumberOfPacmans()
+    {
+        return mNumPacmans;
+    }
+    
+    /** @param i The index of the Pacman in the game.
+     * @return Its horizontal position, in units of 1/Actor.OFFSET_STEPS of a cell.
+     * @see ptp.pacman.base.Actor#getSubCellX()
+     * */
+    public int getPacmanSubCellX(int i)
+    {
+        return mPacmanX[i];
+    }
+    
+    /** @param i The index of the Pacman in the game.
+     * @return Its vertical position, in units of 1/Actor.OFFSET_STEPS of a cell.
+     * @see ptp.pacman.base.Actor#getSubCellY()
+     * */
+    public int getPacmanSubCellY(int i)
+    {
+        return mPacmanY[i];
+    }
+    
+    /** @param i The index of the Pacman in the game.
+     * @return Its direction.
+     * */
+    public Direction getPacmanDirection(int i)
+    {
+        return mPacmanDirection[i];
+    }
+    
+    /** @param i The index of the Pacman in the game.
+     * @return Its state.
+     * */
+    public Pacman.State getPacmanState(int i)
+    {
+        return mPacmanState[i];
+    }
+    
+    /** @param i The index of the Pacman in the game.
+     * @return If it has lives left.
+     * @see ptp.pacman.base.Pacman#isAlive()
+     * */
+    public boolean isPacmanAlive(int i)
+    {
+        return mPacmanAlive[i];
+    }
+    
+    /** @param i The index of the Pacman in the game.
+     * @return If it's dead, waiting for the next match.
+     * @see ptp.pacman.base.Pacman#isDead()
+     * */
+    public boolean isPacmanDead(int i)
+    {
+        return mPacmanDead[i];
+    }
+    
+    /** @return The number of ghosts. */
+    public int getNumberOfGhosts()
+    {
+        return mNumGhosts;
+    }
+    
+    /** @param i The index of the ghost in the game.
+     * @return Its horizontal position, in units of 1/Actor.OFFSET_STEPS of a cell.
+     * */
+    public int getGhostSubCellX(int i)
+    {
+        return mGhostX[i];
+    }
+    
+    /** @param i The index of the ghost in the game.
+     * @return Its vertical position, in units of 1/Actor.OFFSET_STEPS of a cell.
+     * */
+    public int getGhostSubCellY(int i)
+    {
+        return mGhostY[i];
+    }
+    
+    /** @param i The index of the ghost in the game.
+     * @return Its state.
+     * */
+    public Ghost.State getGhostState(int i)
+    {
+        return mGhostState[i];
+    }
+    
+    /** Returns a map cell as it was when the snapshot was taken.
+     * @param x The x coordinate of the cell.
+     * @param y The y coordinate of the cell.
+     * @return The value of the cell.
+     * @see ptp.pacman.base.PacmanMap#getCell(int, int)
+     * */
+    public char getCell(int x, int y)
+    {
+        return mCellsMap.getCell(mPoints, y*mWidth + x);
+    }
+}
@@ -1,5 +1,7 @@
 package ptp.pacman.base;
 
+import java.nio.ByteBuffer;
+
 import ptp.pacman.Vec2i;
 
 /**
@@ -52,14 +54,45 @@ public final class Ghost extends Actor
     	return mState;
     }
     
-    /** Sets this ghost's state.
+    /** Sets this ghost's state. When it changes, the controller is asked again at the next cell, even if it
+     * was following a corridor to the next junction, so a chasing ghost flees as soon as it gets scared.
      * @param state The new state
      * */
     public void setState(State state)
     {
+    	if(state != mState)
+    		stopWaitingForJunction();
     	mState = state;
     }
     
+    /** Writes the ghost state in a game checkpoint: the actor state, its state and counters.
+     * @see ptp.pacman.base.Actor#writeState(ByteBuffer)
+     * */
+    @Override
+    void writeState(ByteBuffer out)
+    {
+        super.writeState(out);
+        out.put((byte)mState.ordinal());
+        out.putInt(mEatenByPacman);
+        out.putInt(mPacmanEaten);
+    }
+    
+    /** Reads the state written by writeState(), and updates the status listener, if set.
+     * @see ptp.pacman.base.Actor#readState(ByteBuffer)
+     * */
+    @Override
+    void readState(ByteBuffer in)
+    {
+        super.readState(in);
+        mState = State.values()[in.get()];
+        mEatenByPacman = in.getInt();
+        mPacmanEaten = in.getInt();
+        if(mStatusListener!=null) {
+            mStatusListener.setTimesEatenByPacman(mEatenByPacman);
+            mStatusListener.setTimesPacmanEaten(mPacmanEaten);
+        }
+    }
+    
     /** Returns if the cell at coordinates (x,y) can be traspassed (they are not walls)
      * @param v Cell coordinates
      * @return If the cell at the given coordinates is a wall.
@@ -67,8 +100,13 @@ public final class Ghost extends Actor
     @Override
     protected boolean checkCellForWall(Vec2i v)
     {
-        char cell = mMap.getCell(v.x, v.y);
-    	return !PacmanMap.IsWall(cell);
+    	return !mMap.isWall(v.x, v.y);
+    }
+    
+    @Override
+    protected int getExits(int x, int y)
+    {
+        return mMap.getGhostExits(x, y);
     }
     
     /** Increments the eaten Pacman counter and goes back to the start position.
@@ -0,0 +1,227 @@
+package ptp.pacman.base;
+
+import java.util.Arrays;
+
+import ptp.pacman.Vec2i;
+
+/**
+ * A* search on the NavigationGraph of a map: it expands junctions instead of cells, walking every corridor
+ * in a single step. The cells of the start and the target may be in the middle of corridors; the search then starts
+ * from both ends of the start corridor, and the target is reached from both ends of its own one (or directly, when
+ * both cells share the corridor). The heuristic is the Manhattan distance taking the shortest way in each axis,
+ * either through the map or around it, so the paths found are the shortest ones.
+ *
+ * Every controller owns its own search, whose buffers are reused across calls.
+ *  @see ptp.pacman.base.NavigationGraph
+ * */
+public final class GraphSearch
+{
+    private NavigationGraph mGraph;
+    private int [] mCost = new int[0],
+                   mEstimate = new int[0],
+                   // Direction of the first step from the start to every node
+                   mFirst = new int[0],
+                   mHeapIndex = new int[0],
+                   mStamp = new int[0],
+                   mHeap = new int[0];
+    private boolean [] mClosed = new boolean[0];
+    private int mHeapSize;
+    private int mGeneration;
+    private long mExpansions;
+
+    /** Returns the first step of a shortest path from a cell to another one.
+     * @param graph The graph of the map.
+     * @param start The start cell (the ghost one).
+     * @param target The target cell (the Pacman one).
+     * @return The index of the direction in Actor.DIRECTIONS, or 4 (STOPPED) if the target is the start cell
+     * or it can't be reached.
+     * */
+    public int findDirection(NavigationGraph graph, Vec2i start, Vec2i target)
+    {
+        prepare(graph);
+        final int width = graph.getWidth();
+        final int startCell = start.y*width + start.x,
+                  targetCell = target.y*width + target.x;
+        if(startCell == targetCell)
+            return 4;
+
+        // Target: a node, or a corridor reached from the start node of its edge (at targetOffset) or its target
+        final int targetNode = graph.getNode(target.x, target.y);
+        final int targetEdge = targetNode < 0 ? graph.getCorridorEdge(targetCell) : -1;
+        final int targetOffset = targetEdge >= 0 ? graph.getCorridorOffset(targetCell) : 0;
+        final int targetFrom = targetEdge >= 0 ? targetEdge >> 2 : -1,
+                  targetTo = targetEdge >= 0 ? graph.getEdgeTarget(targetEdge) : -1;
+        int bestCost = Integer.MAX_VALUE, bestDirection = 4;
+
+        final int startNode = graph.getNode(start.x, start.y);
+        if(startNode >= 0) {
+            open(startNode, target);
+            mCost[startNode] = 0;
+            mFirst[startNode] = -1;
+            push(startNode);
+        } else {
+            final int edge = graph.getCorridorEdge(startCell);
+            if(edge < 0)
+                return 4;
+            final int offset = graph.getCorridorOffset(startCell), length = graph.getEdgeLength(edge);
+            entry(edge >> 2, offset, graph.getCorridorExit(startCell, false), target);
+            entry(graph.getEdgeTarget(edge), length - offset, graph.getCorridorExit(startCell, true), target);
+            if(edge == targetEdge) {
+                bestCost = Math.abs(targetOffset - offset);
+                bestDirection = graph.getCorridorExit(startCell, targetOffset > offset);
+            }
+        }
+
+        while(mHeapSize > 0) {
+            final int current = mHeap[0];
+            if(mCost[current] + mEstimate[current] >= bestCost)
+                break;
+            pop();
+            ++mExpansions;
+            mClosed[current] = true;
+            if(current == targetNode)
+                return mFirst[current];
+            if(current == targetFrom && mCost[current] + targetOffset < bestCost) {
+                bestCost = mCost[current] + targetOffset;
+                bestDirection = mFirst[current] >= 0 ? mFirst[current] : targetEdge & 3;
+            }
+            if(current == targetTo) {
+                final int cost = mCost[current] + graph.getEdgeLength(targetEdge) - targetOffset;
+                if(cost < bestCost) {
+                    bestCost = cost;
+                    bestDirection = mFirst[current] >= 0 ? mFirst[current] : graph.getReverseEdge(targetEdge) & 3;
+                }
+            }
+            for(int edge=4*current, end=edge+4; edge<end; ++edge) {
+                final int next = graph.getEdgeTarget(edge);
+                if(next < 0)
+                    continue;
+                open(next, target);
+                final int cost = mCost[current] + graph.getEdgeLength(edge);
+                if(!mClosed[next] && cost < mCost[next]) {
+                    mCost[next] = cost;
+                    mFirst[next] = mFirst[current] >= 0 ? mFirst[current] : edge & 3;
+                    if(mHeapIndex[next] < 0)
+                        push(next);
+                    else
+                        siftUp(next);
+                }
+            }
+        }
+        return bestDirection;
+    }
+
+    /** @return The number of nodes expanded by all the searches. */
+    public long getExpansions()
+    {
+        return mExpansions;
+    }
+
+    // Enters the graph at an end of the start corridor
+    private void entry(int node, int cost, int direction, Vec2i target)
+    {
+        open(node, target);
+        if(cost < mCost[node]) {
+            mCost[node] = cost;
+            mFirst[node] = direction;
+            if(mHeapIndex[node] < 0)
+                push(node);
+            else
+                siftUp(node);
+        }
+    }
+
+    // Initializes a node the first time it's seen in the current search
+    private void open(int node, Vec2i target)
+    {
+        if(mStamp[node] == mGeneration)
+            return;
+        mStamp[node] = mGeneration;
+        final int width = mGraph.getWidth(), height = mGraph.getHeight(), cell = mGraph.getNodeCell(node);
+        final int dx = Math.abs(cell % width - target.x),
+                  dy = Math.abs(cell / width - target.y);
+        mEstimate[node] = Math.min(dx, width - dx) + Math.min(dy, height - dy);
+        mCost[node] = Integer.MAX_VALUE;
+        mHeapIndex[node] = -1;
+        mClosed[node] = false;
+    }
+
+    private void prepare(NavigationGraph graph)
+    {
+        if(mGraph != graph) {
+            mGraph = graph;
+            final int nodes = graph.getNumberOfNodes();
+            if(mCost.length < nodes) {
+                mCost = new int[nodes];
+                mEstimate = new int[nodes];
+                mFirst = new int[nodes];
+                mHeapIndex = new int[nodes];
+                mStamp = new int[nodes];
+                mHeap = new int[nodes];
+                mClosed = new boolean[nodes];
+            }
+            Arrays.fill(mStamp, 0);
+            mGeneration = 0;
+        }
+        if(++mGeneration == 0) {
+            Arrays.fill(mStamp, 0);
+            mGeneration = 1;
+        }
+        mHeapSize = 0;
+    }
+
+    // Heap ordered by cost plus estimate, and by the biggest cost among equal ones (the closest to the target)
+
+    private boolean before(int a, int b)
+    {
+        final int fa = mCost[a] + mEstimate[a],
+                  fb = mCost[b] + mEstimate[b];
+        return fa < fb || (fa == fb && mCost[a] > mCost[b]);
+    }
+
+    private void push(int node)
+    {
+        mHeap[mHeapSize] = node;
+        mHeapIndex[node] = mHeapSize++;
+        siftUp(node);
+    }
+
+    private void siftUp(int node)
+    {
+        int i = mHeapIndex[node];
+        while(i > 0) {
+            final int parent = (i - 1) >> 1;
+            if(!before(node, mHeap[parent]))
+                break;
+            mHeap[i] = mHeap[parent];
+            mHeapIndex[mHeap[i]] = i;
+            i = parent;
+        }
+        mHeap[i] = node;
+        mHeapIndex[node] = i;
+    }
+
+    private void pop()
+    {
+        final int top = mHeap[0];
+        mHeapIndex[top] = -1;
+        final int last = mHeap[--mHeapSize];
+        if(mHeapSize > 0) {
+            int i = 0;
+            while(true) {
+                int child = 2*i + 1;
+                if(child >= mHeapSize)
+                    break;
+                if(child + 1 < mHeapSize && before(mHeap[child + 1], mHeap[child]))
+                    ++child;
+                if(!before(mHeap[child], last))
+                    break;
+                mHeap[i] = mHeap[child];
+                mHeapIndex[mHeap[i]] = i;
+                i = child;
+            }
+            mHeap[i] = last;
+            mHeapIndex[last] = i;
+        }
+    }
+}
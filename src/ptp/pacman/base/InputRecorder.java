@@ -0,0 +1,15 @@
+package ptp.pacman.base;
+
+/**
+ * Interface to be implemented by classes that record the directions requested by the actor controllers,
+ * so that the game can be replayed later.
+ *  @see ptp.pacman.base.Game#setInputRecorder(InputRecorder)
+ * */
+public interface InputRecorder
+{
+	/** Called once per tick, after all the actors have moved. The requested direction of every actor
+	 * can be read with Actor.getRequestedDirection().
+	 * @param g The game whose actors have just moved.
+	 * */
+    public void record(Game g);
+}
@@ -0,0 +1,18 @@
+package ptp.pacman.base;
+
+/**
+ * Interface for actor controllers that only need to decide at the junctions of the map. After a decision, the
+ * controller may ask not to be called again until its actor reaches a junction (a node of the NavigationGraph
+ * of the map): meanwhile, the actor follows the corridor it's in on its own, turning where the corridor turns.
+ * If it can't go on along the corridor (i.e. a line that is a wall for Pacmans), the controller is called anyway.
+ * Controllers that don't implement it are called at every cell.
+ *  @see ptp.pacman.base.Actor#move()
+ *  @see ptp.pacman.base.NavigationGraph#isDecisionCell(int, int)
+ * */
+public interface JunctionController
+{
+    /** Called right after every getNextDirection() of the controller.
+     * @return If the actor has to follow its corridor until the next junction before asking the controller again.
+     * */
+    public boolean waitsForJunction();
+}
@@ -0,0 +1,108 @@
+package ptp.pacman.base;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of durations in nanoseconds, with log-linear buckets (as HdrHistogram does): values are grouped by
+ * their power of two, and every power of two is split in SUB_BUCKETS linear buckets, so percentiles have
+ * a relative error below 1/SUB_BUCKETS (~3%) while the whole histogram takes a few KB.
+ * Recording doesn't allocate, and isn't synchronized.
+ *  @see ptp.pacman.base.TickProfiler
+ * */
+public final class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values are clamped to 2^40 ns (~18 minutes)
+    private static final int MAX_SHIFT = 40 - SUB_BUCKET_BITS;
+    private static final long MAX_VALUE = (1L << 40) - 1;
+
+    private final long [] mCounts = new long[(MAX_SHIFT + 2)*SUB_BUCKETS];
+    private long mCount, mSum, mMax;
+
+    /** Adds a value to the histogram.
+     * @param nanos The duration, in nanoseconds. Negative values count as zero.
+     * */
+    public void record(long nanos)
+    {
+        final long value = nanos < 0 ? 0 : Math.min(nanos, MAX_VALUE);
+        ++mCounts[IndexOf(value)];
+        ++mCount;
+        mSum += value;
+        if(value > mMax)
+            mMax = value;
+    }
+
+    /** Adds all the values of another histogram to this one.
+     * @param h The other histogram.
+     * */
+    public void add(LatencyHistogram h)
+    {
+        for(int i=0; i<mCounts.length; ++i)
+            mCounts[i] += h.mCounts[i];
+        mCount += h.mCount;
+        mSum += h.mSum;
+        mMax = Math.max(mMax, h.mMax);
+    }
+
+    /** Removes all the values.
+     * */
+    public void reset()
+    {
+        Arrays.fill(mCounts, 0);
+        mCount = mSum = mMax = 0;
+    }
+
+    /** @return The number of recorded values. */
+    public long getCount()
+    {
+        return mCount;
+    }
+
+    /** @return The maximum recorded value (exact), in nanoseconds. */
+    public long getMax()
+    {
+        return mMax;
+    }
+
+    /** @return The mean of the recorded values (exact), in nanoseconds. */
+    public long getMean()
+    {
+        return mCount == 0 ? 0 : mSum/mCount;
+    }
+
+    /** Returns a percentile of the recorded values.
+     * @param percentile The percentile, from 0 to 100 (i.e. 50 for the median, 99...).
+     * @return The value of the percentile in nanoseconds, within the precision of the buckets.
+     * */
+    public long getPercentile(double percentile)
+    {
+        if(mCount == 0)
+            return 0;
+        final long rank = Math.max(1, (long)Math.ceil(percentile/100.0*mCount));
+        long accumulated = 0;
+        for(int i=0; i<mCounts.length; ++i) {
+            accumulated += mCounts[i];
+            if(accumulated >= rank)
+                return Math.min(MiddleValueOf(i), mMax);
+        }
+        return mMax;
+    }
+
+    // Bucket of a value: values below 2*SUB_BUCKETS have their own bucket; the others are shifted
+    // right until they fit in [SUB_BUCKETS, 2*SUB_BUCKETS)
+    private static int IndexOf(long value)
+    {
+        final int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return shift*SUB_BUCKETS + (int)(value >>> shift);
+    }
+
+    private static long MiddleValueOf(int index)
+    {
+        if(index < 2*SUB_BUCKETS)
+            return index;
+        final int shift = index/SUB_BUCKETS - 1;
+        final long lowest = (long)(index - shift*SUB_BUCKETS) << shift;
+        return lowest + (1L << shift)/2;
+    }
+}
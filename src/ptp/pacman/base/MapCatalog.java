@@ -0,0 +1,105 @@
+package ptp.pacman.base;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Maps read from files, parsed once and shared by all the games of the process. The catalog keeps a template
+ * of every map (its walls, start positions, points and everything compiled from them: the navigation graph and
+ * the distance table) and gives every game a copy of it, which only has its own bitset of points. So starting
+ * a game on a map that has already been loaded doesn't read any file.
+ *
+ * The templates are never played, so they are never modified. Only the last used ones are kept, up to the
+ * capacity of the catalog; older ones are read again the next time they are needed.
+ *  @see ptp.pacman.base.PacmanMap#PacmanMap(PacmanMap)
+ * */
+public final class MapCatalog
+{
+    /** Number of maps kept by the default catalog. */
+    public static final int DEFAULT_CAPACITY = 8;
+
+    private static MapCatalog sDefault;
+
+    private final int mCapacity;
+    // In access order, so the first one is the least recently used
+    private final LinkedHashMap<String, PacmanMap> mTemplates;
+    private long mLoads, mHits;
+
+    /** Constructor.
+     * @param capacity The maximum number of maps kept.
+     * */
+    public MapCatalog(int capacity)
+    {
+        mCapacity = capacity;
+        mTemplates = new LinkedHashMap<String, PacmanMap>(16, 0.75f, true) {
+            private static final long serialVersionUID = 6410753302978914581L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PacmanMap> eldest)
+            {
+                return size() > mCapacity;
+            }
+        };
+    }
+
+    /** Returns the catalog shared by the games of the application, creating it if needed.
+     * It keeps DEFAULT_CAPACITY maps.
+     * @return The default catalog.
+     * */
+    public static synchronized MapCatalog Default()
+    {
+        if(sDefault == null)
+            sDefault = new MapCatalog(DEFAULT_CAPACITY);
+        return sDefault;
+    }
+
+    /** Returns a new copy of a map with all its points, reading the map file if it isn't in the catalog.
+     * @param filename The name of the map file (see PacmanMap#PacmanMap(String)).
+     * @return The map, that can be played by a single game.
+     * */
+    public PacmanMap newMap(String filename)
+    {
+        return new PacmanMap(template(filename));
+    }
+
+    /** @return The number of maps read from their files. */
+    public synchronized long getNumberOfLoads()
+    {
+        return mLoads;
+    }
+
+    /** @return The number of maps given without reading their files. */
+    public synchronized long getNumberOfHits()
+    {
+        return mHits;
+    }
+
+    /** @return The number of maps in the catalog. */
+    public synchronized int size()
+    {
+        return mTemplates.size();
+    }
+
+    /** Forgets all the maps (i.e. after their files have been modified). Games already started keep theirs.
+     * */
+    public synchronized void clear()
+    {
+        mTemplates.clear();
+    }
+
+    // The lock is held while a map is read, so a map that many games want at once is only read once
+    private synchronized PacmanMap template(String filename)
+    {
+        PacmanMap template = mTemplates.get(filename);
+        if(template != null) {
+            ++mHits;
+            return template;
+        }
+        ++mLoads;
+        template = new PacmanMap(filename);
+        // A map that couldn't be read isn't kept, so it's tried again the next time
+        if(template.mCells != null)
+            mTemplates.put(filename, template);
+        return template;
+    }
+}
@@ -0,0 +1,368 @@
+package ptp.pacman.base;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import ptp.pacman.Vec2i;
+import ptp.pacman.base.Actor.Direction;
+
+/**
+ * Graph of the junctions of a map, compiled when the map is loaded. Most cells of a maze are corridor cells,
+ * with exactly two exits, where an actor can only go on or turn back; the nodes of the graph are the other ones
+ * (junctions and dead ends), and its edges are the corridors between them, weighted by their length.
+ * A search on the graph touches far fewer nodes than one on the cells, and a controller only has to decide
+ * at the nodes: in a corridor, it just follows it (see getCorridorDirection()).
+ *
+ * The graph follows the ghost moves: lines aren't walls, and the map wraps around its borders.
+ * Corridors that form a loop without junctions get one of their cells as a node. Walls never change,
+ * so the graph is immutable and it's shared by all the copies of the map.
+ *
+ * Edges are directed and identified by the node they start at and their first direction:
+ * the edge of node n going in the direction Actor.DIRECTIONS[d] is 4*n + d.
+ *  @see ptp.pacman.base.GraphSearch
+ * */
+public final class NavigationGraph
+{
+    private final int mWidth, mHeight;
+    private final int mNodes;
+    private final int [] mNodeCell;
+    // Node of every cell, or -1
+    private final int [] mCellNode;
+    // For every edge: its target node (-1 if there is no edge), its length, and the direction it enters the target
+    private final int [] mEdgeTarget, mEdgeLength;
+    private final byte [] mEdgeArrival;
+    // For every corridor cell: the edge it belongs to, its distance from the edge start,
+    // and its exits towards the end and the start of the edge
+    private final int [] mCellEdge, mCellOffset;
+    private final byte [] mCellForward, mCellBackward;
+
+    /** Compiles the graph of a map.
+     * @param map The map.
+     * */
+    NavigationGraph(PacmanMap map)
+    {
+        mWidth = map.getWidth();
+        mHeight = map.getHeight();
+        final int cells = mWidth*mHeight;
+
+        // Nodes: walkable cells without exactly two exits
+        mCellNode = new int[cells];
+        Arrays.fill(mCellNode, -1);
+        int [] nodeCell = new int[cells];
+        int nodes = 0;
+        for(int cell=0; cell<cells; ++cell) {
+            if(isWalkable(map, cell) && countExits(map, cell) != 2) {
+                mCellNode[cell] = nodes;
+                nodeCell[nodes++] = cell;
+            }
+        }
+
+        mCellEdge = new int[cells];
+        mCellOffset = new int[cells];
+        mCellForward = new byte[cells];
+        mCellBackward = new byte[cells];
+        Arrays.fill(mCellEdge, -1);
+        // Sized for the nodes found so far, since big maps have far fewer nodes than cells
+        int [] edgeTarget = new int[4*nodes + 4], edgeLength = new int[4*nodes + 4];
+        byte [] edgeArrival = new byte[4*nodes + 4];
+
+        // Corridors from every node. Loops without nodes get one when they are found
+        int traced = 0;
+        for(int cell=0; cell<cells || traced<nodes; ++cell) {
+            if(4*nodes > edgeTarget.length) {
+                final int capacity = Math.max(4*nodes, edgeTarget.length + edgeTarget.length/2);
+                edgeTarget = Arrays.copyOf(edgeTarget, capacity);
+                edgeLength = Arrays.copyOf(edgeLength, capacity);
+                edgeArrival = Arrays.copyOf(edgeArrival, capacity);
+            }
+            while(traced < nodes)
+                traceEdges(map, traced++, nodeCell, edgeTarget, edgeLength, edgeArrival);
+            if(cell < cells && isWalkable(map, cell) && mCellNode[cell] < 0 && mCellEdge[cell] < 0) {
+                mCellNode[cell] = nodes;
+                nodeCell[nodes++] = cell;
+            }
+        }
+
+        mNodes = nodes;
+        mNodeCell = Arrays.copyOf(nodeCell, nodes);
+        mEdgeTarget = Arrays.copyOf(edgeTarget, 4*nodes);
+        mEdgeLength = Arrays.copyOf(edgeLength, 4*nodes);
+        mEdgeArrival = Arrays.copyOf(edgeArrival, 4*nodes);
+    }
+
+    private NavigationGraph(int width, int height, int nodes)
+    {
+        mWidth = width;
+        mHeight = height;
+        mNodes = nodes;
+        final int cells = width*height;
+        mNodeCell = new int[nodes];
+        mCellNode = new int[cells];
+        mEdgeTarget = new int[4*nodes];
+        mEdgeLength = new int[4*nodes];
+        mEdgeArrival = new byte[4*nodes];
+        mCellEdge = new int[cells];
+        mCellOffset = new int[cells];
+        mCellForward = new byte[cells];
+        mCellBackward = new byte[cells];
+    }
+
+    /** Returns the number of bytes written by write().
+     * @param width The map width.
+     * @param height The map height.
+     * @param nodes The number of nodes.
+     * @return The size of the graph in a compiled map.
+     * */
+    static int CompiledSize(int width, int height, int nodes)
+    {
+        return 4*nodes + 4*nodes*(4 + 4 + 1) + width*height*(4 + 4 + 4 + 1 + 1);
+    }
+
+    /** Writes the graph in a compiled map, as it is in memory, so reading it doesn't compile it again.
+     * @param out The buffer.
+     * @see ptp.pacman.base.CompiledMap
+     * */
+    void write(ByteBuffer out)
+    {
+        Put(out, mNodeCell);
+        Put(out, mCellNode);
+        Put(out, mEdgeTarget);
+        Put(out, mEdgeLength);
+        out.put(mEdgeArrival);
+        Put(out, mCellEdge);
+        Put(out, mCellOffset);
+        out.put(mCellForward);
+        out.put(mCellBackward);
+    }
+
+    /** Reads a graph written by write().
+     * @param in The buffer.
+     * @param width The map width.
+     * @param height The map height.
+     * @param nodes The number of nodes.
+     * @return The graph.
+     * */
+    static NavigationGraph Read(ByteBuffer in, int width, int height, int nodes)
+    {
+        NavigationGraph graph = new NavigationGraph(width, height, nodes);
+        Get(in, graph.mNodeCell);
+        Get(in, graph.mCellNode);
+        Get(in, graph.mEdgeTarget);
+        Get(in, graph.mEdgeLength);
+        in.get(graph.mEdgeArrival);
+        Get(in, graph.mCellEdge);
+        Get(in, graph.mCellOffset);
+        in.get(graph.mCellForward);
+        in.get(graph.mCellBackward);
+        return graph;
+    }
+
+    // Bulk copies of int arrays, which advance the position of the byte buffer
+
+    static void Put(ByteBuffer out, int [] values)
+    {
+        out.asIntBuffer().put(values);
+        out.position(out.position() + 4*values.length);
+    }
+
+    static void Get(ByteBuffer in, int [] values)
+    {
+        in.asIntBuffer().get(values);
+        in.position(in.position() + 4*values.length);
+    }
+
+    // Follows the corridors that leave a node, recording their cells the first time they are walked
+    private void traceEdges(PacmanMap map, int node, int [] nodeCell, int [] edgeTarget, int [] edgeLength,
+            byte [] edgeArrival)
+    {
+        final int start = nodeCell[node];
+        for(int d=0; d<4; ++d) {
+            final int edge = 4*node + d;
+            int cell = Neighbour(start, d, mWidth, mHeight);
+            if(!isWalkable(map, cell)) {
+                edgeTarget[edge] = -1;
+                continue;
+            }
+            final boolean record = mCellNode[cell] < 0 && mCellEdge[cell] < 0;
+            int direction = d, length = 1;
+            while(mCellNode[cell] < 0) {
+                final int back = Opposite(direction);
+                int next = -1;
+                for(int e=0; e<4 && next<0; ++e) {
+                    if(e != back && isWalkable(map, Neighbour(cell, e, mWidth, mHeight))) {
+                        next = Neighbour(cell, e, mWidth, mHeight);
+                        if(record) {
+                            mCellEdge[cell] = edge;
+                            mCellOffset[cell] = length;
+                            mCellForward[cell] = (byte)e;
+                            mCellBackward[cell] = (byte)back;
+                        }
+                        direction = e;
+                    }
+                }
+                cell = next;
+                ++length;
+            }
+            edgeTarget[edge] = mCellNode[cell];
+            edgeLength[edge] = length;
+            edgeArrival[edge] = (byte)direction;
+        }
+    }
+
+    private boolean isWalkable(PacmanMap map, int cell)
+    {
+        return !map.isWall(cell % mWidth, cell / mWidth);
+    }
+
+    private int countExits(PacmanMap map, int cell)
+    {
+        int exits = 0;
+        for(int d=0; d<4; ++d)
+            if(isWalkable(map, Neighbour(cell, d, mWidth, mHeight)))
+                ++exits;
+        return exits;
+    }
+
+    /** Returns the cell next to another one, wrapping around the map borders.
+     * @param cell The cell index (y*width + x).
+     * @param direction The index of the direction in Actor.DIRECTIONS (0 to 3).
+     * @param width The map width.
+     * @param height The map height.
+     * @return The index of the neighbour cell.
+     * */
+    static int Neighbour(int cell, int direction, int width, int height)
+    {
+        final int x = cell % width, y = cell / width;
+        switch(direction) {
+        case 0:  return (y == 0 ? height-1 : y-1)*width + x;
+        case 1:  return (y == height-1 ? 0 : y+1)*width + x;
+        case 2:  return y*width + (x == 0 ? width-1 : x-1);
+        default: return y*width + (x == width-1 ? 0 : x+1);
+        }
+    }
+
+    /** Returns the opposite of a direction.
+     * @param direction The index of the direction in Actor.DIRECTIONS (0 to 3).
+     * @return The index of the opposite direction.
+     * */
+    static int Opposite(int direction)
+    {
+        return direction ^ 1;
+    }
+
+    /** @return The width of the map. */
+    public int getWidth()
+    {
+        return mWidth;
+    }
+
+    /** @return The height of the map. */
+    public int getHeight()
+    {
+        return mHeight;
+    }
+
+    /** @return The number of nodes (junctions and dead ends). */
+    public int getNumberOfNodes()
+    {
+        return mNodes;
+    }
+
+    /** Returns the node at a cell.
+     * @param x The x coordinate of the cell.
+     * @param y The y coordinate of the cell.
+     * @return The node, or -1 if the cell is a wall or a corridor.
+     * */
+    public int getNode(int x, int y)
+    {
+        return mCellNode[y*mWidth + x];
+    }
+
+    /** Returns the cell of a node.
+     * @param node The node.
+     * @return The cell index (y*width + x).
+     * */
+    public int getNodeCell(int node)
+    {
+        return mNodeCell[node];
+    }
+
+    /** Returns the node at the end of an edge.
+     * @param edge The edge (4*node + direction).
+     * @return The target node, or -1 if the node has no exit in that direction.
+     * */
+    public int getEdgeTarget(int edge)
+    {
+        return mEdgeTarget[edge];
+    }
+
+    /** Returns the length of an edge.
+     * @param edge The edge (4*node + direction).
+     * @return The number of steps from its start node to its target node.
+     * */
+    public int getEdgeLength(int edge)
+    {
+        return mEdgeLength[edge];
+    }
+
+    /** Returns the edge that goes the other way along the same corridor.
+     * @param edge The edge (4*node + direction).
+     * @return The reverse edge.
+     * */
+    public int getReverseEdge(int edge)
+    {
+        return 4*mEdgeTarget[edge] + Opposite(mEdgeArrival[edge]);
+    }
+
+    /** Tells if an actor has to decide where to go at a cell, that is, if it isn't a corridor cell.
+     * @param x The x coordinate of the cell.
+     * @param y The y coordinate of the cell.
+     * @return If the cell is a node of the graph.
+     * */
+    public boolean isDecisionCell(int x, int y)
+    {
+        return mCellNode[y*mWidth + x] >= 0;
+    }
+
+    /** Returns the edge of a corridor cell. The cell is between the start and the target node of the edge.
+     * @param cell The cell index (y*width + x).
+     * @return The edge, or -1 if the cell isn't a corridor cell.
+     * */
+    public int getCorridorEdge(int cell)
+    {
+        return mCellEdge[cell];
+    }
+
+    /** Returns the number of steps from the start node of the edge of a corridor cell to the cell.
+     * @param cell The cell index (y*width + x).
+     * @return The distance, between 1 and the edge length minus 1.
+     * */
+    public int getCorridorOffset(int cell)
+    {
+        return mCellOffset[cell];
+    }
+
+    /** Returns the exit of a corridor cell towards one of the ends of its edge.
+     * @param cell The cell index (y*width + x).
+     * @param forward If the exit towards the target node of the edge is wanted, instead of the one towards its start.
+     * @return The index of the direction in Actor.DIRECTIONS.
+     * */
+    public int getCorridorExit(int cell, boolean forward)
+    {
+        return forward ? mCellForward[cell] : mCellBackward[cell];
+    }
+
+    /** Returns the direction to go on along a corridor.
+     * @param cell The corridor cell.
+     * @param arrival The direction the actor arrived at the cell with.
+     * @return The exit of the cell that isn't the one the actor came from, or STOPPED if the cell isn't a corridor.
+     * */
+    public Direction getCorridorDirection(Vec2i cell, Direction arrival)
+    {
+        final int c = cell.y*mWidth + cell.x;
+        if(mCellEdge[c] < 0)
+            return Direction.STOPPED;
+        final int back = arrival == Direction.STOPPED ? -1 : Opposite(arrival.ordinal());
+        return Actor.DIRECTIONS[mCellForward[c] != back ? mCellForward[c] : mCellBackward[c]];
+    }
+}
@@ -0,0 +1,284 @@
+package ptp.pacman.base;
+
+import java.util.Arrays;
+import java.util.List;
+
+import ptp.pacman.Vec2i;
+import ptp.pacman.base.Actor.Direction;
+
+/**
+ * Distance fields of a game, shared by all its ghosts. The field of a Pacman holds, for every cell, the length
+ * of the shortest path from that cell to the Pacman, walking as a ghost does (lines aren't walls, and the map
+ * wraps around its borders). Then every ghost reads its next step in O(1).
+ *
+ * The fields are read from the DistanceTable of the map, when it has one. Otherwise (the map is too big)
+ * the field of a Pacman is computed with a breadth-first search from its cell, the first time a ghost asks for it
+ * after the Pacman has changed its cell, so there is at most a search per Pacman and tick however many ghosts
+ * there are.
+ *
+ * The searched fields only cover a window of at most (2*RADIUS + 1) cells in each axis around their Pacman, so
+ * they take at most 1 MB per Pacman whatever the size of the map. On maps that don't fit in the window, the search
+ * stops at RADIUS steps (all the cells that are closer are in the window, so their distances are exact), and a
+ * ghost that is farther than that heads towards the Pacman by its Manhattan distance until it gets in range.
+ *
+ * It's owned by its game (see Game.getNavigation()). It can be used from several threads at once, since the
+ * controllers of a game with a ControllerBudget run at the same time: the table needs no lock, and the fields
+ * are locked.
+ *  @see ptp.pacman.controller.AbstractGhostController#directionTowards(Pacman)
+ *  @see ptp.pacman.base.DistanceTable
+ * */
+public final class NavigationService
+{
+    /** Distance of the cells from which the Pacman can't be reached, or that are farther than RADIUS steps from it
+     * on maps bigger than the window of the fields. */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+    /** Half the size of the window of the searched fields. */
+    public static final int RADIUS = 255;
+
+    private final Game mGame;
+    private int mWidth, mHeight;
+    // Size of the window of the fields. When it's smaller than the map, the searches stop at RADIUS steps
+    private int mWindowWidth, mWindowHeight;
+    private boolean mBounded;
+    private int [][] mFields = new int[0][];
+    private int [] mSources = new int[0];
+    private int [] mQueue = new int[0];
+    private long mSearches, mExpansions;
+
+    /** Constructor.
+     * @param g The game whose Pacmans are followed.
+     * */
+    NavigationService(Game g)
+    {
+        mGame = g;
+    }
+
+    /** Returns the length of the shortest path from a cell to a Pacman.
+     * @param p The Pacman.
+     * @param x The x coordinate of the cell.
+     * @param y The y coordinate of the cell.
+     * @return The number of steps, or UNREACHABLE.
+     * */
+    public int getDistance(Pacman p, int x, int y)
+    {
+        final DistanceTable table = mGame.getMap().getDistanceTable();
+        if(table != null)
+            return table.getDistance(x, y, p.getCell().x, p.getCell().y);
+        synchronized(this) {
+            final int [] field = fieldOf(p);
+            final int slot = slot(x, y, p.getCell().x, p.getCell().y);
+            return slot >= 0 ? field[slot] : UNREACHABLE;
+        }
+    }
+
+    /** Returns the direction of the first step of the shortest path from a cell to a Pacman.
+     * @param p The Pacman.
+     * @param cell The cell (i.e. the ghost one).
+     * @return The direction, or STOPPED if the cell is the Pacman one or it can't reach it.
+     * */
+    public Direction getDirectionTowards(Pacman p, Vec2i cell)
+    {
+        return bestDirection(p, cell, false);
+    }
+
+    /** Returns the direction of the neighbour cell that is the farthest from a Pacman.
+     * @param p The Pacman.
+     * @param cell The cell (i.e. the ghost one).
+     * @return The direction, or STOPPED if the cell can't reach the Pacman (so it's safe where it is).
+     * */
+    public Direction getDirectionAwayFrom(Pacman p, Vec2i cell)
+    {
+        return bestDirection(p, cell, true);
+    }
+
+    /** @return The number of cells expanded by all the searches since the game was created (none if the map
+     * has a DistanceTable). */
+    public synchronized long getNumberOfExpandedCells()
+    {
+        return mExpansions;
+    }
+
+    /** @return The number of distance fields computed since the game was created. */
+    public synchronized long getNumberOfSearches()
+    {
+        return mSearches;
+    }
+
+    private Direction bestDirection(Pacman p, Vec2i cell, boolean away)
+    {
+        final PacmanMap map = mGame.getMap();
+        final DistanceTable table = map.getDistanceTable();
+        if(table != null)
+            return bestDirection(table, map.getWidth(), map.getHeight(), p.getCell(), cell, away);
+        synchronized(this) {
+            return bestDirection(map, fieldOf(p), p.getCell(), cell, away);
+        }
+    }
+
+    private Direction bestDirection(PacmanMap map, int [] field, Vec2i pacman, Vec2i cell, boolean away)
+    {
+        final int from = cell.y*mWidth + cell.x;
+        final int here = distance(field, from, pacman);
+        if(here == UNREACHABLE)
+            return mBounded && !away ? closerDirection(map, from, pacman) : Direction.STOPPED;
+        Direction best = Direction.STOPPED;
+        int bestDistance = here;
+        // Ties go to the first direction, in the order of Actor.DIRECTIONS
+        final int exits = map.getGhostExits(cell.x, cell.y);
+        for(int i=0; i<4; ++i) {
+            if((exits & (1 << i)) == 0)
+                continue;
+            final int distance = distance(field, NavigationGraph.Neighbour(from, i, mWidth, mHeight), pacman);
+            if(distance == UNREACHABLE)
+                continue;
+            if(away ? distance > bestDistance : distance < bestDistance) {
+                best = Actor.DIRECTIONS[i];
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    // Step of a ghost out of the range of the search: the exit that is the closest to the Pacman in a straight line
+    private Direction closerDirection(PacmanMap map, int from, Vec2i pacman)
+    {
+        final int exits = map.getGhostExits(from % mWidth, from / mWidth);
+        Direction best = Direction.STOPPED;
+        int bestDistance = Integer.MAX_VALUE;
+        for(int i=0; i<4; ++i) {
+            if((exits & (1 << i)) == 0)
+                continue;
+            final int next = NavigationGraph.Neighbour(from, i, mWidth, mHeight);
+            final int distance = Math.abs(Delta(next % mWidth, pacman.x, mWidth))
+                               + Math.abs(Delta(next / mWidth, pacman.y, mHeight));
+            if(distance < bestDistance) {
+                best = Actor.DIRECTIONS[i];
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    // The same on the table of the map, which is immutable, so it doesn't need any lock
+    private static Direction bestDirection(DistanceTable table, int width, int height, Vec2i pacman, Vec2i cell,
+            boolean away)
+    {
+        final int source = pacman.y*width + pacman.x, from = cell.y*width + cell.x;
+        final int here = table.getDistance(from, source);
+        if(here == UNREACHABLE)
+            return Direction.STOPPED;
+        Direction best = Direction.STOPPED;
+        int bestDistance = here;
+        for(int i=0; i<4; ++i) {
+            // Walls are unreachable too
+            final int distance = table.getDistance(NavigationGraph.Neighbour(from, i, width, height), source);
+            if(distance == UNREACHABLE)
+                continue;
+            if(away ? distance > bestDistance : distance < bestDistance) {
+                best = Actor.DIRECTIONS[i];
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    private int distance(int [] field, int cell, Vec2i pacman)
+    {
+        final int slot = slot(cell % mWidth, cell / mWidth, pacman.x, pacman.y);
+        return slot >= 0 ? field[slot] : UNREACHABLE;
+    }
+
+    // Position of a cell in the window of a field, or -1 if it's out of it
+    private int slot(int x, int y, int sourceX, int sourceY)
+    {
+        final int wx = WindowCoordinate(x, sourceX, mWidth, mWindowWidth),
+                  wy = WindowCoordinate(y, sourceY, mHeight, mWindowHeight);
+        return wx < 0 || wy < 0 ? -1 : wy*mWindowWidth + wx;
+    }
+
+    // A window as big as the map is the map itself. Otherwise it's centered on the source, wrapping around the
+    // borders
+    private static int WindowCoordinate(int c, int source, int size, int window)
+    {
+        if(window == size)
+            return c;
+        final int delta = Delta(c, source, size);
+        return Math.abs(delta) <= RADIUS ? delta + RADIUS : -1;
+    }
+
+    // Shortest signed difference between two coordinates, wrapping around the borders
+    private static int Delta(int c, int source, int size)
+    {
+        int delta = (c - source) % size;
+        if(delta > size/2)
+            delta -= size;
+        else if(delta < -size/2)
+            delta += size;
+        return delta;
+    }
+
+    // Field of a Pacman, searched again if it has changed its cell
+    private int [] fieldOf(Pacman p)
+    {
+        final List<Pacman> pacmans = mGame.getPacmans();
+        int index = 0;
+        while(pacmans.get(index) != p)
+            ++index;
+
+        final PacmanMap map = mGame.getMap();
+        if(mWidth != map.getWidth() || mHeight != map.getHeight() || mFields.length < pacmans.size())
+            resize(map, pacmans.size());
+
+        final int source = p.getCell().y*mWidth + p.getCell().x;
+        if(mSources[index] != source) {
+            search(map, mFields[index], source);
+            mSources[index] = source;
+        }
+        return mFields[index];
+    }
+
+    private void resize(PacmanMap map, int pacmans)
+    {
+        mWidth = map.getWidth();
+        mHeight = map.getHeight();
+        mWindowWidth = Math.min(mWidth, 2*RADIUS + 1);
+        mWindowHeight = Math.min(mHeight, 2*RADIUS + 1);
+        mBounded = mWindowWidth < mWidth || mWindowHeight < mHeight;
+        mFields = new int[pacmans][mWindowWidth*mWindowHeight];
+        mSources = new int[pacmans];
+        Arrays.fill(mSources, -1);
+        mQueue = new int[mWindowWidth*mWindowHeight];
+    }
+
+    // Breadth-first search from the Pacman cell, up to RADIUS steps if the map is bigger than the window. Moving
+    // is symmetric, so the distance from the Pacman to a cell is the distance from that cell to the Pacman
+    private void search(PacmanMap map, int [] field, int source)
+    {
+        ++mSearches;
+        Arrays.fill(field, UNREACHABLE);
+        final int sourceX = source % mWidth, sourceY = source / mWidth;
+        final int maxDistance = mBounded ? RADIUS : Integer.MAX_VALUE;
+        field[slot(sourceX, sourceY, sourceX, sourceY)] = 0;
+        mQueue[0] = source;
+        int head = 0, tail = 1;
+        final int [] queue = mQueue;
+        while(head < tail) {
+            final int cell = queue[head++];
+            final int distance = field[slot(cell % mWidth, cell / mWidth, sourceX, sourceY)] + 1;
+            if(distance > maxDistance)
+                continue;
+            final int exits = map.getGhostExits(cell % mWidth, cell / mWidth);
+            for(int i=0; i<4; ++i) {
+                if((exits & (1 << i)) == 0)
+                    continue;
+                final int next = NavigationGraph.Neighbour(cell, i, mWidth, mHeight);
+                final int slot = slot(next % mWidth, next / mWidth, sourceX, sourceY);
+                if(field[slot] == UNREACHABLE) {
+                    field[slot] = distance;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        mExpansions += tail;
+    }
+}
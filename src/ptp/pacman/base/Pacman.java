@@ -1,5 +1,7 @@
 package ptp.pacman.base;
 
+import java.nio.ByteBuffer;
+
 import ptp.pacman.Vec2i;
 
 /**
@@ -21,6 +23,7 @@ public final class Pacman extends Actor
     protected long mStateEaterStartMillis;
     protected int mLives;
     protected int mPoints;
+    protected int mDeaths;
     protected boolean mDead;
     protected PacmanStatusListener mStatusListener;
     
@@ -36,6 +39,7 @@ public final class Pacman extends Actor
         mState = State.NORMAL;
         mLives = lives;
         mPoints = 0;
+        mDeaths = 0;
         mNextDirection = mDirection;
         mDead = false;
     }
@@ -70,12 +74,19 @@ public final class Pacman extends Actor
     	return mDead;
     }
     
+    @Override
+    boolean canMove()
+    {
+    	return isAlive() && !mDead;
+    }
+    
     public void restart()
     {
     	super.restart();
     	mDead = false;
     	mLives = 3;
     	mPoints = 0;
+    	mDeaths = 0;
     	mState = State.NORMAL;
     	mDirection = mNextDirection = Direction.STOPPED;
     	if(mStatusListener!=null){
@@ -98,6 +109,7 @@ public final class Pacman extends Actor
     {
     	if(!mDead) {
 	        --mLives;
+	        ++mDeaths;
 	        mDead = true;
 	        if(mStatusListener!=null)
 	            mStatusListener.setLives(mLives);
@@ -114,6 +126,14 @@ public final class Pacman extends Actor
             mStatusListener.setPoints(mLives);
 	}
     
+    /** Gets the number of times that the Pacman has died.
+     * @return The number of deaths.
+     * */
+    public int getDeaths()
+    {
+        return mDeaths;
+    }
+    
     /** Gets the number of points.
      * @return The number of points.
      * */
@@ -133,6 +153,40 @@ public final class Pacman extends Actor
             mStatusListener.setPoints(mPoints);
     }
     
+    /** Writes the Pacman state in a game checkpoint: the actor state, its state and eater timer, lives, points and deaths.
+     * @see ptp.pacman.base.Actor#writeState(ByteBuffer)
+     * */
+    @Override
+    void writeState(ByteBuffer out)
+    {
+        super.writeState(out);
+        out.put((byte)((mState == State.EATER ? 2 : 0) | (mDead ? 1 : 0)));
+        out.put((byte)mLives);
+        out.putInt(mPoints);
+        out.putInt(mDeaths);
+        out.putLong(mStateEaterStartMillis);
+    }
+    
+    /** Reads the state written by writeState(), and updates the status listener, if set.
+     * @see ptp.pacman.base.Actor#readState(ByteBuffer)
+     * */
+    @Override
+    void readState(ByteBuffer in)
+    {
+        super.readState(in);
+        int flags = in.get();
+        mState = (flags & 2) != 0 ? State.EATER : State.NORMAL;
+        mDead = (flags & 1) != 0;
+        mLives = in.get();
+        mPoints = in.getInt();
+        mDeaths = in.getInt();
+        mStateEaterStartMillis = in.getLong();
+        if(mStatusListener!=null){
+            mStatusListener.setLives(mLives);
+            mStatusListener.setPoints(mPoints);
+        }
+    }
+    
     /** Sets the status listener for this Pacman. Updates its when it's set.
      * @param listener The new status listener.
      * */
@@ -151,8 +205,13 @@ public final class Pacman extends Actor
     @Override
     protected boolean checkCellForWall(Vec2i v)
     {
-        char cell = mMap.getCell(v.x,v.y);
-        return !PacmanMap.IsWallOrLine(cell);
+        return !mMap.isWallOrLine(v.x, v.y);
+    }
+    
+    @Override
+    protected int getExits(int x, int y)
+    {
+        return mMap.getPacmanExits(x, y);
     }
     
     /** Move method. Do not call!
@@ -168,7 +227,8 @@ public final class Pacman extends Actor
     /** Moves the Pacman, doing the same ass seen in Actor class.
      * It needs to know the time to update some of the state variables of the Pacman.
      * @see ptp.pacman.base.Actor#move()
-     * @param timeMillis The current time, in milliseconds
+     * @see ptp.pacman.base.Game#getTimeMillis()
+     * @param timeMillis The current simulated game time, in milliseconds
      * */
     public void move(long timeMillis)
     {
@@ -176,16 +236,15 @@ public final class Pacman extends Actor
         super.move();
         
         // 2. Check for items in my current cell
-        final int xdim = mMap.getDimensions().x,
-                  ydim = mMap.getDimensions().y;
+        final int xdim = mMap.getWidth(),
+                  ydim = mMap.getHeight();
         int x = mCell.x, y = mCell.y;
         switch(mDirection) {
         case UP: y = (++y)%ydim; break;
         case LEFT: x = (++x)%xdim; break;
         }
-        char cell = mMap.getCell(x, y);
-        if(!PacmanMap.IsWallOrLine(cell)) {
-            cell = mMap.consumePoint(x, y);
+        if(!mMap.isWallOrLine(x, y)) {
+            final char cell = mMap.consumePoint(x, y);
             if(cell == PacmanMap.CELL_POINT_SMALL) {
                 if(mState == State.NORMAL)
                     addPoints(POINTS_NORMAL);
@@ -1,10 +1,14 @@
 package ptp.pacman.base;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
 
 import ptp.pacman.Util;
@@ -37,25 +41,69 @@ public final class PacmanMap
 		    CELL_DIAG_315_TOP =     'k',
 		    CELL_DIAG_315_BOTTOM =  'l';
 
+	// Glyphs that can be stored in a cell, by their code. Walls go after the line
+	private static final char [] GLYPHS = {
+	        CELL_EMPTY, CELL_POINT_SMALL, CELL_POINT_BIG, CELL_LINE,
+	        CELL_FULL, CELL_V_LEFT, CELL_V_RIGHT, CELL_H_TOP, CELL_H_BOTTOM,
+	        CELL_DIAG_45_TOP, CELL_DIAG_45_BOTTOM, CELL_DIAG_135_TOP, CELL_DIAG_135_BOTTOM,
+	        CELL_DIAG_225_TOP, CELL_DIAG_225_BOTTOM, CELL_DIAG_315_TOP, CELL_DIAG_315_BOTTOM
+	};
+	// A cell is the code of its glyph plus a flag for each kind of wall it is
+	static final byte GLYPH_MASK = 0x1F, WALL = 0x20, WALL_OR_LINE = 0x40;
+	private static final byte EMPTY = 0, POINT_SMALL = 1, POINT_BIG = 2;
+	// Cell of every glyph up to 0xFF. Unknown glyphs are walls, drawn as CELL_FULL
+	private static final byte [] CODES = new byte[256];
+	static {
+	    for(int c=0; c<CODES.length; ++c)
+	        CODES[c] = 4 | WALL | WALL_OR_LINE;
+	    for(int code=0; code<GLYPHS.length; ++code)
+	        CODES[GLYPHS[code]] = (byte)(code | (code > 3 ? WALL : 0) | (code > 2 ? WALL_OR_LINE : 0));
+	}
+
     int mHeight, mWidth, mNumPoints;
-	char [][] mCells;
+    // Incremented every time a point is consumed or restored, so copies of the cells know when they are old
+    int mModifications;
+    final Vec2i mDimensions = new Vec2i();
+	// Cells in row order (y*width + x), so every wall test is a single load. They are never modified (eaten
+	// points are only cleared in mPoints), so they are shared by all the copies of the map
+	byte [] mCells;
+	// Moves allowed from the start of every cell, a bit per direction of Actor.DIRECTIONS: the ones of the
+	// ghosts in the low half, and the ones of the Pacmans in the high half. Shared by the copies of the map
+	byte [] mExits;
+	// Index of the point of every cell, in row order, or -1 for the cells without one. Shared by the copies
+	int [] mPointIndex;
+	int mTotalPoints;
+	// The only state of a copy: a bit for every point of the map, set while it hasn't been eaten
+	long [] mPoints;
 	final ArrayList<Vec2i> mStartPositions = new ArrayList<Vec2i>();
     final ArrayList<Vec2i> mGhostStartPositions = new ArrayList<Vec2i>();
     final String mName;
+    // Compiled from the walls when the map is read, and shared by its copies
+    NavigationGraph mNavigationGraph;
+    DistanceTable mDistanceTable;
 	
     /** Default constructor. Gets map path, reads the file and stores the map representation.
+     * Files whose name ends in CompiledMap.EXTENSION are compiled maps, that are mapped instead of parsed.
      * @param filename The path of the file that represents the map.
      * */
 	public PacmanMap(String filename)
 	{
 		mName = filename;
 		mNumPoints = 0;
-		System.out.println(filename);
+		if(filename.endsWith(CompiledMap.EXTENSION)) {
+			try {
+				CompiledMap.Read(this, new File(Util.MapPathWithName(filename)));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			return;
+		}
         try {
         	FileReader fr = new FileReader(Util.MapPathWithName(filename));
             BufferedReader br  = new BufferedReader(fr);
 			readFile(br);
 			br.close();
+			mDistanceTable = DistanceTable.ForMap(this, new File(Util.MapPathWithName(filename) + DistanceTable.EXTENSION));
 	        fr.close();
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
@@ -66,7 +114,26 @@ public final class PacmanMap
 		}
 	}
 	
-	/** Copy constructor. Creates a copy of a map.
+	/** Constructor that reads the map representation from any reader (i.e. a map generated in memory),
+	 * using the same format as map files.
+	 * @param name The map's name.
+	 * @param reader The reader from where the map is read. It isn't closed.
+	 * @throws IllegalArgumentException If the map representation is wrong.
+	 * */
+	public PacmanMap(String name, Reader reader)
+	{
+		mName = name;
+		mNumPoints = 0;
+		try {
+			readFile(new BufferedReader(reader));
+			mDistanceTable = DistanceTable.Compute(this);
+		} catch (Exception e) {
+			throw new IllegalArgumentException("Wrong map " + name + ": " + e.getMessage(), e);
+		}
+	}
+	
+	/** Copy constructor. Creates a copy of a map, with the points that remain in it. The walls are shared
+	 * with the map, so a copy (i.e. one per game) only takes a bit per point.
 	 * @param map The PacmanMap to be copied.
 	 * */
 	public PacmanMap(PacmanMap map)
@@ -74,12 +141,18 @@ public final class PacmanMap
 		mName = map.mName;
 		mHeight = map.mHeight;
 		mWidth = map.mWidth;
-		mCells = new char[map.mHeight][map.mWidth];
-		for(int i=0 ; i<mHeight; ++i)
-			System.arraycopy(map.mCells[i], 0, mCells[i], 0, mWidth);
+		mDimensions.set(mWidth, mHeight);
+		mCells = map.mCells;
+		mExits = map.mExits;
+		mPointIndex = map.mPointIndex;
+		mTotalPoints = map.mTotalPoints;
+		mPoints = map.mPoints.clone();
+		mNumPoints = map.mNumPoints;
 		
 		mStartPositions.addAll(map.mStartPositions);
 		mGhostStartPositions.addAll(map.mGhostStartPositions);
+		mNavigationGraph = map.mNavigationGraph;
+		mDistanceTable = map.mDistanceTable;
 	}
 	
 	/** Returns the map's name.
@@ -90,6 +163,24 @@ public final class PacmanMap
 		return mName;
 	}
 	
+	/** Returns the graph of the junctions of the map, for controllers that only decide at them.
+	 * @return The navigation graph, or null if the map couldn't be read.
+	 * @see ptp.pacman.base.NavigationGraph
+	 * */
+	public NavigationGraph getNavigationGraph()
+	{
+		return mNavigationGraph;
+	}
+	
+	/** Returns the distances between all the pairs of walkable cells of the map, cached next to its file.
+	 * @return The distance table, or null if the map is too big (or it couldn't be read).
+	 * @see ptp.pacman.base.DistanceTable
+	 * */
+	public DistanceTable getDistanceTable()
+	{
+		return mDistanceTable;
+	}
+	
 	/** Internal method that reads a map file and generates the map representation in memory.
 	 * */
     protected void readFile(BufferedReader in) throws Exception
@@ -101,8 +192,8 @@ public final class PacmanMap
         divLine = in.readLine().split(" ",2);
         mWidth = Integer.valueOf(divLine[0]);
         mHeight = Integer.valueOf(divLine[1]);
-        mCells = new char[mHeight][mWidth];
-        System.out.println("Map : " + mHeight + "," + mWidth);
+        mCells = new byte[mWidth*mHeight];
+        mDimensions.set(mWidth, mHeight);
         
         // Read map cells, adding Pacman and Ghost start cells to their vectors.
         try{
@@ -113,21 +204,55 @@ public final class PacmanMap
 	        	for (int j=0 ; j < mWidth ; j++){
 	        		if (line.charAt(j) == CELL_PACMAN_START){
 	        		    mStartPositions.add(new Vec2i(j,i));
-	        			mCells[i][j] = CELL_EMPTY;
+	        			mCells[i*mWidth + j] = EMPTY;
 	        		} else if(line.charAt(j) == CELL_GHOST_START) {
                         mGhostStartPositions.add(new Vec2i(j,i));
-	        			mCells[i][j] = CELL_EMPTY;
+	        			mCells[i*mWidth + j] = EMPTY;
 	        		} else {
 	        			if(line.charAt(j) == CELL_POINT_SMALL || line.charAt(j) == CELL_POINT_BIG) {
 		        			++mNumPoints;
 		        		}
-	        			mCells[i][j] = line.charAt(j);
+	        			mCells[i*mWidth + j] = Code(line.charAt(j));
 	        		}
 	        	}
 	        }
         }catch(Exception e){
         	throw new Exception("Number of cols read incorrect\n" + e.getMessage());
         }
+        
+        computeExits();
+        indexPoints();
+        mNavigationGraph = new NavigationGraph(this);
+    }
+    
+    // Numbers the points in row order, and starts with all of them
+    private void indexPoints()
+    {
+        mPointIndex = new int[mCells.length];
+        mTotalPoints = 0;
+        for(int cell=0; cell<mCells.length; ++cell)
+            mPointIndex[cell] = mCells[cell] == POINT_SMALL || mCells[cell] == POINT_BIG ? mTotalPoints++ : -1;
+        mPoints = new long[(mTotalPoints + 63) >>> 6];
+        reset();
+    }
+    
+    // Moves from the start of every cell, with the rules of Actor.canApplyMovement(): the actor needs its cell and
+    // the next one, but not its cell when it wraps around the top or left border
+    private void computeExits()
+    {
+        mExits = new byte[mWidth*mHeight];
+        for(int cell=0; cell<mExits.length; ++cell) {
+            int exits = 0;
+            for(int d=0; d<4; ++d) {
+                final int next = NavigationGraph.Neighbour(cell, d, mWidth, mHeight);
+                final boolean wraps = (d == 0 && cell < mWidth) || (d == 2 && cell % mWidth == 0);
+                if((mCells[next] & WALL) == 0 && (wraps || (mCells[cell] & WALL) == 0))
+                    exits |= 1 << d;
+                if((mCells[next] & WALL_OR_LINE) == 0 && (wraps || (mCells[cell] & WALL_OR_LINE) == 0))
+                    exits |= 0x10 << d;
+            }
+            mExits[cell] = (byte)exits;
+        }
     }
     
     /** Number of start positions for Pacmans.
@@ -182,23 +307,24 @@ public final class PacmanMap
         return mGhostStartPositions.get(0);
     }
     
-    /** Returns a random ghost start position. Makes the game cooler.
-     * @return A rando ghost start position.
+    /** Returns a random ghost start position, chosen with the given random number generator
+     * (the one of the game, so that games can be replayed). Makes the game cooler.
+     * @param r The random number generator.
+     * @return A random ghost start position.
      * @see ptp.pacman.base.PacmanMap#getGhostStart(int)
      * */
-    public Vec2i getRandomGhostStart()
+    public Vec2i getRandomGhostStart(Random r)
     {
-        Random r = new Random();
         int index = r.nextInt(mGhostStartPositions.size());
         return mGhostStartPositions.get(index);
     }
     
-    /** Returns the dimensions of the map.
+    /** Returns the dimensions of the map. The vector is cached, so it must not be modified.
      * @return A ptp.pacman.Vec2i with the width and height of the map.
      * */
     public Vec2i getDimensions()
     {
-        return new Vec2i(mWidth, mHeight);
+        return mDimensions;
     }
     
     /** Returns the width of the map.
@@ -225,16 +351,56 @@ public final class PacmanMap
      * */
     char consumePoint(int x, int y)
     {
-        char prev = mCells[y][x];
-        if(prev == CELL_POINT_SMALL || prev == CELL_POINT_BIG) {
+        final int cell = y*mWidth + x, point = mPointIndex[cell];
+        if(point >= 0 && (mPoints[point >>> 6] & 1L << point) != 0) {
         	--mNumPoints;
-            mCells[y][x] = CELL_EMPTY;
-            return prev;
+        	++mModifications;
+            mPoints[point >>> 6] &= ~(1L << point);
+            return Glyph(mCells[cell]);
         } else {
             return ' ';
         }
     }
 
+    /** Puts back all the points of the map, as it was read. It only clears the bitset of the points, since
+     * the cells are never modified.
+     * */
+    void reset()
+    {
+        Arrays.fill(mPoints, -1L);
+        if((mTotalPoints & 63) != 0)
+            mPoints[mPoints.length - 1] = (1L << mTotalPoints) - 1;
+        mNumPoints = mTotalPoints;
+        ++mModifications;
+    }
+
+    /** Writes the points that remain in this map as a bitset, with a bit for every point of the map
+     * (in row order), so that a checkpoint doesn't need to store the whole grid.
+     * @param out The checkpoint buffer.
+     * */
+    void writePoints(ByteBuffer out)
+    {
+        for(int i=0, bytes=(mTotalPoints + 7) >>> 3; i<bytes; ++i)
+            out.put((byte)(mPoints[i >>> 3] >>> 8*(i & 7)));
+    }
+    
+    /** Reads the points written by writePoints(), restoring or removing every point of the map.
+     * @param in The checkpoint buffer.
+     * */
+    void readPoints(ByteBuffer in)
+    {
+        Arrays.fill(mPoints, 0);
+        for(int i=0, bytes=(mTotalPoints + 7) >>> 3; i<bytes; ++i)
+            mPoints[i >>> 3] |= (in.get() & 0xFFL) << 8*(i & 7);
+        // The bits after the last point are padding
+        if((mTotalPoints & 63) != 0)
+            mPoints[mPoints.length - 1] &= (1L << mTotalPoints) - 1;
+        mNumPoints = 0;
+        for(long word : mPoints)
+            mNumPoints += Long.bitCount(word);
+        ++mModifications;
+    }
+
     /** Returns a cell, given its coordinates.
      * @param x The x coordinate of the cell.
      * @param y The y coordinate of the cell.
@@ -242,7 +408,20 @@ public final class PacmanMap
      * */
     public char getCell(int x, int y)
     {
-        return this.mCells[y][x];
+        return getCell(mPoints, y*mWidth + x);
+    }
+    
+    /** Returns a cell of this map with the points of any copy of it (i.e. the ones of a GameSnapshot).
+     * @param points The bitset of the points that remain.
+     * @param cell The index of the cell (y*width + x).
+     * @return The value of the cell.
+     * */
+    char getCell(long [] points, int cell)
+    {
+        final int point = mPointIndex[cell];
+        if(point >= 0 && (points[point >>> 6] & 1L << point) == 0)
+            return CELL_EMPTY;
+        return Glyph(mCells[cell]);
     }
     
     /** Returns if a cell can be considered wall in the current map.
@@ -252,7 +431,7 @@ public final class PacmanMap
      * */
     public boolean isWall(int x, int y)
     {
-        return IsWall(getCell(x,y));
+        return (mCells[y*mWidth + x] & WALL) != 0;
     }
     
     /** Returns if a cell can be considered wall or the line that closes some boxes, in the current map.
@@ -262,7 +441,30 @@ public final class PacmanMap
      * */
     public boolean isWallOrLine(int x, int y)
     {
-        return IsWallOrLine(getCell(x,y));
+        return (mCells[y*mWidth + x] & WALL_OR_LINE) != 0;
+    }
+    
+    /** Returns the directions a ghost can take from the start of a cell (with no offset), as in
+     * Actor.canApplyMovement(), but with a single load.
+     * @param x The x coordinate of the cell.
+     * @param y The y coordinate of the cell.
+     * @return A bit for every direction that isn't blocked, in the order of Actor.DIRECTIONS
+     * (UP is 1, DOWN is 2, LEFT is 4 and RIGHT is 8).
+     * */
+    public int getGhostExits(int x, int y)
+    {
+        return mExits[y*mWidth + x] & 0x0F;
+    }
+    
+    /** Returns the directions a Pacman can take from the start of a cell (with no offset). Lines block them.
+     * @param x The x coordinate of the cell.
+     * @param y The y coordinate of the cell.
+     * @return A bit for every direction that isn't blocked, in the order of Actor.DIRECTIONS.
+     * @see ptp.pacman.base.PacmanMap#getGhostExits(int, int)
+     * */
+    public int getPacmanExits(int x, int y)
+    {
+        return (mExits[y*mWidth + x] >> 4) & 0x0F;
     }
 	
     /** Returns if all the points on the current map have been eaten by the Pacmans.
@@ -279,11 +481,7 @@ public final class PacmanMap
      * */
     public static boolean IsWall(char c)
     {
-        if (c==CELL_EMPTY || c==CELL_POINT_SMALL ||
-            c==CELL_POINT_BIG || c==CELL_LINE)
-            return false;
-        else
-            return true;
+        return (Code(c) & WALL) != 0;
     }
     
     /** Static method that returns if a cell is a wall or line, or not.
@@ -292,10 +490,24 @@ public final class PacmanMap
      * */
     public static boolean IsWallOrLine(char c)
     {
-        if (c==CELL_EMPTY || c==CELL_POINT_SMALL ||
-            c==CELL_POINT_BIG)
-            return false;
-        else
-            return true;
+        return (Code(c) & WALL_OR_LINE) != 0;
+    }
+    
+    /** Returns how a glyph is stored in a cell.
+     * @param c The glyph, as found in map files.
+     * @return Its code and wall flags.
+     * */
+    static byte Code(char c)
+    {
+        return c < CODES.length ? CODES[c] : CODES[CELL_FULL];
+    }
+    
+    /** Returns the glyph of a stored cell.
+     * @param cell The cell, with its code and wall flags.
+     * @return The glyph, as found in map files.
+     * */
+    static char Glyph(byte cell)
+    {
+        return GLYPHS[cell & GLYPH_MASK];
     }
 }
@@ -0,0 +1,23 @@
+package ptp.pacman.base;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Interface for actor controllers whose decisions depend on some internal state (a random number generator,
+ * a calculated path...), so that it can be saved in game checkpoints.
+ * Controllers that don't implement it are considered stateless.
+ *  @see ptp.pacman.base.Game#checkpoint()
+ * */
+public interface StatefulController
+{
+    /** Writes the state of the controller at the current position of the buffer.
+     * @param out The buffer where the state is written.
+     * @throws java.nio.BufferOverflowException If the state doesn't fit in the buffer.
+     * */
+    public void saveState(ByteBuffer out);
+
+    /** Reads the state of the controller, as written by saveState().
+     * @param in The buffer from where the state is read.
+     * */
+    public void restoreState(ByteBuffer in);
+}
@@ -0,0 +1,225 @@
+package ptp.pacman.base;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the duration of every phase of the game ticks, and of every controller decision, in latency histograms.
+ * Once it's set in a game (see Game.setProfiler()), the game measures each tick and hands the measures
+ * over at its end, so the profiler is only locked once per tick. The histograms can be read from any thread
+ * with getPhase() and getDecisions(), or printed periodically with startPeriodicDump().
+ * A profiler can be shared by several games, that are added together.
+ *  @see ptp.pacman.base.LatencyHistogram
+ * */
+public final class TickProfiler
+{
+	/** Enumerate with the measured phases of a tick.
+	 * DECISIONS is the time spent in controllers (all of them), and MOVEMENT the rest of the actors movement.
+	 * */
+    public static enum Phase {
+        TICK, DECISIONS, MOVEMENT, COLLISIONS, END_CHECKS, LISTENERS
+    }
+
+    private static final long BUDGET_NANOS = Game.TICK_MILLIS*1000000L;
+
+    private final LatencyHistogram [] mPhases = new LatencyHistogram[Phase.values().length];
+    private LatencyHistogram [] mDecisions = new LatencyHistogram[0];
+    private String [] mActorNames = new String[0];
+    private long [] mOverruns = new long[0];
+    private long mOverBudgetTicks;
+    private ScheduledExecutorService mDumpExecutor;
+
+    /** Constructor.
+     * */
+    public TickProfiler()
+    {
+        for(int i=0; i<mPhases.length; ++i)
+            mPhases[i] = new LatencyHistogram();
+    }
+
+    /** Records the measures of a tick. Called by the game at the end of every tick.
+     * The decisions are read from the actors, that time their controller when they move.
+     * */
+    synchronized void recordTick(Game g, long start, long moved, long collided, long checked, long end)
+    {
+        final List<Pacman> pacmans = g.getPacmans();
+        final List<Ghost> ghosts = g.getGhosts();
+        final int actors = pacmans.size() + ghosts.size();
+        if(mDecisions.length < actors)
+            growDecisions(actors);
+
+        long decisions = 0;
+        for(int i=0; i<actors; ++i) {
+            final Actor a = i < pacmans.size() ? pacmans.get(i) : ghosts.get(i - pacmans.size());
+            if(a.mOverrun) {
+                a.mOverrun = false;
+                ++mOverruns[i];
+            }
+            final long nanos = a.mDecisionNanos;
+            if(nanos < 0) // Didn't move in this tick
+                continue;
+            a.mDecisionNanos = -1;
+            decisions += nanos;
+            mDecisions[i].record(nanos);
+            if(mActorNames[i] == null && a.getActorController() != null)
+                mActorNames[i] = a.getActorController().getName();
+        }
+
+        // With a ControllerBudget the controllers run at the same time, so they may add up to more than the wait
+        decisions = Math.min(decisions, moved - start);
+        mPhases[Phase.TICK.ordinal()].record(end - start);
+        mPhases[Phase.DECISIONS.ordinal()].record(decisions);
+        mPhases[Phase.MOVEMENT.ordinal()].record(moved - start - decisions);
+        mPhases[Phase.COLLISIONS.ordinal()].record(collided - moved);
+        mPhases[Phase.END_CHECKS.ordinal()].record(checked - collided);
+        mPhases[Phase.LISTENERS.ordinal()].record(end - checked);
+        if(end - start > BUDGET_NANOS)
+            ++mOverBudgetTicks;
+    }
+
+    private void growDecisions(int actors)
+    {
+        LatencyHistogram [] decisions = new LatencyHistogram[actors];
+        String [] names = new String[actors];
+        long [] overruns = new long[actors];
+        System.arraycopy(mDecisions, 0, decisions, 0, mDecisions.length);
+        System.arraycopy(mActorNames, 0, names, 0, mActorNames.length);
+        System.arraycopy(mOverruns, 0, overruns, 0, mOverruns.length);
+        for(int i=mDecisions.length; i<actors; ++i)
+            decisions[i] = new LatencyHistogram();
+        mDecisions = decisions;
+        mActorNames = names;
+        mOverruns = overruns;
+    }
+
+    /** Returns a copy of the histogram of a phase.
+     * @param phase The phase.
+     * @return The histogram of the phase durations, in nanoseconds.
+     * */
+    public synchronized LatencyHistogram getPhase(Phase phase)
+    {
+        LatencyHistogram h = new LatencyHistogram();
+        h.add(mPhases[phase.ordinal()]);
+        return h;
+    }
+
+    /** @return The number of actors with controller decisions recorded. */
+    public synchronized int getNumberOfActors()
+    {
+        return mDecisions.length;
+    }
+
+    /** Returns a copy of the histogram of the decisions of an actor's controller.
+     * @param actor The actor: Pacmans first, then ghosts, in the order they were added to the game.
+     * @return The histogram of the controller decision durations, in nanoseconds.
+     * */
+    public synchronized LatencyHistogram getDecisions(int actor)
+    {
+        LatencyHistogram h = new LatencyHistogram();
+        h.add(mDecisions[actor]);
+        return h;
+    }
+
+    /** Returns the name of an actor's controller.
+     * @param actor The actor: Pacmans first, then ghosts.
+     * @return The controller name, or null if it's unknown.
+     * */
+    public synchronized String getActorName(int actor)
+    {
+        return mActorNames[actor];
+    }
+
+    /** Returns the number of decisions of an actor's controller that ran out of time (see ControllerBudget).
+     * @param actor The actor: Pacmans first, then ghosts.
+     * @return The number of overruns.
+     * */
+    public synchronized long getOverruns(int actor)
+    {
+        return mOverruns[actor];
+    }
+
+    /** @return The number of ticks that took longer than Game.TICK_MILLIS. */
+    public synchronized long getOverBudgetTicks()
+    {
+        return mOverBudgetTicks;
+    }
+
+    /** Removes all the measures.
+     * */
+    public synchronized void reset()
+    {
+        for(LatencyHistogram h : mPhases)
+            h.reset();
+        for(LatencyHistogram h : mDecisions)
+            h.reset();
+        Arrays.fill(mOverruns, 0);
+        mOverBudgetTicks = 0;
+    }
+
+    /** Prints the p50, p99, max and mean of every phase and controller, in microseconds.
+     * @param out The stream where the profile is printed.
+     * */
+    public synchronized void print(PrintStream out)
+    {
+        out.println("Tick profile: " + mPhases[0].getCount() + " ticks, " + mOverBudgetTicks +
+                " over the " + Game.TICK_MILLIS + " ms budget (times in us)");
+        out.println(String.format("%-20s %8s %8s %8s %8s %8s", "", "count", "p50", "p99", "max", "mean"));
+        for(Phase p : Phase.values())
+            PrintHistogram(out, p.toString(), mPhases[p.ordinal()]);
+        for(int i=0; i<mDecisions.length; ++i) {
+            PrintHistogram(out, "  " + (mActorNames[i] != null ? mActorNames[i] : "Actor #" + (i+1)), mDecisions[i]);
+            if(mOverruns[i] > 0)
+                out.println("    " + mOverruns[i] + " decisions over the controller budget");
+        }
+    }
+
+    private static void PrintHistogram(PrintStream out, String name, LatencyHistogram h)
+    {
+        out.println(String.format("%-20s %8d %8d %8d %8d %8d", name, h.getCount(), h.getPercentile(50)/1000,
+                h.getPercentile(99)/1000, h.getMax()/1000, h.getMean()/1000));
+    }
+
+    /** Prints the profile every period and resets it, so every dump shows the last period only.
+     * The dump runs on its own daemon thread, never on the game one.
+     * @param periodMillis The time between dumps, in milliseconds.
+     * @param out The stream where the profile is printed.
+     * */
+    public synchronized void startPeriodicDump(long periodMillis, final PrintStream out)
+    {
+        stopPeriodicDump();
+        mDumpExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "TickProfiler dump");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        mDumpExecutor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run()
+            {
+                synchronized(TickProfiler.this) {
+                    print(out);
+                    reset();
+                }
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Stops the periodic dump, if it was started.
+     * */
+    public synchronized void stopPeriodicDump()
+    {
+        if(mDumpExecutor != null) {
+            mDumpExecutor.shutdown();
+            mDumpExecutor = null;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package ptp.pacman.bench;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.image.ImageObserver;
+import java.lang.management.ManagementFactory;
+import java.text.AttributedCharacterIterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ptp.pacman.base.Game;
+import ptp.pacman.base.GameSnapshot;
+import ptp.pacman.drawer.GhostDrawer;
+import ptp.pacman.drawer.MapDrawer;
+import ptp.pacman.drawer.PacmanDrawer;
+import ptp.pacman.sim.BatchRunner;
+import ptp.pacman.sim.ControllerFactory;
+
+/**
+ * Checks that the steady state of a game doesn't allocate: every tick, and the drawing of its snapshot by the map,
+ * Pacman and ghost drawers, are measured with the allocation counter of the thread (ThreadMXBean), and any byte
+ * allocated is a failure.
+ *
+ * The JIT has to compile the hot paths before they stop allocating (i.e. with escape analysis), so some whole
+ * games are played first without measuring them. Then every game is measured after its first WARMUP_TICKS,
+ * which fill the buffers that are sized lazily (snapshots, distance fields...). The drawers draw on a Graphics
+ * that discards everything: Java2D allocates while it rasterizes shapes, and that isn't code of the game.
+ *
+ * The JIT still replaces compiled code now and then, and the tick when it happens can allocate a few hundred bytes
+ * (at a different tick in every run, and never with only C1 or only C2). Games are deterministic, so the
+ * allocations of their code happen at the same ticks every time: a game that allocated is played again, and only
+ * the ticks that allocate both times are failures.
+ *
+ * AllocationTest runs it with mvn test. It can also be run by hand:
+ * Usage: AllocationCheck [games [warmupGames]]
+ * It checks the given number of seeds (10 by default) on every bundled map, with the default ghosts of
+ * BatchRunner and with A*, Manhattan and dumb ghosts. The exit status is 1 if any tick allocated both times.
+ *  @see ptp.pacman.base.Game#step()
+ * */
+public final class AllocationCheck
+{
+    /** Ticks of every game that aren't measured. */
+    public static final int WARMUP_TICKS = 100;
+    /** Cell size used by the drawers. */
+    private static final int CELL_SIZE = 16;
+    private static final String [] MAPS = {"map1.map", "map2.map"};
+    private static final String [][] GHOSTS = {
+        {"dijkstra2", "dijkstra2", "dijkstra", "dijkstra2"},
+        {"astar", "manhattan", "dumb", "astar"},
+    };
+    // Seeds of the warm-up games, far from the checked ones
+    private static final long WARMUP_SEED = 1000000;
+    // Ticks that allocated reported for every map and ghosts
+    private static final int MAX_REPORTED_TICKS = 5;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+    private AllocationCheck()
+    {
+    }
+
+    /** @return If this JVM can count the memory allocated by a thread, which Check() needs. */
+    public static boolean IsSupported()
+    {
+        return THREADS.isThreadAllocatedMemorySupported();
+    }
+
+    /** Plays a number of seeds on every bundled map, with the default ghosts of BatchRunner and with A*, Manhattan
+     * and dumb ghosts, after some warm-up games, and measures every tick after the first WARMUP_TICKS. A game
+     * that allocated is played again, and the ticks that allocate both times are failures.
+     * @param games The number of checked seeds of every map and ghosts.
+     * @param warmupGames The number of games played before them, which aren't checked.
+     * @return A line for every map and ghosts whose games allocated, with the first ticks that did. It's empty if
+     * no tick allocated twice.
+     * */
+    public static List<String> Check(int games, int warmupGames)
+    {
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+        List<ControllerFactory> pacmans = new ArrayList<ControllerFactory>();
+        pacmans.add(BatchRunner.DefaultPacmanFactory());
+        List<String> failures = new ArrayList<String>();
+        for(String map : MAPS) {
+            for(String [] names : GHOSTS) {
+                List<ControllerFactory> ghosts = new ArrayList<ControllerFactory>();
+                for(String name : names)
+                    ghosts.add(BatchRunner.GhostFactoryWithName(name));
+                BatchRunner runner = new BatchRunner(map, pacmans, ghosts, 2);
+                final long [] first = new long[runner.getMaxTicks()], again = new long[runner.getMaxTicks()];
+                for(int i=0; i<warmupGames; ++i)
+                    MeasureGame(runner, WARMUP_SEED + i, first);
+
+                List<String> ticks = new ArrayList<String>();
+                long total = 0;
+                int allocating = 0;
+                for(int i=0; i<games; ++i) {
+                    final long seed = 1 + i;
+                    if(MeasureGame(runner, seed, first) == 0 || MeasureGame(runner, seed, again) == 0)
+                        continue;
+                    boolean allocated = false;
+                    for(int tick=0; tick<first.length; ++tick) {
+                        if(first[tick] == 0 || again[tick] == 0)
+                            continue;
+                        allocated = true;
+                        total += first[tick];
+                        if(ticks.size() < MAX_REPORTED_TICKS)
+                            ticks.add("seed " + seed + ", tick " + (tick + 1) + ": " + first[tick] + " bytes");
+                    }
+                    if(allocated)
+                        ++allocating;
+                }
+                if(allocating > 0)
+                    failures.add(String.format("%s %s: %d of %d games allocated, %d bytes %s", map,
+                            String.join(",", names), allocating, games, total, ticks));
+            }
+        }
+        return failures;
+    }
+
+    // Allocated bytes of every tick of a game (with its drawing), from its first WARMUP_TICKS on, written to
+    // bytes (by tick, the ones before are 0). It returns the total
+    private static long MeasureGame(BatchRunner runner, long seed, long [] bytes)
+    {
+        Arrays.fill(bytes, 0);
+        final Game game = runner.createGame(seed);
+        final MapDrawer mapDrawer = new MapDrawer(game.getMap());
+        mapDrawer.setCellSize(CELL_SIZE);
+        final PacmanDrawer [] pacmanDrawers = new PacmanDrawer[game.getPacmans().size()];
+        for(int i=0; i<pacmanDrawers.length; ++i) {
+            pacmanDrawers[i] = new PacmanDrawer(i, CELL_SIZE);
+            pacmanDrawers[i].startAnimation(0);
+        }
+        final GhostDrawer [] ghostDrawers = new GhostDrawer[game.getGhosts().size()];
+        for(int i=0; i<ghostDrawers.length; ++i)
+            ghostDrawers[i] = new GhostDrawer(i, CELL_SIZE);
+        final Graphics g = new DiscardingGraphics();
+
+        final long thread = Thread.currentThread().getId();
+        final int maxTicks = runner.getMaxTicks();
+        long total = 0;
+        for(int tick=0; tick<maxTicks; ++tick) {
+            final long before = THREADS.getThreadAllocatedBytes(thread);
+            final boolean running = game.step();
+            final GameSnapshot snapshot = game.getSnapshot();
+            final long timeMillis = game.getTimeMillis();
+            mapDrawer.draw(g, snapshot, 0, 0);
+            for(int i=0; i<pacmanDrawers.length; ++i)
+                pacmanDrawers[i].draw(g, snapshot, 0, 0, timeMillis);
+            for(int i=0; i<ghostDrawers.length; ++i)
+                ghostDrawers[i].draw(g, snapshot, 0, 0, timeMillis);
+            final long allocated = THREADS.getThreadAllocatedBytes(thread) - before;
+            if(tick >= WARMUP_TICKS) {
+                bytes[tick] = allocated;
+                total += allocated;
+            }
+            if(!running)
+                break;
+        }
+        return total;
+    }
+
+    public static void main(String [] args)
+    {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int warmupGames = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        if(!IsSupported()) {
+            System.err.println("This JVM can't count the allocated memory of a thread");
+            System.exit(1);
+        }
+        List<String> failures = Check(games, warmupGames);
+        for(String f : failures)
+            System.out.println(f);
+        if(failures.isEmpty())
+            System.out.println("No tick allocated");
+        System.exit(failures.isEmpty() ? 0 : 1);
+    }
+
+    /** Graphics that draws nothing, so that only the allocations of the drawers are measured.
+     * */
+    private static final class DiscardingGraphics extends Graphics
+    {
+        private Color mColor = Color.BLACK;
+        private Font mFont = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+
+        @Override public Graphics create() { return new DiscardingGraphics(); }
+        @Override public void translate(int x, int y) { }
+        @Override public Color getColor() { return mColor; }
+        @Override public void setColor(Color c) { mColor = c; }
+        @Override public void setPaintMode() { }
+        @Override public void setXORMode(Color c) { }
+        @Override public Font getFont() { return mFont; }
+        @Override public void setFont(Font font) { mFont = font; }
+        @Override public FontMetrics getFontMetrics(Font f) { return null; }
+        @Override public Rectangle getClipBounds() { return null; }
+        @Override public void clipRect(int x, int y, int width, int height) { }
+        @Override public void setClip(int x, int y, int width, int height) { }
+        @Override public Shape getClip() { return null; }
+        @Override public void setClip(Shape clip) { }
+        @Override public void copyArea(int x, int y, int width, int height, int dx, int dy) { }
+        @Override public void drawLine(int x1, int y1, int x2, int y2) { }
+        @Override public void fillRect(int x, int y, int width, int height) { }
+        @Override public void clearRect(int x, int y, int width, int height) { }
+        @Override public void drawRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) { }
+        @Override public void fillRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) { }
+        @Override public void drawOval(int x, int y, int width, int height) { }
+        @Override public void fillOval(int x, int y, int width, int height) { }
+        @Override public void drawArc(int x, int y, int width, int height, int startAngle, int arcAngle) { }
+        @Override public void fillArc(int x, int y, int width, int height, int startAngle, int arcAngle) { }
+        @Override public void drawPolyline(int [] xPoints, int [] yPoints, int nPoints) { }
+        @Override public void drawPolygon(int [] xPoints, int [] yPoints, int nPoints) { }
+        @Override public void fillPolygon(int [] xPoints, int [] yPoints, int nPoints) { }
+        @Override public void drawString(String str, int x, int y) { }
+        @Override public void drawString(AttributedCharacterIterator iterator, int x, int y) { }
+        @Override public boolean drawImage(Image img, int x, int y, ImageObserver observer) { return true; }
+        @Override public boolean drawImage(Image img, int x, int y, int width, int height, ImageObserver observer)
+        {
+            return true;
+        }
+        @Override public boolean drawImage(Image img, int x, int y, Color bgcolor, ImageObserver observer)
+        {
+            return true;
+        }
+        @Override public boolean drawImage(Image img, int x, int y, int width, int height, Color bgcolor,
+                ImageObserver observer)
+        {
+            return true;
+        }
+        @Override public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2,
+                int sy2, ImageObserver observer)
+        {
+            return true;
+        }
+        @Override public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2,
+                int sy2, Color bgcolor, ImageObserver observer)
+        {
+            return true;
+        }
+        @Override public void dispose() { }
+    }
+}
@@ -0,0 +1,33 @@
+package ptp.pacman.bench;
+
+/**
+ * An operation measured by the BenchmarkRunner. All the setup is done when the benchmark is created,
+ * so run() only contains the measured code.
+ *  @see ptp.pacman.bench.BenchmarkRunner
+ *  @see ptp.pacman.bench.BenchmarkSuite
+ * */
+public abstract class Benchmark
+{
+    private final String mName;
+
+    /** Constructor.
+     * @param name The name of the benchmark, used to find its baseline (i.e. "dijkstra2.next[map1]").
+     * */
+    protected Benchmark(String name)
+    {
+        mName = name;
+    }
+
+    /** Returns the name of the benchmark.
+     * @return The name.
+     * */
+    public String getName()
+    {
+        return mName;
+    }
+
+    /** Runs the measured operation once.
+     * @return Any value computed by the operation. The runner accumulates them, so the JIT can't remove the operation.
+     * */
+    public abstract long run();
+}
@@ -0,0 +1,223 @@
+package ptp.pacman.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Measures benchmarks the way a microbenchmark harness does: the operation is first run until the JIT
+ * has compiled it (warmup iterations), then it's timed in several iterations of a fixed number of operations,
+ * and the result is the mean time per operation with its 99% confidence interval.
+ * The values returned by the operations are accumulated in a sink, so the JIT can't remove them as dead code.
+ *
+ * Results can be saved to a baseline file and compared against it later, flagging the benchmarks that
+ * got slower beyond their measurement error. Baselines are only comparable on the same machine and JVM,
+ * so the file records where they were measured.
+ *  @see ptp.pacman.bench.BenchmarkSuite
+ * */
+public final class BenchmarkRunner
+{
+    /** Result of a benchmark.
+     * */
+    public static final class Result
+    {
+        /** Name of the benchmark. */
+        public final String name;
+        /** Mean time of an operation, in nanoseconds. */
+        public final double nanosPerOp;
+        /** Half width of the 99% confidence interval of the mean, in nanoseconds. */
+        public final double error;
+
+        /** Constructor.
+         * @param name The benchmark name.
+         * @param nanosPerOp The mean time of an operation, in nanoseconds.
+         * @param error The error of the mean, in nanoseconds.
+         * */
+        public Result(String name, double nanosPerOp, double error)
+        {
+            this.name = name;
+            this.nanosPerOp = nanosPerOp;
+            this.error = error;
+        }
+    }
+
+    private static final double Z_99 = 2.576;
+    // Comment of a baseline file with the machine where it was measured
+    private static final String MACHINE_PREFIX = "# machine: ";
+
+    private final int mWarmupIterations;
+    private final int mIterations;
+    private final long mIterationNanos;
+    private long mSink;
+
+    /** Constructor.
+     * @param warmupIterations The number of iterations run (and discarded) before measuring.
+     * @param iterations The number of measured iterations.
+     * @param iterationMillis The approximate duration of an iteration, in milliseconds.
+     * */
+    public BenchmarkRunner(int warmupIterations, int iterations, long iterationMillis)
+    {
+        mWarmupIterations = warmupIterations;
+        mIterations = Math.max(2, iterations);
+        mIterationNanos = iterationMillis*1000000L;
+    }
+
+    /** Measures a benchmark.
+     * @param b The benchmark.
+     * @return Its mean time per operation.
+     * */
+    public Result measure(Benchmark b)
+    {
+        // Find a number of operations that takes about an iteration, growing it as the JIT speeds them up
+        long ops = 1;
+        long elapsed = runOps(b, ops);
+        while(elapsed < mIterationNanos/10) {
+            ops *= 2;
+            elapsed = runOps(b, ops);
+        }
+        for(int i=0; i<mWarmupIterations; ++i) {
+            ops = Math.max(1, (long)((double)ops*mIterationNanos/Math.max(1, elapsed)));
+            elapsed = runOps(b, ops);
+        }
+        ops = Math.max(1, (long)((double)ops*mIterationNanos/Math.max(1, elapsed)));
+
+        double [] samples = new double[mIterations];
+        double sum = 0;
+        for(int i=0; i<mIterations; ++i) {
+            samples[i] = (double)runOps(b, ops)/ops;
+            sum += samples[i];
+        }
+        final double mean = sum/mIterations;
+        double squares = 0;
+        for(double s : samples)
+            squares += (s - mean)*(s - mean);
+        final double deviation = Math.sqrt(squares/(mIterations - 1));
+        return new Result(b.getName(), mean, Z_99*deviation/Math.sqrt(mIterations));
+    }
+
+    private long runOps(Benchmark b, long ops)
+    {
+        long sink = 0;
+        final long start = System.nanoTime();
+        for(long i=0; i<ops; ++i)
+            sink += b.run();
+        final long elapsed = System.nanoTime() - start;
+        mSink += sink;
+        return elapsed;
+    }
+
+    /** Returns the accumulation of the values returned by all the measured operations.
+     * It's meaningless, but printing it ensures that the JIT doesn't optimize the operations away.
+     * @return The sink.
+     * */
+    public long getSink()
+    {
+        return mSink;
+    }
+
+    /** Reads a baseline file.
+     * @param file The file, with a line per benchmark: name, ns/op and error. Lines starting with # are comments.
+     * @return The baseline results by benchmark name, or an empty map if the file doesn't exist.
+     * @throws IOException If the file can't be read or is malformed.
+     * */
+    public static Map<String, Result> ReadBaseline(File file) throws IOException
+    {
+        Map<String, Result> baseline = new LinkedHashMap<String, Result>();
+        if(!file.exists())
+            return baseline;
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while((line = in.readLine()) != null) {
+                line = line.trim();
+                if(line.length() == 0 || line.startsWith("#"))
+                    continue;
+                String [] fields = line.split("\\s+");
+                if(fields.length != 3)
+                    throw new IOException("Malformed baseline line: " + line);
+                baseline.put(fields[0], new Result(fields[0], Double.parseDouble(fields[1]), Double.parseDouble(fields[2])));
+            }
+        } finally {
+            in.close();
+        }
+        return baseline;
+    }
+
+    /** Returns a description of the current machine and JVM, that is stored with the baselines.
+     * @return The JVM name and version, the architecture and the number of processors.
+     * */
+    public static String Machine()
+    {
+        return System.getProperty("java.vm.name") + " " + System.getProperty("java.version") + ", " +
+               System.getProperty("os.arch") + ", " + Runtime.getRuntime().availableProcessors() + " cpus";
+    }
+
+    /** Reads the machine where a baseline file was measured.
+     * @param file The baseline file.
+     * @return The description of the machine, as returned by Machine(), or null if the file doesn't exist or
+     * doesn't say it.
+     * @throws IOException If the file can't be read.
+     * */
+    public static String ReadBaselineMachine(File file) throws IOException
+    {
+        if(!file.exists())
+            return null;
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while((line = in.readLine()) != null) {
+                if(line.startsWith(MACHINE_PREFIX))
+                    return line.substring(MACHINE_PREFIX.length()).trim();
+            }
+        } finally {
+            in.close();
+        }
+        return null;
+    }
+
+    /** Writes a baseline file, keeping the baselines of the benchmarks that weren't run.
+     * @param results The new results.
+     * @param file The baseline file.
+     * @throws IOException If the file can't be written.
+     * */
+    public static void WriteBaseline(List<Result> results, File file) throws IOException
+    {
+        Map<String, Result> baseline = ReadBaseline(file);
+        for(Result r : results)
+            baseline.put(r.name, r);
+
+        if(file.getParentFile() != null)
+            file.getParentFile().mkdirs();
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            out.println("# Benchmark baselines (ns/op and 99% error), written by BenchmarkSuite -save");
+            out.println(MACHINE_PREFIX + Machine());
+            for(Result r : baseline.values())
+                out.println(String.format(Locale.ROOT, "%s %.1f %.1f", r.name, r.nanosPerOp, r.error));
+        } finally {
+            out.close();
+        }
+    }
+
+    /** Tells if a result is a regression with respect to its baseline: it's slower by more than the threshold,
+     * and the difference is bigger than the errors of both measures.
+     * @param r The new result.
+     * @param baseline The baseline result.
+     * @param threshold The allowed slowdown, as a fraction (i.e. 0.1 for 10%).
+     * @return If the benchmark regressed.
+     * */
+    public static boolean IsRegression(Result r, Result baseline, double threshold)
+    {
+        return r.nanosPerOp > baseline.nanosPerOp*(1 + threshold) &&
+               r.nanosPerOp - r.error > baseline.nanosPerOp + baseline.error;
+    }
+}
@@ -0,0 +1,379 @@
+package ptp.pacman.bench;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import ptp.pacman.Vec2i;
+import ptp.pacman.base.Actor;
+import ptp.pacman.base.Actor.Direction;
+import ptp.pacman.base.Actor.Speed;
+import ptp.pacman.base.ActorController;
+import ptp.pacman.base.CollisionGrid;
+import ptp.pacman.base.DistanceTable;
+import ptp.pacman.base.Game;
+import ptp.pacman.base.GameControllers;
+import ptp.pacman.base.GameRandom;
+import ptp.pacman.base.Ghost;
+import ptp.pacman.base.Pacman;
+import ptp.pacman.base.PacmanMap;
+import ptp.pacman.controller.AbstractGhostController;
+import ptp.pacman.controller.Dijkstra2GhostController;
+import ptp.pacman.controller.DumbPacmanController;
+import ptp.pacman.drawer.MapDrawer;
+import ptp.pacman.sim.BatchRunner;
+
+/**
+ * Benchmarks of the hot paths of the simulation, the pathfinding and the rendering:
+ * actor movement, the collision phase, the Dijkstra and A* controllers on the bundled maps and on a big generated one,
+ * the map drawer at several cell sizes and whole headless game ticks. The pathfinding, the drawing and the ticks are
+ * also measured on bigger generated maps, to see how they scale with the size of the map. Generated maps are
+ * made by MazeGenerator, and named mazeSIZE.
+ * Every run is compared against the stored baseline (res/bench/baseline.txt), and the regressions are flagged.
+ *
+ * Usage: BenchmarkSuite [-quick] [-save] [-baseline file] [-threshold percent] [-strict] [filter]
+ *   -quick      Fewer and shorter iterations, for a rough check.
+ *   -save       Stores the results as the new baseline.
+ *   -strict     Fails on regressions even if the baseline was measured on another machine.
+ *   filter      Only runs the benchmarks whose name contains it.
+ * The exit status is 1 when some benchmark regressed, but only if the baseline was measured on this machine
+ * (the same JVM, architecture and number of processors, see BenchmarkRunner.Machine()) or with -strict. Otherwise
+ * the regressions are reported, since times of different machines can't be compared.
+ * The JMH version of the suite is run with mvn -P jmh verify (see SuiteBenchmarks).
+ *  @see ptp.pacman.bench.BenchmarkRunner
+ * */
+public final class BenchmarkSuite
+{
+    /** Default baseline file. */
+    public static final String BASELINE = "res/bench/baseline.txt";
+    /** Size of the generated maze measured with the bundled maps, big enough for the Dijkstra searches to hit
+     * their cost limit. */
+    static final int MAZE_SIZE = 101;
+    /** Sizes of the bigger generated mazes, to see how the game scales with the map. */
+    static final int [] GENERATED_SIZES = {127, 511};
+
+    private static final long SEED = 1;
+
+    private BenchmarkSuite()
+    {
+    }
+
+    private static PacmanMap LoadMap(String name)
+    {
+        if(name.startsWith("maze")) {
+            final int size = Integer.parseInt(name.substring(4));
+            return new MazeGenerator(size, size, SEED).createMap();
+        }
+        return new PacmanMap(name + ".map");
+    }
+
+    static List<Vec2i> FreeCells(PacmanMap map, int count, Random r)
+    {
+        List<Vec2i> cells = new ArrayList<Vec2i>();
+        while(cells.size() < count) {
+            Vec2i cell = new Vec2i(r.nextInt(map.getWidth()), r.nextInt(map.getHeight()));
+            if(!map.isWallOrLine(cell.x, cell.y))
+                cells.add(cell);
+        }
+        return cells;
+    }
+
+    /** Ghost that wanders around the map, taking a random direction every few ticks.
+     * */
+    private static Ghost WanderingGhost(PacmanMap map, final GameRandom r)
+    {
+        return new Ghost(map.getFirstGhostStart(), Speed.NORMAL, map, new ActorController() {
+            private Direction mDirection = Direction.LEFT;
+
+            @Override
+            public Direction getNextDirection()
+            {
+                if(r.nextInt(8) == 0)
+                    mDirection = Actor.DIRECTIONS[r.nextInt(4)];
+                return mDirection;
+            }
+
+            @Override
+            public String getName()
+            {
+                return "Wandering";
+            }
+        });
+    }
+
+    private static Benchmark ActorMove(String mapName)
+    {
+        final Ghost ghost = WanderingGhost(LoadMap(mapName), new GameRandom(SEED));
+        return new Benchmark("actor.move[" + mapName + "]") {
+            @Override
+            public long run()
+            {
+                ghost.move();
+                return ghost.getSubCellX() + ghost.getSubCellY();
+            }
+        };
+    }
+
+    private static Benchmark ActorCanApplyMovement(String mapName)
+    {
+        // Many actors in different positions, so the branches aren't always taken the same way
+        final PacmanMap map = LoadMap(mapName);
+        final GameRandom r = new GameRandom(SEED);
+        final Ghost [] ghosts = new Ghost[64];
+        for(int i=0; i<ghosts.length; ++i) {
+            ghosts[i] = WanderingGhost(map, r);
+            for(int ticks=r.nextInt(2000); ticks>0; --ticks)
+                ghosts[i].move();
+        }
+        return new Benchmark("actor.canApplyMovement[" + mapName + "]") {
+            private int mIndex;
+
+            @Override
+            public long run()
+            {
+                final int i = mIndex++;
+                return ghosts[(i >> 2) & 63].canApplyMovement(Actor.DIRECTIONS[i & 3]) ? 1 : 0;
+            }
+        };
+    }
+
+    private static List<Benchmark> Collisions(final int size, int numPacmans, int numGhosts)
+    {
+        PacmanMap map = CollisionBenchmark.OpenMap(size);
+        Random r = new Random(SEED);
+        final List<Pacman> pacmans = new ArrayList<Pacman>();
+        for(int i=0; i<numPacmans; ++i)
+            pacmans.add(new Pacman(CollisionBenchmark.RandomCell(r, size), Speed.NORMAL, map, 1, null));
+        final List<Ghost> ghosts = new ArrayList<Ghost>();
+        for(int i=0; i<numGhosts; ++i)
+            ghosts.add(new Ghost(CollisionBenchmark.RandomCell(r, size), Speed.NORMAL, map, null));
+        final CollisionGrid grid = new CollisionGrid(size, size);
+
+        final String params = "[" + size + "," + numPacmans + "x" + numGhosts + "]";
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        benchmarks.add(new Benchmark("collision.nested" + params) {
+            @Override
+            public long run()
+            {
+                return CollisionBenchmark.NestedLoop(pacmans, ghosts);
+            }
+        });
+        benchmarks.add(new Benchmark("collision.grid" + params) {
+            @Override
+            public long run()
+            {
+                return CollisionBenchmark.Grid(grid, pacmans, ghosts);
+            }
+        });
+        return benchmarks;
+    }
+
+    /** Benchmark of a ghost controller deciding after the Pacman has changed its cell, so the path is always
+     * recalculated.
+     * */
+    private static Benchmark GhostController(String name, String mapName)
+    {
+        Game game = new Game(LoadMap(mapName), 2, SEED);
+        game.addPacman(new DumbPacmanController(game, 1));
+        final Pacman pacman = game.getPacmans().get(0);
+        final ActorController controller = BatchRunner.GhostFactoryWithName(name).create(game, 1);
+        game.addGhost(controller);
+        final List<Vec2i> cells = FreeCells(game.getMap(), 256, new Random(SEED));
+        return new Benchmark(name + ".next[" + mapName + "]") {
+            private int mIndex;
+
+            @Override
+            public long run()
+            {
+                pacman.getCell().set(cells.get(mIndex++ & 255));
+                return controller.getNextDirection().ordinal();
+            }
+        };
+    }
+
+    private static Benchmark DistanceTableCompute(String mapName)
+    {
+        final PacmanMap map = LoadMap(mapName);
+        return new Benchmark("distances.compute[" + mapName + "]") {
+            @Override
+            public long run()
+            {
+                return DistanceTable.Compute(map).getNumberOfCells();
+            }
+        };
+    }
+
+    private static Benchmark MapBackground(String mapName, final int cellSize)
+    {
+        final MapDrawer drawer = new MapDrawer(LoadMap(mapName));
+        return new Benchmark("mapdrawer.background[" + mapName + "," + cellSize + "px]") {
+            @Override
+            public long run()
+            {
+                drawer.setCellSize(cellSize);
+                return drawer.getWidth();
+            }
+        };
+    }
+
+    private static Benchmark MapDraw(String mapName, int cellSize)
+    {
+        final Game game = new Game(LoadMap(mapName), 2, SEED);
+        final MapDrawer drawer = new MapDrawer(game.getMap());
+        drawer.setCellSize(cellSize);
+        final BufferedImage image = new BufferedImage(drawer.getWidth(), drawer.getHeight(), BufferedImage.TYPE_INT_RGB);
+        final Graphics g = image.getGraphics();
+        return new Benchmark("mapdrawer.draw[" + mapName + "," + cellSize + "px]") {
+            @Override
+            public long run()
+            {
+                drawer.draw(g, game.getSnapshot(), 0, 0);
+                return image.getRGB(0, 0);
+            }
+        };
+    }
+
+    /** Benchmark of whole ticks of a headless game with a dumb Pacman and the default ghosts.
+     * */
+    private static Benchmark GameTick(String mapName)
+    {
+        Game game = new Game(LoadMap(mapName), 2, SEED);
+        game.addPacman(new DumbPacmanController(game, 1));
+        List<AbstractGhostController> ghosts = GameControllers.CreateGhostControllers(game);
+        for(int i=0; i<ghosts.size() && i<game.getMap().getNumberOfGhostStartPositions(); ++i)
+            game.addGhost(ghosts.get(i));
+        return Ticks("game.tick[" + mapName + "]", game);
+    }
+    
+    /** Benchmark of whole ticks of a crowded game, with two dumb Pacmans and many Dijkstra2 ghosts.
+     * */
+    private static Benchmark ArenaTick(String mapName, int numGhosts)
+    {
+        Game game = new Game(LoadMap(mapName), 2, SEED);
+        game.addPacman(new DumbPacmanController(game, 1));
+        game.addPacman(new DumbPacmanController(game, 2));
+        for(int i=0; i<numGhosts; ++i)
+            game.addGhost(new Dijkstra2GhostController(game, i+1));
+        return Ticks("arena.tick[" + mapName + ",2x" + numGhosts + "]", game);
+    }
+    
+    // When the game finishes it's restored to its first tick
+    private static Benchmark Ticks(String name, final Game game)
+    {
+        final ByteBuffer start = game.checkpoint();
+        return new Benchmark(name) {
+            @Override
+            public long run()
+            {
+                if(!game.step())
+                    game.restore(start.duplicate());
+                return game.getTick();
+            }
+        };
+    }
+
+    /** Creates all the benchmarks of the suite.
+     * @return The benchmarks, ready to be measured.
+     * */
+    public static List<Benchmark> CreateBenchmarks()
+    {
+        final String [] maps = {"map1", "map2", "maze" + MAZE_SIZE};
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        benchmarks.add(ActorMove("map1"));
+        benchmarks.add(ActorCanApplyMovement("map1"));
+        benchmarks.addAll(Collisions(512, 64, 2500));
+        for(String controller : new String[] {"dijkstra", "dijkstra2", "astar"})
+            for(String map : maps)
+                benchmarks.add(GhostController(controller, map));
+        benchmarks.add(DistanceTableCompute("map1"));
+        benchmarks.add(DistanceTableCompute("map2"));
+        for(int cellSize : new int[] {8, 16, 32})
+            benchmarks.add(MapBackground("map1", cellSize));
+        for(int cellSize : new int[] {8, 16, 32})
+            benchmarks.add(MapDraw("map1", cellSize));
+        for(String map : maps)
+            benchmarks.add(GameTick(map));
+        benchmarks.add(ArenaTick("map1", 64));
+        for(int size : GENERATED_SIZES) {
+            final String map = "maze" + size;
+            for(String controller : new String[] {"dijkstra2", "astar"})
+                benchmarks.add(GhostController(controller, map));
+            benchmarks.add(GameTick(map));
+        }
+        benchmarks.add(MapBackground("maze" + GENERATED_SIZES[0], 8));
+        benchmarks.add(MapDraw("maze" + GENERATED_SIZES[0], 8));
+        return benchmarks;
+    }
+
+    public static void main(String [] args) throws IOException
+    {
+        System.setProperty("java.awt.headless", "true");
+        boolean quick = false, save = false, strict = false;
+        File baselineFile = new File(BASELINE);
+        double threshold = 0.10;
+        String filter = "";
+        for(int i=0; i<args.length; ++i) {
+            if(args[i].equals("-quick"))
+                quick = true;
+            else if(args[i].equals("-save"))
+                save = true;
+            else if(args[i].equals("-strict"))
+                strict = true;
+            else if(args[i].equals("-baseline") && i+1 < args.length)
+                baselineFile = new File(args[++i]);
+            else if(args[i].equals("-threshold") && i+1 < args.length)
+                threshold = Double.parseDouble(args[++i])/100;
+            else if(!args[i].startsWith("-"))
+                filter = args[i];
+            else {
+                System.err.println("Usage: BenchmarkSuite [-quick] [-save] [-baseline file] [-threshold percent] [-strict] [filter]");
+                System.exit(2);
+            }
+        }
+
+        BenchmarkRunner runner = quick ? new BenchmarkRunner(2, 5, 50) : new BenchmarkRunner(5, 10, 200);
+        Map<String, BenchmarkRunner.Result> baseline = BenchmarkRunner.ReadBaseline(baselineFile);
+        List<BenchmarkRunner.Result> results = new ArrayList<BenchmarkRunner.Result>();
+        int regressions = 0;
+
+        System.out.println(String.format("%-36s %14s %10s %14s %8s", "benchmark", "ns/op", "error", "baseline", "change"));
+        for(Benchmark b : CreateBenchmarks()) {
+            if(!b.getName().contains(filter))
+                continue;
+            BenchmarkRunner.Result r = runner.measure(b);
+            results.add(r);
+            BenchmarkRunner.Result base = baseline.get(r.name);
+            String comparison = "";
+            if(base != null) {
+                comparison = String.format("%14.1f %+7.1f%%", base.nanosPerOp, 100*(r.nanosPerOp/base.nanosPerOp - 1));
+                if(BenchmarkRunner.IsRegression(r, base, threshold)) {
+                    comparison += "  REGRESSION";
+                    ++regressions;
+                }
+            }
+            System.out.println(String.format("%-36s %14.1f %10.1f %s", r.name, r.nanosPerOp, r.error, comparison));
+        }
+        System.out.println("(sink " + runner.getSink() + ")");
+
+        if(save) {
+            BenchmarkRunner.WriteBaseline(results, baselineFile);
+            System.out.println("Baseline saved to " + baselineFile);
+        } else if(regressions > 0) {
+            System.out.println(regressions + " benchmarks regressed more than " + Math.round(threshold*100) +
+                    "% from " + baselineFile);
+            final String machine = BenchmarkRunner.ReadBaselineMachine(baselineFile);
+            if(!strict && !BenchmarkRunner.Machine().equals(machine)) {
+                System.out.println("The baseline was measured on " + (machine != null ? machine : "an unknown machine") +
+                        ", and this is " + BenchmarkRunner.Machine() + ": not failing (use -strict to fail)");
+                return;
+            }
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package ptp.pacman.bench;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ptp.pacman.Vec2i;
+import ptp.pacman.base.Actor.Speed;
+import ptp.pacman.base.CollisionGrid;
+import ptp.pacman.base.Ghost;
+import ptp.pacman.base.Pacman;
+import ptp.pacman.base.PacmanMap;
+
+/**
+ * Compares the collision phase of a tick done with a nested loop over every Pacman and ghost,
+ * against the same phase done with a CollisionGrid, for an increasing number of ghosts on a big open map.
+ * 
+ * Usage: CollisionBenchmark [mapSize [pacmans [maxGhosts]]]
+ *  @see ptp.pacman.base.CollisionGrid
+ * */
+public class CollisionBenchmark
+{
+    private static final int WARMUP_TICKS = 200;
+    private static final int MEASURED_TICKS = 200;
+    
+    /** Generates a square map surrounded by a wall and empty inside.
+     * @param size The width and height of the map.
+     * @return The map.
+     * */
+    static PacmanMap OpenMap(int size)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(size).append(' ').append(size).append('\n');
+        for(int i=0; i<size; ++i) {
+            for(int j=0; j<size; ++j) {
+                boolean border = i==0 || j==0 || i==size-1 || j==size-1;
+                sb.append(border ? PacmanMap.CELL_FULL : PacmanMap.CELL_EMPTY);
+            }
+            sb.append('\n');
+        }
+        return new PacmanMap("open" + size, new StringReader(sb.toString()));
+    }
+    
+    static Vec2i RandomCell(Random r, int size)
+    {
+        return new Vec2i(1 + r.nextInt(size-2), 1 + r.nextInt(size-2));
+    }
+    
+    // The result is accumulated so that the JIT can't remove the loops
+    static int NestedLoop(List<Pacman> pacmans, List<Ghost> ghosts)
+    {
+        int collisions = 0;
+        for(Pacman p : pacmans)
+            for(Ghost g : ghosts)
+                if(p.collides(g))
+                    ++collisions;
+        return collisions;
+    }
+    
+    static int Grid(CollisionGrid grid, List<Pacman> pacmans, List<Ghost> ghosts)
+    {
+        int collisions = 0;
+        grid.build(ghosts);
+        for(Pacman p : pacmans) {
+            final int candidates = grid.query(p.getCell().x, p.getCell().y);
+            for(int i=0; i<candidates; ++i)
+                if(p.collides(ghosts.get(grid.getCandidate(i))))
+                    ++collisions;
+        }
+        return collisions;
+    }
+    
+    public static void main(String [] args)
+    {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+        int numPacmans = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int maxGhosts = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+        
+        PacmanMap map = OpenMap(size);
+        Random r = new Random(1);
+        List<Pacman> pacmans = new ArrayList<Pacman>();
+        for(int i=0; i<numPacmans; ++i)
+            pacmans.add(new Pacman(RandomCell(r, size), Speed.NORMAL, map, 1, null));
+        
+        System.out.println("Map " + size + "x" + size + ", " + numPacmans + " Pacmans");
+        System.out.println("ghosts      nested (us/tick)   grid (us/tick)   speedup");
+        long collisions = 0;
+        for(int shift=4; shift>=0; --shift) {
+            final int numGhosts = maxGhosts >> shift;
+            List<Ghost> ghosts = new ArrayList<Ghost>();
+            for(int i=0; i<numGhosts; ++i)
+                ghosts.add(new Ghost(RandomCell(r, size), Speed.NORMAL, map, null));
+            CollisionGrid grid = new CollisionGrid(size, size);
+            
+            for(int i=0; i<WARMUP_TICKS; ++i) {
+                if(NestedLoop(pacmans, ghosts) != Grid(grid, pacmans, ghosts))
+                    throw new IllegalStateException("The grid and the nested loop found different collisions");
+            }
+            
+            long start = System.nanoTime();
+            for(int i=0; i<MEASURED_TICKS; ++i)
+                collisions += NestedLoop(pacmans, ghosts);
+            double nested = (System.nanoTime() - start)/1000.0/MEASURED_TICKS;
+            
+            start = System.nanoTime();
+            for(int i=0; i<MEASURED_TICKS; ++i)
+                collisions += Grid(grid, pacmans, ghosts);
+            double gridTime = (System.nanoTime() - start)/1000.0/MEASURED_TICKS;
+            
+            System.out.println(String.format("%6d %18.1f %16.1f %9.1fx", numGhosts, nested, gridTime, nested/gridTime));
+        }
+        System.out.println("Collisions found: " + collisions);
+    }
+}
@@ -0,0 +1,112 @@
+package ptp.pacman.bench;
+
+import java.util.List;
+import java.util.Random;
+
+import ptp.pacman.Vec2i;
+import ptp.pacman.base.Game;
+import ptp.pacman.base.NavigationGraph;
+import ptp.pacman.base.NavigationService;
+import ptp.pacman.base.Pacman;
+import ptp.pacman.controller.AStarGhostController;
+import ptp.pacman.controller.Dijkstra2GhostController;
+import ptp.pacman.controller.DumbPacmanController;
+import ptp.pacman.controller.PathSearch;
+
+/**
+ * Compares the number of cells that the ghost controllers expand to decide how to chase a Pacman, for random
+ * positions of a ghost and a Pacman on a map. The "dijkstra" column is a search of every ghost by itself
+ * (a PathSearch with the cost limit of the Dijkstra controllers), Dijkstra2GhostController reads the distance field
+ * that the game shares between all the ghosts (a full search per Pacman move, or none if the map has a
+ * DistanceTable), and AStarGhostController runs an A* search on the junctions of the map, so it expands nodes of
+ * its NavigationGraph instead of cells. The first step of A* is also checked to be on a shortest path.
+ *
+ * Usage: ExpansionBenchmark [decisions [map.map ...]]
+ *  @see ptp.pacman.controller.PathSearch
+ *  @see ptp.pacman.controller.AStarGhostController
+ *  @see ptp.pacman.base.NavigationService
+ *  @see ptp.pacman.base.NavigationGraph
+ * */
+public class ExpansionBenchmark
+{
+    private static final long SEED = 1;
+    private static final int MAX_COST = 99;
+
+    public static void main(String [] args)
+    {
+        int decisions = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        String [] maps = args.length > 1 ? new String[args.length-1] : new String[] {"map1.map", "map2.map"};
+        for(int i=1; i<args.length; ++i)
+            maps[i-1] = args[i];
+
+        System.out.println("cells expanded per decision, " + decisions + " random ghost and Pacman cells");
+        System.out.println(String.format("%-12s %12s %12s %12s %12s", "map", "dijkstra", "dijkstra2", "astar",
+                "astar/dijk"));
+        for(String mapName : maps) {
+            Game game = new Game(mapName, 2, SEED);
+            game.addPacman(new DumbPacmanController(game, 1));
+            PathSearch dijkstra = new PathSearch(MAX_COST);
+            int [] path = new int[MAX_COST];
+            Dijkstra2GhostController dijkstra2 = new Dijkstra2GhostController(game, 1);
+            AStarGhostController astar = new AStarGhostController(game, 2);
+            game.addGhost(dijkstra2);
+            game.addGhost(astar);
+            Pacman pacman = game.getPacmans().get(0);
+            NavigationGraph graph = game.getMap().getNavigationGraph();
+            NavigationService navigation = game.getNavigation();
+            List<Vec2i> cells = BenchmarkSuite.FreeCells(game.getMap(), 2*decisions, new Random(SEED));
+
+            long suboptimal = 0;
+            int made = 0;
+            for(int i=0; i<decisions; ++i) {
+                Vec2i ghostCell = cells.get(2*i), pacmanCell = cells.get(2*i+1);
+                // The controllers only search again when the Pacman changes its cell
+                if(pacmanCell.compareTo(pacman.getCell()) == 0)
+                    continue;
+                ++made;
+                for(int g=0; g<2; ++g)
+                    game.getGhosts().get(g).getCell().set(ghostCell);
+                pacman.getCell().set(pacmanCell);
+                dijkstra.findPath(game.getMap(), ghostCell, pacmanCell, false, Integer.MAX_VALUE, path);
+                dijkstra2.getNextDirection();
+                int before = navigation.getDistance(pacman, ghostCell.x, ghostCell.y);
+                Vec2i next = Step(game, ghostCell, astar.getNextDirection().ordinal());
+                if(before != NavigationService.UNREACHABLE && before > 0 &&
+                        navigation.getDistance(pacman, next.x, next.y) != before - 1)
+                    ++suboptimal;
+            }
+
+            // The field of Dijkstra2 is shared by all the ghosts, so the cost of a ghost is smaller with more ghosts
+            double d1 = (double)dijkstra.getExpansions()/made,
+                   d2 = (double)(navigation.getNumberOfExpandedCells() + dijkstra2.getExpandedCells())/made,
+                   a = (double)astar.getExpandedCells()/made;
+            System.out.println(String.format("%-12s %12.1f %12.1f %12.1f %11.2fx", mapName, d1, d2, a, a/d1));
+            System.out.println("  " + graph.getNumberOfNodes() + " junctions out of " + CountFreeCells(game) + " free cells");
+            if(suboptimal > 0)
+                System.out.println("  A* took " + suboptimal + " steps that weren't on a shortest path");
+        }
+    }
+
+    private static int CountFreeCells(Game game)
+    {
+        int free = 0;
+        for(int y=0; y<game.getMap().getHeight(); ++y)
+            for(int x=0; x<game.getMap().getWidth(); ++x)
+                if(!game.getMap().isWall(x, y))
+                    ++free;
+        return free;
+    }
+
+    // Cell reached from another one in one of the directions of Actor.DIRECTIONS, wrapping around the map borders
+    private static Vec2i Step(Game game, Vec2i cell, int direction)
+    {
+        final int w = game.getMap().getWidth(), h = game.getMap().getHeight();
+        switch(direction) {
+        case 0:  return new Vec2i(cell.x, (cell.y + h - 1) % h);
+        case 1:  return new Vec2i(cell.x, (cell.y + 1) % h);
+        case 2:  return new Vec2i((cell.x + w - 1) % w, cell.y);
+        case 3:  return new Vec2i((cell.x + 1) % w, cell.y);
+        default: return new Vec2i(cell);
+        }
+    }
+}
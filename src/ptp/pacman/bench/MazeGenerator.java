@@ -0,0 +1,340 @@
+package ptp.pacman.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Random;
+
+import ptp.pacman.Util;
+import ptp.pacman.base.GameRandom;
+import ptp.pacman.base.PacmanMap;
+
+/**
+ * Generator of random maps of any size, for the benchmarks that measure how the game scales with the map.
+ * The maps look like the bundled ones: corridors one cell wide between walls two cells thick, drawn with the
+ * same wall glyphs (edges and corners), points everywhere, power points near the corners and scattered around,
+ * tunnels through the borders, a ghost house with a line for door in the middle and a Pacman start at every
+ * corner. The same size and seed always give the same map.
+ *
+ * Corridors go along every third row and column. The corridors between two crossings are chosen as a random
+ * spanning tree, so every cell can reach every other one, plus some random loops; then every dead end is
+ * opened to a neighbour, as in the original game.
+ *
+ * Usage: MazeGenerator width height [seed]  (writes res/maps/mazeWIDTHxHEIGHT-SEED.map)
+ *  @see ptp.pacman.bench.BenchmarkSuite
+ * */
+public final class MazeGenerator
+{
+    /** Minimum width and height of a map, to fit the ghost house with corridors around it. */
+    public static final int MIN_SIZE = 21;
+    /** Maximum width and height of a map. */
+    public static final int MAX_SIZE = 4096;
+
+    // Probability of opening a corridor that closes a loop of the spanning tree
+    private static final double LOOP_PROBABILITY = 0.2;
+    // Crossings per tunnel, and per power point besides the ones at the corners
+    private static final int CROSSINGS_PER_TUNNEL = 12, CROSSINGS_PER_POWER_POINT = 150;
+    // Wall marker while the corridors are carved
+    private static final char WALL = '#';
+
+    private final int mWidth, mHeight;
+    private final long mSeed;
+    // Crossings of the corridors: a node every third cell in both axes
+    private final int mColumns, mRows;
+    // Corridors from every node to its right and down neighbours
+    private final boolean [] mRight, mDown;
+    private final char [] mCells;
+    // First node of the corridors around the ghost house, whose walls take the three blocks after it in each axis
+    private final int mHouseX, mHouseY;
+
+    /** Generates a map.
+     * @param width The width of the map, between MIN_SIZE and MAX_SIZE.
+     * @param height The height of the map, between MIN_SIZE and MAX_SIZE.
+     * @param seed The seed of the random choices.
+     * @throws IllegalArgumentException If the size is out of range.
+     * */
+    public MazeGenerator(int width, int height, long seed)
+    {
+        if(width < MIN_SIZE || height < MIN_SIZE || width > MAX_SIZE || height > MAX_SIZE)
+            throw new IllegalArgumentException("Wrong map size " + width + "x" + height + ": it must be between "
+                    + MIN_SIZE + " and " + MAX_SIZE);
+        mWidth = width;
+        mHeight = height;
+        mSeed = seed;
+        // Node i is at cell 3*i + 1. The borders take what is left after the last one
+        mColumns = width/3;
+        mRows = height/3;
+        mHouseX = (mColumns - 4)/2;
+        mHouseY = (mRows - 4)/2;
+        mRight = new boolean[mColumns*mRows];
+        mDown = new boolean[mColumns*mRows];
+        mCells = new char[width*height];
+
+        Random r = new GameRandom(seed);
+        carveCorridors(r);
+        removeDeadEnds(r);
+        paintCorridors(r);
+        paintWalls();
+    }
+
+    /** @return The name of the generated map: mazeWIDTHxHEIGHT-SEED. */
+    public String getName()
+    {
+        return "maze" + mWidth + "x" + mHeight + "-" + mSeed;
+    }
+
+    /** Writes the map in the format of the map files.
+     * @param out The writer. It isn't closed.
+     * @throws IOException If it can't be written.
+     * */
+    public void write(Writer out) throws IOException
+    {
+        out.write(mWidth + " " + mHeight + "\n");
+        for(int y=0; y<mHeight; ++y) {
+            out.write(mCells, y*mWidth, mWidth);
+            out.write('\n');
+        }
+    }
+
+    /** Creates the map in memory, without writing it to a file.
+     * @return The map, named as getName().
+     * */
+    public PacmanMap createMap()
+    {
+        StringWriter text = new StringWriter(mWidth*mHeight + mHeight + 16);
+        try {
+            write(text);
+        } catch(IOException e) {
+            // A StringWriter doesn't throw
+            throw new IllegalStateException(e);
+        }
+        return new PacmanMap(getName(), new StringReader(text.toString()));
+    }
+
+    // Nodes covered by the walls of the ghost house
+    private boolean inHouse(int i, int j)
+    {
+        return i > mHouseX && i <= mHouseX + 2 && j > mHouseY && j <= mHouseY + 2;
+    }
+
+    // Random spanning tree of the nodes (Kruskal), with the corridors around the ghost house always open
+    private void carveCorridors(Random r)
+    {
+        final int nodes = mColumns*mRows;
+        int [] parent = new int[nodes];
+        for(int n=0; n<nodes; ++n)
+            parent[n] = n;
+
+        for(int k=0; k<3; ++k) {
+            open(parent, node(mHouseX + k, mHouseY), false);
+            open(parent, node(mHouseX + k, mHouseY + 3), false);
+            open(parent, node(mHouseX, mHouseY + k), true);
+            open(parent, node(mHouseX + 3, mHouseY + k), true);
+        }
+
+        // Candidate corridors, 2*node for the right one and 2*node + 1 for the down one, in random order
+        int [] edges = new int[2*nodes];
+        int count = 0;
+        for(int j=0; j<mRows; ++j) {
+            for(int i=0; i<mColumns; ++i) {
+                if(inHouse(i, j))
+                    continue;
+                if(i + 1 < mColumns && !inHouse(i + 1, j) && !mRight[node(i, j)])
+                    edges[count++] = 2*node(i, j);
+                if(j + 1 < mRows && !inHouse(i, j + 1) && !mDown[node(i, j)])
+                    edges[count++] = 2*node(i, j) + 1;
+            }
+        }
+        for(int k=count-1; k>0; --k) {
+            final int other = r.nextInt(k + 1), e = edges[k];
+            edges[k] = edges[other];
+            edges[other] = e;
+        }
+        for(int k=0; k<count; ++k) {
+            final int from = edges[k] >> 1;
+            final boolean down = (edges[k] & 1) != 0;
+            final int to = down ? from + mColumns : from + 1;
+            if(find(parent, from) != find(parent, to) || r.nextDouble() < LOOP_PROBABILITY)
+                open(parent, from, down);
+        }
+    }
+
+    private void open(int [] parent, int from, boolean down)
+    {
+        if(down)
+            mDown[from] = true;
+        else
+            mRight[from] = true;
+        parent[find(parent, from)] = find(parent, down ? from + mColumns : from + 1);
+    }
+
+    private static int find(int [] parent, int n)
+    {
+        while(parent[n] != n) {
+            parent[n] = parent[parent[n]];
+            n = parent[n];
+        }
+        return n;
+    }
+
+    // Opens a corridor from every node with a single one to a random neighbour
+    private void removeDeadEnds(Random r)
+    {
+        int [] candidates = new int[4];
+        for(int j=0; j<mRows; ++j) {
+            for(int i=0; i<mColumns; ++i) {
+                if(inHouse(i, j) || degree(i, j) >= 2)
+                    continue;
+                int count = 0;
+                if(i > 0 && !inHouse(i - 1, j) && !mRight[node(i - 1, j)])
+                    candidates[count++] = 2*node(i - 1, j);
+                if(i + 1 < mColumns && !inHouse(i + 1, j) && !mRight[node(i, j)])
+                    candidates[count++] = 2*node(i, j);
+                if(j > 0 && !inHouse(i, j - 1) && !mDown[node(i, j - 1)])
+                    candidates[count++] = 2*node(i, j - 1) + 1;
+                if(j + 1 < mRows && !inHouse(i, j + 1) && !mDown[node(i, j)])
+                    candidates[count++] = 2*node(i, j) + 1;
+                final int e = candidates[r.nextInt(count)];
+                if((e & 1) != 0)
+                    mDown[e >> 1] = true;
+                else
+                    mRight[e >> 1] = true;
+            }
+        }
+    }
+
+    private int degree(int i, int j)
+    {
+        return (i > 0 && mRight[node(i - 1, j)] ? 1 : 0) + (mRight[node(i, j)] ? 1 : 0)
+             + (j > 0 && mDown[node(i, j - 1)] ? 1 : 0) + (mDown[node(i, j)] ? 1 : 0);
+    }
+
+    private int node(int i, int j)
+    {
+        return j*mColumns + i;
+    }
+
+    // Points on the corridors, and then the house, the tunnels, the starts and the power points over them
+    private void paintCorridors(Random r)
+    {
+        Arrays.fill(mCells, WALL);
+        for(int j=0; j<mRows; ++j) {
+            for(int i=0; i<mColumns; ++i) {
+                if(inHouse(i, j))
+                    continue;
+                final int x = 3*i + 1, y = 3*j + 1;
+                set(x, y, PacmanMap.CELL_POINT_SMALL);
+                if(mRight[node(i, j)])
+                    set(x + 1, y, PacmanMap.CELL_POINT_SMALL).set(x + 2, y, PacmanMap.CELL_POINT_SMALL);
+                if(mDown[node(i, j)])
+                    set(x, y + 1, PacmanMap.CELL_POINT_SMALL).set(x, y + 2, PacmanMap.CELL_POINT_SMALL);
+            }
+        }
+
+        // Ghost house: the walls take three blocks in each axis, two cells thick around four by four starts,
+        // and the door is a line in the middle of the top wall
+        final int houseX = 3*mHouseX + 4, houseY = 3*mHouseY + 4;
+        for(int y=houseY; y<houseY + 4; ++y)
+            for(int x=houseX; x<houseX + 4; ++x)
+                set(x, y, PacmanMap.CELL_GHOST_START);
+        for(int y=houseY - 2; y<houseY; ++y)
+            set(houseX + 1, y, PacmanMap.CELL_LINE).set(houseX + 2, y, PacmanMap.CELL_LINE);
+
+        // Tunnels through the borders, from the first and last nodes of some rows and columns, evenly spaced
+        final int rowTunnels = Math.max(1, mRows/CROSSINGS_PER_TUNNEL), rowOffset = r.nextInt(mRows - 2);
+        for(int t=0; t<rowTunnels; ++t) {
+            final int y = 3*(1 + (rowOffset + t*((mRows - 2)/rowTunnels)) % (mRows - 2)) + 1;
+            set(0, y, PacmanMap.CELL_EMPTY);
+            for(int x=3*(mColumns - 1) + 2; x<mWidth; ++x)
+                set(x, y, PacmanMap.CELL_EMPTY);
+        }
+        final int columnTunnels = Math.max(1, mColumns/CROSSINGS_PER_TUNNEL), columnOffset = r.nextInt(mColumns - 2);
+        for(int t=0; t<columnTunnels; ++t) {
+            final int x = 3*(1 + (columnOffset + t*((mColumns - 2)/columnTunnels)) % (mColumns - 2)) + 1;
+            set(x, 0, PacmanMap.CELL_EMPTY);
+            for(int y=3*(mRows - 1) + 2; y<mHeight; ++y)
+                set(x, y, PacmanMap.CELL_EMPTY);
+        }
+
+        final int right = 3*(mColumns - 1) + 1, bottom = 3*(mRows - 1) + 1;
+        set(1, 1, PacmanMap.CELL_PACMAN_START).set(right, 1, PacmanMap.CELL_PACMAN_START);
+        set(1, bottom, PacmanMap.CELL_PACMAN_START).set(right, bottom, PacmanMap.CELL_PACMAN_START);
+        set(1, 4, PacmanMap.CELL_POINT_BIG).set(right, 4, PacmanMap.CELL_POINT_BIG);
+        set(1, bottom - 3, PacmanMap.CELL_POINT_BIG).set(right, bottom - 3, PacmanMap.CELL_POINT_BIG);
+        for(int p=mColumns*mRows/CROSSINGS_PER_POWER_POINT; p>0; --p) {
+            final int x = 3*r.nextInt(mColumns) + 1, y = 3*r.nextInt(mRows) + 1;
+            if(mCells[y*mWidth + x] == PacmanMap.CELL_POINT_SMALL)
+                set(x, y, PacmanMap.CELL_POINT_BIG);
+        }
+    }
+
+    private MazeGenerator set(int x, int y, char c)
+    {
+        mCells[y*mWidth + x] = c;
+        return this;
+    }
+
+    // Every wall cell gets the glyph of the side or the corner where it's open: walls are two cells thick,
+    // so a wall cell is only open to one side, two sides that share a corner, or a diagonal
+    private void paintWalls()
+    {
+        // Cells outside the map are walls, so the borders are drawn closed
+        final boolean [] open = new boolean[(mWidth + 2)*(mHeight + 2)];
+        final int stride = mWidth + 2;
+        for(int y=0; y<mHeight; ++y)
+            for(int x=0; x<mWidth; ++x)
+                open[(y + 1)*stride + x + 1] = mCells[y*mWidth + x] != WALL;
+
+        for(int y=0; y<mHeight; ++y) {
+            for(int x=0; x<mWidth; ++x) {
+                if(mCells[y*mWidth + x] != WALL)
+                    continue;
+                final int i = (y + 1)*stride + x + 1;
+                final boolean n = open[i - stride], s = open[i + stride], w = open[i - 1], e = open[i + 1];
+                char c;
+                if(n)
+                    c = w ? PacmanMap.CELL_DIAG_225_BOTTOM : e ? PacmanMap.CELL_DIAG_315_BOTTOM : PacmanMap.CELL_H_BOTTOM;
+                else if(s)
+                    c = w ? PacmanMap.CELL_DIAG_135_TOP : e ? PacmanMap.CELL_DIAG_45_TOP : PacmanMap.CELL_H_TOP;
+                else if(w)
+                    c = PacmanMap.CELL_V_RIGHT;
+                else if(e)
+                    c = PacmanMap.CELL_V_LEFT;
+                else if(open[i + stride + 1])
+                    c = PacmanMap.CELL_DIAG_225_TOP;
+                else if(open[i + stride - 1])
+                    c = PacmanMap.CELL_DIAG_315_TOP;
+                else if(open[i - stride + 1])
+                    c = PacmanMap.CELL_DIAG_135_BOTTOM;
+                else if(open[i - stride - 1])
+                    c = PacmanMap.CELL_DIAG_45_BOTTOM;
+                else
+                    c = PacmanMap.CELL_FULL;
+                mCells[y*mWidth + x] = c;
+            }
+        }
+    }
+
+    public static void main(String [] args) throws IOException
+    {
+        if(args.length < 2) {
+            System.err.println("Usage: MazeGenerator width height [seed]");
+            System.exit(1);
+        }
+        MazeGenerator generator = new MazeGenerator(Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+                args.length > 2 ? Long.parseLong(args[2]) : 1);
+        File file = new File(Util.MapPathWithName(generator.getName() + ".map"));
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            generator.write(out);
+        } finally {
+            out.close();
+        }
+        System.out.println(file);
+    }
+}
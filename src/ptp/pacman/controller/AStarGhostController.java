@@ -0,0 +1,124 @@
+package ptp.pacman.controller;
+
+import java.nio.ByteBuffer;
+
+import ptp.pacman.Vec2i;
+import ptp.pacman.base.Actor;
+import ptp.pacman.base.Actor.Direction;
+import ptp.pacman.base.Pacman.State;
+import ptp.pacman.base.Game;
+import ptp.pacman.base.GraphSearch;
+import ptp.pacman.base.JunctionController;
+import ptp.pacman.base.NavigationGraph;
+import ptp.pacman.base.Pacman;
+
+/** Ghost controller that follows the closest Pacman through the shortest path, found with the A* algorithm,
+ * and escapes from it when it's in state eater.
+ * Unlike the Dijkstra controllers, the cost of a path is just its length, and the heuristic (the Manhattan distance,
+ * taking the tunnels around the map borders into account) never overestimates it, so the path is always the shortest.
+ * The search runs on the junctions of the map (its NavigationGraph), and it's only needed at them or when the Pacman
+ * changes its cell: in the middle of a corridor, the ghost just goes on along it. While it's chasing, it isn't even
+ * called until the ghost reaches the next junction (see JunctionController).
+ *  @see http://en.wikipedia.org/wiki/A*_search_algorithm
+ *  @see ptp.pacman.base.GraphSearch
+ * */
+public class AStarGhostController extends AbstractGhostController implements JunctionController
+{
+    private final Vec2i mLastPacmanPosition = new Vec2i(-1,-1);
+    private final GraphSearch mSearch = new GraphSearch();
+    // Cell where mLastDirection was chosen
+    private final Vec2i mDecisionCell = new Vec2i(-1,-1);
+    private Direction mLastDirection = Direction.STOPPED;
+
+    /** Constructor.
+     * @param g The current game
+     * @param index The number of this controller in its game, used for its name
+     * */
+    public AStarGhostController(Game g, int index)
+    {
+        super(g);
+        mControllerName = "A* #"+index;
+    }
+
+    /** Returns the next direction depending on the closest Pacman's state. It follows it if its state is "normal",
+     * searching the path again at every junction and every time the Pacman changes its cell, and escapes from it
+     * if it's "eater".
+     * */
+    @Override
+    public Direction getNextDirection()
+    {
+    	Pacman closestPacman = closestPacman();
+    	if (closestPacman == null)
+    		return Direction.STOPPED;
+
+    	if (closestPacman.getState() != State.NORMAL) {
+    		// Forget the decision, so the path is searched again when the chase goes on
+    		mLastPacmanPosition.set(-1, -1);
+    		mDecisionCell.set(-1, -1);
+    		mLastDirection = directionAwayFrom(closestPacman);
+    		return mLastDirection;
+    	}
+
+        final Vec2i cell = mGhost.getCell(), target = closestPacman.getCell();
+        if(cell.compareTo(mDecisionCell) == 0 && target.compareTo(mLastPacmanPosition) == 0)
+            return mLastDirection;
+
+        final NavigationGraph graph = mGame.getMap().getNavigationGraph();
+        final Direction arrival = mGhost.getDirection();
+        if(target.compareTo(mLastPacmanPosition) == 0 && cell.compareTo(target) != 0 &&
+                !graph.isDecisionCell(cell.x, cell.y) && arrival != Direction.STOPPED) {
+            // The path goes on along the corridor
+            mLastDirection = graph.getCorridorDirection(cell, arrival);
+        } else {
+            mLastPacmanPosition.set(target);
+            mLastDirection = Actor.DIRECTIONS[mSearch.findDirection(graph, cell, target)];
+        }
+        mDecisionCell.set(cell);
+        return mLastDirection;
+    }
+
+    /** Waits for the next junction while the ghost is chasing a Pacman along a path. When it escapes, it decides
+     * at every cell.
+     * @see ptp.pacman.base.JunctionController#waitsForJunction()
+     * */
+    @Override
+    public boolean waitsForJunction()
+    {
+        return mDecisionCell.x >= 0 && mLastDirection != Direction.STOPPED;
+    }
+
+    /** Returns the number of junctions expanded by all the searches of this controller, to compare it with others.
+     * @return The number of expanded nodes of the navigation graph.
+     * */
+    public long getExpandedCells()
+    {
+        return mSearch.getExpansions();
+    }
+
+    /** Saves the last decision, after the state of AbstractGhostController.
+     * @see ptp.pacman.controller.AbstractGhostController#saveState(ByteBuffer)
+     * */
+    @Override
+    public void saveState(ByteBuffer out)
+    {
+        super.saveState(out);
+        out.putShort((short)mLastPacmanPosition.x);
+        out.putShort((short)mLastPacmanPosition.y);
+        out.putShort((short)mDecisionCell.x);
+        out.putShort((short)mDecisionCell.y);
+        out.put((byte)mLastDirection.ordinal());
+    }
+
+    /** @see ptp.pacman.controller.AbstractGhostController#restoreState(ByteBuffer)
+     * */
+    @Override
+    public void restoreState(ByteBuffer in)
+    {
+        super.restoreState(in);
+        mLastPacmanPosition.x = in.getShort();
+        mLastPacmanPosition.y = in.getShort();
+        mDecisionCell.x = in.getShort();
+        mDecisionCell.y = in.getShort();
+        mLastDirection = Actor.DIRECTIONS[in.get()];
+    }
+}
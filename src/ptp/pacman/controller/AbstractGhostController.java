@@ -1,13 +1,15 @@
 package ptp.pacman.controller;
 
-import java.util.Random;
+import java.nio.ByteBuffer;
 
 import ptp.pacman.Vec2i;
 import ptp.pacman.base.Actor;
 import ptp.pacman.base.ActorController;
 import ptp.pacman.base.Game;
+import ptp.pacman.base.GameRandom;
 import ptp.pacman.base.Ghost;
 import ptp.pacman.base.Pacman;
+import ptp.pacman.base.StatefulController;
 import ptp.pacman.base.Actor.Direction;
 
 /** Abstract base class for ghost controllers.
@@ -15,20 +17,21 @@ import ptp.pacman.base.Actor.Direction;
  *  @author Jose Alcalá Correa, Gabriel Garrido Calvo
  *  @version 1.0
  * */
-public abstract class AbstractGhostController implements ActorController
+public abstract class AbstractGhostController implements ActorController, StatefulController
 {
     protected final Game mGame;
     protected String mControllerName;
     protected Ghost mGhost;
     protected Direction mDirection = Direction.UP;
-    protected Random mRandom = new Random();
+    protected GameRandom mRandom;
     
     /** Constructor.
-     * @param g The current game
+     * @param g The current game. The controller takes its random number generator from it.
      * */
     public AbstractGhostController(Game g)
     {
         mGame = g;
+        mRandom = g.createRandom();
     }
     
     /** Sets the ghost for the current controller.
@@ -62,6 +65,25 @@ public abstract class AbstractGhostController implements ActorController
         mDirection = Actor.DIRECTIONS[n];
     }
     
+    /** Saves the current direction and the random number generator. Subclasses with more state append it after this.
+     * @see ptp.pacman.base.StatefulController#saveState(ByteBuffer)
+     * */
+    @Override
+    public void saveState(ByteBuffer out)
+    {
+        out.put((byte)mDirection.ordinal());
+        out.putLong(mRandom.getState());
+    }
+    
+    /** @see ptp.pacman.base.StatefulController#restoreState(ByteBuffer)
+     * */
+    @Override
+    public void restoreState(ByteBuffer in)
+    {
+        mDirection = Actor.DIRECTIONS[in.get()];
+        mRandom.setState(in.getLong());
+    }
+    
     /** @see ptp.pacman.base.ActorController#getName()
      * */
     @Override
@@ -71,25 +93,32 @@ public abstract class AbstractGhostController implements ActorController
     }
     
     /** Returns the closest Pacman of those who are in the current map
+     * @see ptp.pacman.base.Game#getClosestPacman(Vec2i)
      * */
     public Pacman closestPacman()
     {
-        Vec2i minDistance = new Vec2i(0,0);
-        int minDistanceSquaredLength = Integer.MAX_VALUE;
-        Pacman closestPacman = null;
-        for(Pacman p: mGame.getPacmans()) {
-        	if (p.isAlive() && !p.isDead()){
-	            Vec2i distance = mGhost.getCell().distance(p.getCell());
-	            int distanceLength = distance.squaredLength();
-	            if(distanceLength < minDistanceSquaredLength) {
-	                closestPacman = p;
-	                minDistance.set(distance);
-	                minDistanceSquaredLength = distanceLength;
-	            }
-        	}
-        }
-        
-        return closestPacman;
+        return mGame.getClosestPacman(mGhost.getCell());
+    }
+    
+    /** Returns the first step of the shortest path from the ghost to a Pacman, read from the distance field
+     * that the game shares between all its ghosts.
+     * @param p The Pacman to follow.
+     * @return The direction, or STOPPED if the ghost is already in its cell or can't reach it.
+     * @see ptp.pacman.base.NavigationService#getDirectionTowards(Pacman, Vec2i)
+     * */
+    protected Direction directionTowards(Pacman p)
+    {
+        return mGame.getNavigation().getDirectionTowards(p, mGhost.getCell());
+    }
+    
+    /** Returns the direction that takes the ghost farther from a Pacman, read from the shared distance field.
+     * @param p The Pacman to escape from.
+     * @return The direction, or STOPPED if no neighbour cell is farther.
+     * @see ptp.pacman.base.NavigationService#getDirectionAwayFrom(Pacman, Vec2i)
+     * */
+    protected Direction directionAwayFrom(Pacman p)
+    {
+        return mGame.getNavigation().getDirectionAwayFrom(p, mGhost.getCell());
     }
 
 }
@@ -0,0 +1,68 @@
+package ptp.pacman.controller;
+
+import java.nio.ByteBuffer;
+
+import ptp.pacman.base.ActorController;
+import ptp.pacman.base.Game;
+import ptp.pacman.base.GameRandom;
+import ptp.pacman.base.Pacman;
+import ptp.pacman.base.StatefulController;
+import ptp.pacman.base.Actor.Direction;
+
+/** Abstract base class for Pacman controllers that are not ruled by a human (i. e. for headless simulations).
+ * As AbstractGhostController, they need to know about the game and the Pacman they are controlling.
+ *  @see ptp.pacman.controller.AbstractGhostController
+ * */
+public abstract class AbstractPacmanController implements ActorController, StatefulController
+{
+    protected final Game mGame;
+    protected String mControllerName;
+    protected Pacman mPacman;
+    protected GameRandom mRandom;
+    
+    /** Constructor.
+     * @param g The current game. The controller takes its random number generator from it.
+     * */
+    public AbstractPacmanController(Game g)
+    {
+        mGame = g;
+        mRandom = g.createRandom();
+    }
+    
+    /** Sets the Pacman for the current controller.
+     * @param p The Pacman to be controlled.
+     * */
+    public void setPacman(Pacman p)
+    {
+        mPacman = p;
+    }
+    
+    /** @see ptp.pacman.base.ActorController#getNextDirection()
+     * */
+    public abstract Direction getNextDirection();
+    
+    /** Saves the random number generator. Subclasses with more state append it after this.
+     * @see ptp.pacman.base.StatefulController#saveState(ByteBuffer)
+     * */
+    @Override
+    public void saveState(ByteBuffer out)
+    {
+        out.putLong(mRandom.getState());
+    }
+    
+    /** @see ptp.pacman.base.StatefulController#restoreState(ByteBuffer)
+     * */
+    @Override
+    public void restoreState(ByteBuffer in)
+    {
+        mRandom.setState(in.getLong());
+    }
+    
+    /** @see ptp.pacman.base.ActorController#getName()
+     * */
+    @Override
+    public String getName()
+    {
+        return mControllerName;
+    }
+}
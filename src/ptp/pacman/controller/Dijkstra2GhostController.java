@@ -1,12 +1,12 @@
 package ptp.pacman.controller;
 
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 
 import ptp.pacman.Vec2i;
+import ptp.pacman.base.Actor;
 import ptp.pacman.base.Actor.Direction;
 import ptp.pacman.base.Pacman.State;
 import ptp.pacman.base.Game;
-import ptp.pacman.base.Ghost;
 import ptp.pacman.base.Pacman;
 import ptp.pacman.base.PacmanMap;
 
@@ -16,24 +16,29 @@ import ptp.pacman.base.PacmanMap;
  * */
 public class Dijkstra2GhostController extends AbstractGhostController
 {
-    static int sIndex = 1;
-    static int MAX_COST = 99;
+    static final int MAX_COST = 99;
+    // Cells explored around the ghost to escape
+    static final int ESCAPE_EXPANSIONS = 3;
     
     private final Vec2i mLastPacmanPosition = new Vec2i(-1,-1);
-    private final ArrayList<Vec2i> mPath = new ArrayList<Vec2i>();
+    private final PathSearch mSearch = new PathSearch(MAX_COST, ESCAPE_EXPANSIONS);
+    // A path is never longer than the cost limit of the search
+    private final int [] mPath = new int[MAX_COST];
+    private int mPathLength;
     private final Vec2i mNextCell = new Vec2i(-1,-1);
     private Direction mLastDirection = Direction.STOPPED;
     
-    public Dijkstra2GhostController(Game g)
+    public Dijkstra2GhostController(Game g, int index)
     {
         super(g);
-        mControllerName = "Dijkstra2 #"+sIndex;
-        ++sIndex;
+        mControllerName = "Dijkstra2 #"+index;
     }
     
-    /** Returns the next direction depending on the closest Pacman's state (will follow it if its state is "normal",
-     * and will escape from it if its state is "eater"), using Dijkstra's algorithm.
+    /** Returns the next direction depending on the closest Pacman's state. It follows it if its state is "normal",
+     * through the shortest path read from the distance field shared by all the ghosts of the game. If it's "eater",
+     * it escapes from it using Dijkstra's algorithm around the ghost.
      * @see http://en.wikipedia.org/wiki/Dijkstra's_algorithm
+     * @see ptp.pacman.base.NavigationService
      * */
     @Override
     public Direction getNextDirection()
@@ -43,23 +48,27 @@ public class Dijkstra2GhostController extends AbstractGhostController
     	if (closestPacman == null)
     		return Direction.STOPPED;
     	
+    	if (closestPacman.getState() == State.NORMAL) {
+    		// Forget the escape path, so it's calculated again the next time
+    		mLastPacmanPosition.set(-1, -1);
+    		mPathLength = 0;
+    		mLastDirection = directionTowards(closestPacman);
+    		return mLastDirection;
+    	}
+    	
 		closestPacmanCell = closestPacman.getCell();
     	
-        if (closestPacman.getState() == Pacman.State.EATER) {
-        	mGhost.setState(Ghost.State.SCARED);
-        }
-        else {
-        	mGhost.setState(Ghost.State.ATTACKING);
-        }
         
         if(closestPacmanCell.compareTo(mLastPacmanPosition) != 0) {
             calculatePath();
             mNextCell.set( mGhost.getCell() );
         }
         
-        if(mPath.size()>0) {
+        if(mPathLength>0) {
             if(mNextCell.compareTo(mGhost.getCell()) == 0) {
-                mNextCell.set( mPath.remove(mPath.size()-1) );
+                final int next = mPath[--mPathLength],
+                          width = mGame.getMap().getWidth();
+                mNextCell.set( next % width, next / width );
                 
                 int gx = mGhost.getCell().x,
                     gy = mGhost.getCell().y;
@@ -80,148 +89,61 @@ public class Dijkstra2GhostController extends AbstractGhostController
         }
     }
     
-    /** Calculates the path to the closest Pacman.
+    /** Calculates the path to escape from the closest Pacman. Only a few cells around the ghost are explored.
      * */
-    // TODO: this could be optimized (for example, not creating the whole matrix)
     private void calculatePath()
     {
         PacmanMap map = mGame.getMap();
-        Vec2i ghostPos = mGhost.getCell();
         Pacman closestPacman = closestPacman();
-        int sizeArea = MAX_COST; 
-        
-        
         mLastPacmanPosition.set(closestPacman.getCell());
         
-        int mapHeight = map.getDimensions().y,
-            mapWidth  = map.getDimensions().x;
-        final Vec2i aux = new Vec2i(0,0);
-        ArrayList<ArrayList<MatrixCell>> matrix = new ArrayList<ArrayList<MatrixCell>>();
-        for(int i=0; i<mapHeight; ++i){
-            ArrayList<MatrixCell> row = new ArrayList<MatrixCell>(mapWidth);
-            aux.y = i;
-            for(int j=0; j<mapWidth; ++j) {
-                aux.x = j;
-                
-                int distanceValue;
-                if(map.isWall(j, i)) {
-                	distanceValue = MAX_COST;
-                	
-                } else {
-                    if(closestPacman.getState() == State.NORMAL){
-                    	distanceValue = aux.manhattanLength(mLastPacmanPosition);
-                    }
-                    else{
-                    	distanceValue = MAX_COST - aux.manhattanLength(mLastPacmanPosition);
-                    	sizeArea = 3;
-                    }
-                }
-                
-                row.add(new MatrixCell(j, i, distanceValue));
-            }
-            matrix.add(row);
-        }
-        
-        MatrixCell current = matrix.get(ghostPos.y).get(ghostPos.x);
-        current.cost = 0;
-        
-        PriorityQueue queue = new PriorityQueue();
-        queue.update(current);
-        int cont = 0;
-        
-        while(!queue.isEmpty() && current.compareTo(mLastPacmanPosition)!=0 && cont < sizeArea) {
-            current = queue.pop();
-            ArrayList<MatrixCell> neighbours = neighbours(current.x, current.y, matrix, map);
-            for(MatrixCell mc : neighbours){
-                int cost = current.cost+1 + mc.distance;
-                if (cost < mc.cost) {
-                	mc.cost = current.cost+1;
-                    mc.parent = current;
-                    queue.update(mc);
-                }
-            }
-            ++cont;
-        }
-        
-        mPath.clear();
-        if(current != null) {
-            while(current.parent != null) {
-                mPath.add(current);
-                current = current.parent;
-//                if(closestPacman.getState() == State.EATER)
-//                	System.out.println(current.x + "," + current.y + "->" + current.distance + "," + current.cost);
-            }
-        }
-        
-//        if(closestPacman.getState() == State.EATER){
-//        	@SuppressWarnings("unused")
-//			int i = 5;
-//        }
+        mPathLength = mSearch.findPath(map, mGhost.getCell(), mLastPacmanPosition, true, ESCAPE_EXPANSIONS, mPath);
     }
     
-    private final ArrayList<MatrixCell> neighbours = new ArrayList<MatrixCell>(4);
-    private final ArrayList<MatrixCell> neighbours(int x, int y, 
-            ArrayList<ArrayList<MatrixCell>> matrix, PacmanMap map)
+    /** Returns the number of cells expanded by all the searches of this controller, to compare it with others.
+     * @return The number of expanded cells.
+     * */
+    public long getExpandedCells()
     {
-        neighbours.clear();
-        final int mapHeight = map.getDimensions().y,
-                  mapWidth  = map.getDimensions().x;
-        
-        if(x>0 && !map.isWall(x-1, y))
-            neighbours.add(matrix.get(y).get(x-1));
-        if(x<mapWidth-1 && !map.isWall(x+1, y))
-            neighbours.add(matrix.get(y).get(x+1));
-        
-        if(y>0 && !map.isWall(x, y-1))
-            neighbours.add(matrix.get(y-1).get(x));
-        if(y<mapHeight-1 && !map.isWall(x, y+1))
-            neighbours.add(matrix.get(y+1).get(x));
-        
-        return neighbours;
+        return mSearch.getExpansions();
     }
     
-    private static final class MatrixCell extends Vec2i
+    /** Saves the path being followed, after the state of AbstractGhostController.
+     * @see ptp.pacman.controller.AbstractGhostController#saveState(ByteBuffer)
+     * */
+    @Override
+    public void saveState(ByteBuffer out)
     {
-        MatrixCell parent;
-        int cost;
-        final int distance;
-        
-        public MatrixCell(int x, int y, int distance)
-        {
-            super(x,y);
-            this.distance = distance;
-            this.cost = MAX_COST;
+        super.saveState(out);
+        out.putShort((short)mLastPacmanPosition.x);
+        out.putShort((short)mLastPacmanPosition.y);
+        out.putShort((short)mNextCell.x);
+        out.putShort((short)mNextCell.y);
+        out.put((byte)mLastDirection.ordinal());
+        final int width = mGame.getMap().getWidth();
+        out.putShort((short)mPathLength);
+        for(int i=0; i<mPathLength; ++i) {
+            out.putShort((short)(mPath[i] % width));
+            out.putShort((short)(mPath[i] / width));
         }
     }
     
-    private static final class PriorityQueue
+    /** @see ptp.pacman.controller.AbstractGhostController#restoreState(ByteBuffer)
+     * */
+    @Override
+    public void restoreState(ByteBuffer in)
     {
-        // Ordered from max to min cost
-        private final ArrayList<MatrixCell> cells = new ArrayList<MatrixCell>();
-        
-        public MatrixCell pop()
-        {
-            MatrixCell mc = cells.get(cells.size()-1);
-            cells.remove(cells.size()-1);
-            return mc;
-        }
-        
-        public void update(MatrixCell c)
-        {
-            cells.remove(c);
-            int i = 0;
-            for(; i<cells.size(); ++i) {
-                MatrixCell cell = cells.get(i);
-                if(cell.cost+cell.distance<c.cost+c.distance)
-                    break;
-            }
-            cells.add(i, c);
-        }
-        
-        public boolean isEmpty()
-        {
-            return cells.isEmpty();
+        super.restoreState(in);
+        mLastPacmanPosition.x = in.getShort();
+        mLastPacmanPosition.y = in.getShort();
+        mNextCell.x = in.getShort();
+        mNextCell.y = in.getShort();
+        mLastDirection = Actor.DIRECTIONS[in.get()];
+        final PacmanMap map = mGame.getMap();
+        mPathLength = in.getShort();
+        for(int i=0; i<mPathLength; ++i) {
+            int x = in.getShort();
+            mPath[i] = in.getShort()*map.getWidth() + x;
         }
     }
-    
 }
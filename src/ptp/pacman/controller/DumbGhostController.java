@@ -1,8 +1,6 @@
 package ptp.pacman.controller;
 
 import ptp.pacman.base.Game;
-import ptp.pacman.base.Ghost;
-import ptp.pacman.base.Pacman;
 import ptp.pacman.base.Actor.Direction;
 
 
@@ -12,33 +10,22 @@ import ptp.pacman.base.Actor.Direction;
  * */
 public class DumbGhostController extends AbstractGhostController
 {
-    private static int sIndex = 1;
-    
     /** Constructor.
      * @param g The current game
+     * @param index The number of this controller in its game, used for its name
      * */
-    public DumbGhostController(Game g)
+    public DumbGhostController(Game g, int index)
     {
     	super(g);
-        mControllerName = "Dumb #"+sIndex;
-        ++sIndex;
+        mControllerName = "Dumb #"+index;
     }
     
-    /** Returns a random direction. It's stupid, but smart enough to know if it should be scared or not.
-     * If Pacman's state is eater, ghosts controlled with this controller will just act as blonde-american-girls in zombie
-     * films: they will scream but won't do anything else.
+    /** Returns a random direction. If Pacman's state is eater, ghosts controlled with this controller will just
+     * act as blonde-american-girls in zombie films: they will scream (the game makes them scared) but won't do anything else.
      * */
     @Override
     public Direction getNextDirection()
     {
-    	Pacman closestPacman = closestPacman();
-    	
-    	if (closestPacman.getState() == Pacman.State.EATER) {
-        	mGhost.setState(Ghost.State.SCARED);
-        } else {
-        	mGhost.setState(Ghost.State.ATTACKING);
-        }
-    	
         if(mGhost==null) {
             generateRandomDifferentDirection();
         } else if (!mGhost.successInLastMovement()) {
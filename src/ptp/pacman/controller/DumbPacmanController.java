@@ -0,0 +1,62 @@
+package ptp.pacman.controller;
+
+import java.nio.ByteBuffer;
+
+import ptp.pacman.base.Actor;
+import ptp.pacman.base.Game;
+import ptp.pacman.base.Actor.Direction;
+
+/** Pacman controller that walks randomly, as DumbGhostController does. It's useful to fill the Pacman
+ * slots of headless games.
+ *  @see ptp.pacman.controller.DumbGhostController
+ * */
+public class DumbPacmanController extends AbstractPacmanController
+{
+    private Direction mDirection = Direction.LEFT;
+    
+    /** Constructor.
+     * @param g The current game
+     * @param index The number of this controller in its game, used for its name
+     * */
+    public DumbPacmanController(Game g, int index)
+    {
+        super(g);
+        mControllerName = "Dumb Pacman #"+index;
+    }
+    
+    /** Returns a random direction, that changes when the Pacman hits a wall or, sometimes, just because.
+     * */
+    @Override
+    public Direction getNextDirection()
+    {
+        if (mPacman == null || !mPacman.successInLastMovement()) {
+            int n = mRandom.nextInt(4);
+            if(Actor.DIRECTIONS[n] == mDirection) {
+                n = (1 + mRandom.nextInt(3)) % 4;
+            }
+            mDirection = Actor.DIRECTIONS[n];
+        } else if(mRandom.nextFloat() < 0.05) {
+            mDirection = Actor.DIRECTIONS[mRandom.nextInt(4)];
+        }
+        
+        return mDirection;
+    }
+    
+    /** @see ptp.pacman.controller.AbstractPacmanController#saveState(ByteBuffer)
+     * */
+    @Override
+    public void saveState(ByteBuffer out)
+    {
+        super.saveState(out);
+        out.put((byte)mDirection.ordinal());
+    }
+    
+    /** @see ptp.pacman.controller.AbstractPacmanController#restoreState(ByteBuffer)
+     * */
+    @Override
+    public void restoreState(ByteBuffer in)
+    {
+        super.restoreState(in);
+        mDirection = Actor.DIRECTIONS[in.get()];
+    }
+}
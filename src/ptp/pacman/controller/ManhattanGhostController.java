@@ -3,7 +3,6 @@ package ptp.pacman.controller;
 import ptp.pacman.Vec2i;
 import ptp.pacman.base.Actor.Direction;
 import ptp.pacman.base.Game;
-import ptp.pacman.base.Ghost;
 import ptp.pacman.base.Pacman;
 
 /** A ghost controller that follows the closest Pacman using the Manhattan distance algorithm.
@@ -13,16 +12,15 @@ import ptp.pacman.base.Pacman;
  * */
 public class ManhattanGhostController extends AbstractGhostController
 {
-    static int sIndex = 1;
     
     /** Constructor.
      * @param g The current game
+     * @param index The number of this controller in its game, used for its name
      * */
-    public ManhattanGhostController(Game g)
+    public ManhattanGhostController(Game g, int index)
     {
         super(g);
-        mControllerName = "Manhattan #"+sIndex;
-        ++sIndex;
+        mControllerName = "Manhattan #"+index;
     }
     
     /** Returns the next direction depending on the Manhattan distance to the closest Pacman.
@@ -32,17 +30,14 @@ public class ManhattanGhostController extends AbstractGhostController
     public Direction getNextDirection()
     {
     	Pacman closestPacman = closestPacman();
+    	if (closestPacman == null)
+    		return Direction.STOPPED;
         // 1. Get ghost and closest pacman positions
         Vec2i pp = closestPacman.getCell(),
               gp = mGhost.getCell();
-        Vec2i distance = gp.distance(pp);
+        final int distanceX = gp.x - pp.x,
+                  distanceY = gp.y - pp.y;
         
-        if (closestPacman.getState() == Pacman.State.EATER) {
-        	mGhost.setState(Ghost.State.SCARED);
-        }
-        else {
-        	mGhost.setState(Ghost.State.ATTACKING);
-        }
         
         // 2. Get the two possible directions to go to it
         Direction horizontalDirection = Direction.STOPPED,
@@ -62,7 +57,7 @@ public class ManhattanGhostController extends AbstractGhostController
         Direction firstTry = verticalDirection,
                   secondTry = horizontalDirection;
         
-        if(distance.x < distance.y){
+        if(distanceX < distanceY){
             firstTry = horizontalDirection;
             secondTry = verticalDirection;
         }
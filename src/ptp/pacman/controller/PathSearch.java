@@ -0,0 +1,235 @@
+package ptp.pacman.controller;
+
+import java.util.Arrays;
+
+import ptp.pacman.Vec2i;
+import ptp.pacman.base.PacmanMap;
+
+/** Path search of Dijkstra2GhostController when it escapes, on primitive arrays and an indexed binary heap with
+ * decrease-key, so a search costs O(E log V) and doesn't allocate. Every controller owns its own search, whose
+ * buffers are reused across calls. ExpansionBenchmark also runs it to chase a Pacman, to compare a search per ghost
+ * with the distance fields shared by the ghosts.
+ *
+ * No cell is given a cost of maxCost or more, so a search never goes farther than maxCost cells from its start.
+ * The buffers only cover that window around the start, indexed by the position of the cell in it, and their size
+ * depends on maxCost but not on the map (about 1 MB for the 99 of the controllers, even on the biggest maps).
+ * A search that never expands more than a few cells only needs a window of that many cells around the start,
+ * so it can be given that bound to shrink its buffers (a few hundred bytes for the 3 of Dijkstra2GhostController).
+ *
+ * The priority of a cell is its cost plus its distance to the target (to the Pacman when chasing it, or
+ * MAX_COST minus it when escaping). Ties are broken in favour of the cell updated last, as the sorted list
+ * used before did, so the paths found are the same.
+ *  @see ptp.pacman.controller.Dijkstra2GhostController
+ *  @see ptp.pacman.bench.ExpansionBenchmark
+ * */
+public final class PathSearch
+{
+    private final int mMaxCost;
+    // Distance from the start to the borders of the window, its width, and its top left corner in the map
+    // during a search
+    private final int mRadius;
+    private final int mSide;
+    private int mLeft, mTop;
+    private final int [] mCost,
+                         mDistance,
+                         mParent,
+                         mOrder,
+                         mHeapIndex,
+                         mStamp,
+                         mHeap;
+    private int mHeapSize;
+    private int mGeneration;
+    private int mUpdates;
+    private long mExpansions;
+
+    /** Constructor.
+     * @param maxCost The initial cost of every cell, and the distance of the walls.
+     * */
+    public PathSearch(int maxCost)
+    {
+        this(maxCost, Integer.MAX_VALUE);
+    }
+
+    /** Constructor of a search that never expands more than a number of cells.
+     * @param maxCost The initial cost of every cell, and the distance of the walls.
+     * @param maxExpansions The maximum number of cells expanded by findPath().
+     * */
+    public PathSearch(int maxCost, int maxExpansions)
+    {
+        mMaxCost = maxCost;
+        // The expanded cells form a tree from the start, so the n-th one is less than n steps away from it
+        mRadius = Math.min(maxCost, maxExpansions);
+        mSide = 2*mRadius + 1;
+        final int slots = mSide*mSide;
+        mCost = new int[slots];
+        mDistance = new int[slots];
+        mParent = new int[slots];
+        mOrder = new int[slots];
+        mHeapIndex = new int[slots];
+        mStamp = new int[slots];
+        mHeap = new int[slots];
+    }
+
+    /** Searches a path from a cell to another one.
+     * @param map The map.
+     * @param start The start cell (the ghost one).
+     * @param target The target cell (the Pacman one).
+     * @param escape If the distance to the target has to be maximized instead of minimized.
+     * @param maxExpansions The maximum number of cells expanded before giving up, which can't be more than the one
+     * given to the constructor.
+     * @param path Where the path is written, as cell indices (y*width + x) from its end to the cell after the start.
+     * It must have room for maxCost cells.
+     * @return The length of the path. If the target wasn't reached, the path leads to the last expanded cell.
+     * */
+    public int findPath(PacmanMap map, Vec2i start, Vec2i target, boolean escape, int maxExpansions, int [] path)
+    {
+        prepare(start);
+        final int width = map.getWidth(), height = map.getHeight(), side = mSide;
+        // Slots of the start and the target. The target may be out of the window, and then it's never reached
+        final int startSlot = slot(start.x, start.y),
+                  targetSlot = Math.abs(target.x - start.x) <= mRadius && Math.abs(target.y - start.y) <= mRadius
+                          ? slot(target.x, target.y) : -1;
+
+        open(map, startSlot, target, escape);
+        mCost[startSlot] = 0;
+        push(startSlot);
+
+        int current = startSlot;
+        for(int expansions=0; mHeapSize > 0 && current != targetSlot && expansions < maxExpansions; ++expansions) {
+            current = pop();
+            ++mExpansions;
+            // Cells are at most maxCost - 1 steps from the start (or maxExpansions - 1), so their neighbours are
+            // in the window
+            final int x = mLeft + current % side, y = mTop + current / side;
+            if(x > 0 && !map.isWall(x-1, y))
+                relax(map, current, current - 1, target, escape);
+            if(x < width-1 && !map.isWall(x+1, y))
+                relax(map, current, current + 1, target, escape);
+            if(y > 0 && !map.isWall(x, y-1))
+                relax(map, current, current - side, target, escape);
+            if(y < height-1 && !map.isWall(x, y+1))
+                relax(map, current, current + side, target, escape);
+        }
+
+        int length = 0;
+        for(int slot=current; mParent[slot] >= 0; slot=mParent[slot])
+            path[length++] = (mTop + slot / side)*width + mLeft + slot % side;
+        return length;
+    }
+
+    /** @return The number of cells expanded by all the searches. */
+    public long getExpansions()
+    {
+        return mExpansions;
+    }
+
+    private void relax(PacmanMap map, int from, int cell, Vec2i target, boolean escape)
+    {
+        open(map, cell, target, escape);
+        // The cost plus the distance is compared with the bare cost of the cell
+        if(mCost[from] + 1 + mDistance[cell] < mCost[cell]) {
+            mCost[cell] = mCost[from] + 1;
+            mParent[cell] = from;
+            if(mHeapIndex[cell] < 0)
+                push(cell);
+            else
+                update(cell);
+        }
+    }
+
+    // Initializes a cell the first time it's seen in the current search
+    private void open(PacmanMap map, int cell, Vec2i target, boolean escape)
+    {
+        if(mStamp[cell] == mGeneration)
+            return;
+        mStamp[cell] = mGeneration;
+        final int x = mLeft + cell % mSide, y = mTop + cell / mSide;
+        if(map.isWall(x, y)) {
+            mDistance[cell] = mMaxCost;
+        } else {
+            final int manhattan = Math.abs(x - target.x) + Math.abs(y - target.y);
+            // Never negative (on maps wider than the maximum cost), or a cell could get a higher cost than it had
+            // and the parents would loop
+            mDistance[cell] = escape ? Math.max(0, mMaxCost - manhattan) : manhattan;
+        }
+        mCost[cell] = mMaxCost;
+        mParent[cell] = -1;
+        mHeapIndex[cell] = -1;
+    }
+
+    // Centres the window on the start, and forgets the previous search
+    private void prepare(Vec2i start)
+    {
+        mLeft = start.x - mRadius;
+        mTop = start.y - mRadius;
+        if(++mGeneration == 0) {
+            Arrays.fill(mStamp, 0);
+            mGeneration = 1;
+        }
+        mHeapSize = 0;
+        mUpdates = 0;
+    }
+
+    private int slot(int x, int y)
+    {
+        return (y - mTop)*mSide + x - mLeft;
+    }
+
+    // Heap ordered by priority, and by the last update among equal priorities
+
+    private boolean before(int a, int b)
+    {
+        final int pa = mCost[a] + mDistance[a],
+                  pb = mCost[b] + mDistance[b];
+        return pa < pb || (pa == pb && mOrder[a] > mOrder[b]);
+    }
+
+    private void push(int cell)
+    {
+        mHeap[mHeapSize] = cell;
+        mHeapIndex[cell] = mHeapSize++;
+        update(cell);
+    }
+
+    // The priority of a cell only decreases, so it only has to go up
+    private void update(int cell)
+    {
+        mOrder[cell] = ++mUpdates;
+        int i = mHeapIndex[cell];
+        while(i > 0) {
+            final int parent = (i - 1) >> 1;
+            if(!before(cell, mHeap[parent]))
+                break;
+            mHeap[i] = mHeap[parent];
+            mHeapIndex[mHeap[i]] = i;
+            i = parent;
+        }
+        mHeap[i] = cell;
+        mHeapIndex[cell] = i;
+    }
+
+    private int pop()
+    {
+        final int top = mHeap[0];
+        mHeapIndex[top] = -1;
+        final int last = mHeap[--mHeapSize];
+        if(mHeapSize > 0) {
+            int i = 0;
+            while(true) {
+                int child = 2*i + 1;
+                if(child >= mHeapSize)
+                    break;
+                if(child + 1 < mHeapSize && before(mHeap[child + 1], mHeap[child]))
+                    ++child;
+                if(!before(mHeap[child], last))
+                    break;
+                mHeap[i] = mHeap[child];
+                mHeapIndex[mHeap[i]] = i;
+                i = child;
+            }
+            mHeap[i] = last;
+            mHeapIndex[last] = i;
+        }
+        return top;
+    }
+}
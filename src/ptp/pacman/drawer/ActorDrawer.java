@@ -2,25 +2,26 @@ package ptp.pacman.drawer;
 
 import java.awt.Graphics;
 
-import ptp.pacman.base.Actor;
+import ptp.pacman.base.GameSnapshot;
 
 /** Abstract class for objects that take an actor and draw it on a canvas.
+ * Actors are read from a game snapshot, never from the game itself, so drawing doesn't race with the simulation.
  *  @author Jose Alcalá Correa, Gabriel Garrido Calvo
  *  @version 1.0
  * */
 public abstract class ActorDrawer
 {
-    protected final Actor mActor;
+    protected final int mIndex;
     protected long mStartTime;
     protected int mCellSize;
     
-    /** Constructor. Takes an actor and the cell size.
-     * @param actor The actor to be drawn.
+    /** Constructor. Takes an actor index and the cell size.
+     * @param index The index of the actor to be drawn in its list of the game (Pacmans or ghosts).
      * @param cellSize The cell size that will use the drawing.
      * */
-    public ActorDrawer(Actor actor, int cellSize)
+    public ActorDrawer(int index, int cellSize)
     {
-        mActor = actor;
+        mIndex = index;
         mCellSize = cellSize;
         mStartTime = -1;
     }
@@ -58,10 +59,11 @@ public abstract class ActorDrawer
     
     /** Abstract method to be implemented by subclasses. Draws an actor in the specified position.
      * @param g The canvas where to draw
+     * @param snapshot The game snapshot that contains the actor.
      * @param offsetX The horizontal offset.
      * @param offsetY The vertical offset.
      * @param timeMillis The time stamp for the animation
      * */
-    public abstract void draw(Graphics g, int offsetX, int offsetY,
+    public abstract void draw(Graphics g, GameSnapshot snapshot, int offsetX, int offsetY,
             long timeMillis);
 }
@@ -2,9 +2,9 @@ package ptp.pacman.drawer;
 
 import java.awt.Color;
 import java.awt.Graphics;
-import java.util.Random;
 
-import ptp.pacman.Vec2f;
+import ptp.pacman.base.Actor;
+import ptp.pacman.base.GameSnapshot;
 import ptp.pacman.base.Ghost;
 
 /** Draws a ghost in a canvas.
@@ -17,28 +17,27 @@ public final class GhostDrawer extends ActorDrawer
         Color.MAGENTA, Color.ORANGE, Color.RED, Color.PINK};
 
     private Color mColor;
+    // Polygon buffers, reused on every frame
+    private final int[] mXs = new int[9], mYs = new int[9];
     
-    /** Constructor. Chooses a random color.
-     * @param ghost The ghost to be drawn.
+    /** Constructor. Chooses its color from the ghost index, so a game always looks the same (i.e. when replayed).
+     * @param index The index of the ghost to be drawn.
      * @param cellSize The cell size that will use the drawing.
      * */
-    public GhostDrawer(Ghost ghost, int cellSize)
+    public GhostDrawer(int index, int cellSize)
     {
-        super(ghost, cellSize);
-        Random r = new Random();
-        mColor = colors[r.nextInt(colors.length)];
+        super(index, cellSize);
+        mColor = colors[index % colors.length];
     }
 
     /** Draws a ghost on screen.
-     * @see ptp.pacman.drawer.ActorDrawer#draw(Graphics, int, int, long)
+     * @see ptp.pacman.drawer.ActorDrawer#draw(Graphics, GameSnapshot, int, int, long)
      * */
     @Override
-    public void draw(Graphics g, int offsetX, int offsetY, long timeMillis)
+    public void draw(Graphics g, GameSnapshot snapshot, int offsetX, int offsetY, long timeMillis)
     {
-    	Ghost ghost = (Ghost) mActor;
-        Vec2f position = mActor.getPosition();
-        int ox = offsetX+(int)(position.x*mCellSize),
-            oy = offsetY+(int)(position.y*mCellSize),
+        int ox = offsetX+snapshot.getGhostSubCellX(mIndex)*mCellSize/Actor.OFFSET_STEPS,
+            oy = offsetY+snapshot.getGhostSubCellY(mIndex)*mCellSize/Actor.OFFSET_STEPS,
             c = mCellSize,
             c12 = c/2,
             c15 = c/5,
@@ -47,7 +46,7 @@ public final class GhostDrawer extends ActorDrawer
             c16 = c/6;
         
         // Upper part
-        if (ghost.getState() == Ghost.State.SCARED) {
+        if (snapshot.getGhostState(mIndex) == Ghost.State.SCARED) {
         	g.setColor(Color.GRAY);
         }
         else {
@@ -57,8 +56,16 @@ public final class GhostDrawer extends ActorDrawer
         g.fillArc(ox, oy, mCellSize, mCellSize, 0, 180);
         
         // "Legs"
-        int[] xs = {ox, ox+c, ox+c, ox+5*c16, ox+4*c16, ox+3*c16, ox+2*c16, ox+c16, ox};
-        int[] ys = {oy+c12, oy+c12, oy+c, oy+c45, oy+c, oy+c45, oy+c, oy+c45, oy+c};
+        final int[] xs = mXs, ys = mYs;
+        xs[0] = ox;       ys[0] = oy+c12;
+        xs[1] = ox+c;     ys[1] = oy+c12;
+        xs[2] = ox+c;     ys[2] = oy+c;
+        xs[3] = ox+5*c16; ys[3] = oy+c45;
+        xs[4] = ox+4*c16; ys[4] = oy+c;
+        xs[5] = ox+3*c16; ys[5] = oy+c45;
+        xs[6] = ox+2*c16; ys[6] = oy+c;
+        xs[7] = ox+c16;   ys[7] = oy+c45;
+        xs[8] = ox;       ys[8] = oy+c;
         g.fillPolygon(xs, ys, 9);
         // Eyes
         g.setColor(Color.WHITE);
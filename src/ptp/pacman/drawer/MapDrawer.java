@@ -4,6 +4,7 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
 
+import ptp.pacman.base.GameSnapshot;
 import ptp.pacman.base.PacmanMap;
 
 /** Draws a map in a canvas. Uses a cache to avoid redrawing all elements on every frame (regenerates the background only when the cell size changes).
@@ -194,13 +195,15 @@ public final class MapDrawer
     	return mBackground.getHeight();
     }
     
-    /** Draws the map in the specified position.
+    /** Draws the map in the specified position. The walls come from the cached background,
+     * and the points from the given snapshot.
      * @param g The canvas where to draw
+     * @param snapshot The game snapshot with the current points.
      * @param offsetX The horizontal offset.
      * @param offsetY The vertical offset.
      * */
     final Color yellowColor = new Color(255, 200, 0);
-    public void draw(Graphics g, int offsetX, int offsetY)
+    public void draw(Graphics g, GameSnapshot snapshot, int offsetX, int offsetY)
     {
     	// Draw background
         g.drawImage(mBackground, offsetX, offsetY, null);
@@ -215,7 +218,7 @@ public final class MapDrawer
         
         for(int i=0; i< mMap.getHeight(); ++i) {
             for(int j=0; j<mMap.getWidth(); ++j) {
-                char ch = mMap.getCell(j, i);
+                char ch = snapshot.getCell(j, i);
                 switch(ch){
                 case PacmanMap.CELL_POINT_BIG:
                     g.setColor(yellowColor);
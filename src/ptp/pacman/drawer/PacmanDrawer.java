@@ -3,7 +3,8 @@ package ptp.pacman.drawer;
 import java.awt.Color;
 import java.awt.Graphics;
 
-import ptp.pacman.Vec2f;
+import ptp.pacman.base.Actor;
+import ptp.pacman.base.GameSnapshot;
 import ptp.pacman.base.Pacman;
 
 /** Draws a Pacman in a canvas.
@@ -14,23 +15,22 @@ public class PacmanDrawer extends ActorDrawer
 {
     private static final float MIN_ANGLE = 200.0f;
     
-    /** Constructor. Chooses a random color.
-     * @param ghost The ghost to be drawn.
+    /** Constructor.
+     * @param index The index of the Pacman to be drawn.
      * @param cellSize The cell size that will use the drawing.
      * */
-    public PacmanDrawer(Pacman pacman, int cellSize)
+    public PacmanDrawer(int index, int cellSize)
     {
-        super(pacman, cellSize);
+        super(index, cellSize);
     }
     
     /** Draws a Pacman on screen. Completes mouth animation.
-     * @see ptp.pacman.drawer.ActorDrawer#draw(Graphics, int, int, long)
+     * @see ptp.pacman.drawer.ActorDrawer#draw(Graphics, GameSnapshot, int, int, long)
      * */
     @Override
-    public void draw(Graphics g, int offsetX, int offsetY, long timeMillis)
+    public void draw(Graphics g, GameSnapshot snapshot, int offsetX, int offsetY, long timeMillis)
     {
-        Pacman pacman = (Pacman) mActor;
-        if (!pacman.isAlive() || pacman.isDead())
+        if (!snapshot.isPacmanAlive(mIndex) || snapshot.isPacmanDead(mIndex))
         	return;
         
         // Interpolate between MIN_ANGLE and 360 degrees every 1000 ms
@@ -40,7 +40,7 @@ public class PacmanDrawer extends ActorDrawer
         int angle = (int)(MIN_ANGLE + (360-MIN_ANGLE)*timeDiff/500);
         
         int startAngle = (360-angle)/2;
-        switch(pacman.getDirection()){
+        switch(snapshot.getPacmanDirection(mIndex)){
             case RIGHT:  break;
             case LEFT:   startAngle += 180; break;
             case UP:     startAngle += 90; break;
@@ -48,14 +48,12 @@ public class PacmanDrawer extends ActorDrawer
             case STOPPED: startAngle = 0; angle = 360; break;
         }
         
-        Vec2f pos = pacman.getPosition();
-        
-        int cellStartX = (int) (pos.x*mCellSize);
-        int cellStartY = (int) (pos.y*mCellSize);
+        int cellStartX = snapshot.getPacmanSubCellX(mIndex)*mCellSize/Actor.OFFSET_STEPS;
+        int cellStartY = snapshot.getPacmanSubCellY(mIndex)*mCellSize/Actor.OFFSET_STEPS;
         
 
     	
-        if(pacman.getState()==Pacman.State.NORMAL)
+        if(snapshot.getPacmanState(mIndex)==Pacman.State.NORMAL)
             g.setColor(Color.BLUE);
         else // State.EATER
             g.setColor(Color.RED);
@@ -14,6 +14,7 @@ import ptp.pacman.base.Actor;
 import ptp.pacman.base.ActorController;
 import ptp.pacman.base.Ghost;
 import ptp.pacman.base.Pacman;
+import ptp.pacman.controller.AStarGhostController;
 import ptp.pacman.controller.DijkstraGhostController;
 import ptp.pacman.controller.DumbGhostController;
 import ptp.pacman.controller.KeyboardController;
@@ -87,6 +88,8 @@ public abstract class ActorPanel extends JPanel
             icon = Util.IconWithName("controller_dumb.png");
         } else if(ctrlClass == ManhattanGhostController.class) {
             icon = Util.IconWithName("controller_manhattan.png");
+        } else if(ctrlClass == AStarGhostController.class) {
+            icon = Util.IconWithName("controller_astar.png");
         }
         controllerLabel.setIcon(icon);
         mCommonInfoPanel.add(controllerLabel, BorderLayout.EAST);
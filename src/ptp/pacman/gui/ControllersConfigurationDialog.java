@@ -18,7 +18,6 @@ import javax.swing.JTextField;
 
 import ptp.pacman.base.Game;
 import ptp.pacman.base.Actor.Direction;
-import ptp.pacman.base.GameControllers;
 import ptp.pacman.controller.KeyboardController;
 
 /** Dialog used to set keys for keyboard controllers.
@@ -104,7 +103,7 @@ public class ControllersConfigurationDialog extends JDialog
 
 	private JTextField getControllerText(int player, final int direction) 
 	{
-		final KeyboardController keysController = GameControllers.KeyboardControllers().get(player);
+		final KeyboardController keysController = mGame.getControllers().getKeyboardControllers().get(player);
 		int oldKeyCode = keysController.getKeyCodeDirection(Direction.values()[direction]);
 		final JTextField keyInput = new JTextField(KeyEvent.getKeyText(oldKeyCode),4);
 		mGame.pause();
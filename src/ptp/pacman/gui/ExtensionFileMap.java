@@ -4,17 +4,19 @@ import java.io.File;
 
 import javax.swing.filechooser.FileFilter;
 
+import ptp.pacman.base.CompiledMap;
+
 public class ExtensionFileMap extends FileFilter {
 
 	@Override
 	public boolean accept(File file) {
 		String filename = file.getName();
-        return filename.endsWith(".map");
+        return filename.endsWith(".map") || filename.endsWith(CompiledMap.EXTENSION);
 	}
 
 	@Override
 	public String getDescription() {
-		return "*.map";
+		return "*.map, *" + CompiledMap.EXTENSION;
 	}
 
 }
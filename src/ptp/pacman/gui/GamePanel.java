@@ -10,8 +10,7 @@ import javax.swing.JComponent;
 
 import ptp.pacman.base.Game;
 import ptp.pacman.base.GameRepresentationListener;
-import ptp.pacman.base.Ghost;
-import ptp.pacman.base.Pacman;
+import ptp.pacman.base.GameSnapshot;
 import ptp.pacman.base.PacmanMap;
 import ptp.pacman.drawer.GhostDrawer;
 import ptp.pacman.drawer.MapDrawer;
@@ -33,12 +32,15 @@ public class GamePanel extends JComponent implements GameRepresentationListener
     private final List<PacmanDrawer> mPacmanDrawers = new ArrayList<PacmanDrawer>();
     private final List<GhostDrawer> mGhostDrawers = new ArrayList<GhostDrawer>();
     private int mOldWidth = -1, mOldHeight = -1;
+    private final SwingEventBus mEventBus;
     
     /** Constructor. Sets some size limits and its layout.
+     * @param bus The event bus whose frames are closed on every refresh, or null.
      * */
-    public GamePanel()
+    public GamePanel(SwingEventBus bus)
     {
         super();
+        mEventBus = bus;
         setPreferredSize(new Dimension(300,300));
         setMinimumSize(new Dimension(300,300));
         setLayout(new BorderLayout());
@@ -53,12 +55,14 @@ public class GamePanel extends JComponent implements GameRepresentationListener
             mGame.removeRepresentationListener(this);
         mGame = game;
         mMapDrawer = new MapDrawer(mGame.getMap());
-        for(Pacman p : mGame.getPacmans()) {
-            PacmanDrawer d = new PacmanDrawer(p, 0);
+        mPacmanDrawers.clear();
+        mGhostDrawers.clear();
+        for(int i=0; i<mGame.getPacmans().size(); ++i) {
+            PacmanDrawer d = new PacmanDrawer(i, 0);
             mPacmanDrawers.add(d);
         }
-        for(Ghost g : mGame.getGhosts()) {
-            GhostDrawer d = new GhostDrawer(g, 0);
+        for(int i=0; i<mGame.getGhosts().size(); ++i) {
+            GhostDrawer d = new GhostDrawer(i, 0);
             mGhostDrawers.add(d);
         }
         mGame.setRepresentationListener(this);
@@ -97,12 +101,15 @@ public class GamePanel extends JComponent implements GameRepresentationListener
         }
     }
     
-    /** Refreshes the panel.
+    /** Refreshes the panel. Called by the game thread once per tick, so it also closes the
+     * current frame of the event bus.
      * @g The game to be drawn.
      * */
     @Override
     public void refresh(Game g)
     {
+        if(mEventBus != null)
+            mEventBus.endFrame();
         if(mGame == g) {
             repaint();
         } else {
@@ -125,24 +132,28 @@ public class GamePanel extends JComponent implements GameRepresentationListener
             setSize(width, height);
         }
         
+        // Everything is drawn from the same snapshot => no torn frames
+        final GameSnapshot snapshot = mGame.getSnapshot();
+        
         // Draw background
         long timeMillis = System.currentTimeMillis();
         final int offX = (width - mMapDrawer.getWidth())/2,
             	   offY = (height - mMapDrawer.getHeight())/2;
         
         // Draw map
-        mMapDrawer.draw(g, offX, offY);
+        mMapDrawer.draw(g, snapshot, offX, offY);
         
         // Draw Pacmans
-        for(PacmanDrawer pd : mPacmanDrawers) {
+        for(int i=0; i<mPacmanDrawers.size() && i<snapshot.getNumberOfPacmans(); ++i) {
+            PacmanDrawer pd = mPacmanDrawers.get(i);
             if(!pd.isAnimationRunning())
                 pd.startAnimation(timeMillis);
-            pd.draw(g, offX, offY, timeMillis);
+            pd.draw(g, snapshot, offX, offY, timeMillis);
         }
         
         // Draw ghosts
-        for(GhostDrawer gd : mGhostDrawers) {
-            gd.draw(g, offX, offY, timeMillis);
+        for(int i=0; i<mGhostDrawers.size() && i<snapshot.getNumberOfGhosts(); ++i) {
+            mGhostDrawers.get(i).draw(g, snapshot, offX, offY, timeMillis);
         }
     }
 }
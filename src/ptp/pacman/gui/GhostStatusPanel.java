@@ -27,11 +27,12 @@ public class GhostStatusPanel extends ActorPanel
     
     /** Constructor.
      * @param g The ghost whose information will be represented.
+     * @param bus The event bus that brings the ghost updates to the EDT.
      * */
-    public GhostStatusPanel(Ghost g)
+    public GhostStatusPanel(Ghost g, SwingEventBus bus)
     {
         super(g);
-        g.setStatusListener(this);
+        g.setStatusListener(bus.forGhost(this));
     }
     
     /** @see ptp.pacman.base.GhostStatusListener#setTimesPacmanEaten(int)
@@ -26,10 +26,12 @@ import javax.swing.JRadioButtonMenuItem;
 import javax.swing.event.MenuEvent;
 import javax.swing.event.MenuListener;
 
+import ptp.pacman.base.ControllerBudget;
 import ptp.pacman.base.Game;
 import ptp.pacman.base.GameControllers;
 import ptp.pacman.base.Ghost;
 import ptp.pacman.base.Pacman;
+import ptp.pacman.base.TickProfiler;
 import ptp.pacman.controller.KeyboardController;
 
 /**
@@ -41,6 +43,10 @@ public class MainWindow extends JFrame
 {
     private static final long serialVersionUID = -3756702985198736401L;
     
+    private final GameControllers mControllers = new GameControllers();
+    private final SwingEventBus mEventBus = new SwingEventBus();
+    private final TickProfiler mProfiler = CreateProfiler();
+    private final ControllerBudget mBudget = CreateBudget();
     private Game mGame;
     private GamePanel mGamePanel;
     private GameStatusPanel mGameStatusPanel;
@@ -62,11 +68,43 @@ public class MainWindow extends JFrame
     public MainWindow()
     {
         // Instance variables initialization
-        mGame = new Game(mapName, n_pacmans, n_ghosts, n_ghost_human, mLevel);
+        mGame = new Game(mapName, n_pacmans, n_ghosts, n_ghost_human, mLevel, mControllers);
+        mGame.setProfiler(mProfiler);
+        mGame.setControllerBudget(mBudget);
         initInterface();
         mGame.mainLoop();
     }
     
+    /** Creates the tick profiler if the system property pacman.profile is set. Its value is the number
+     * of seconds between dumps of the profile to the standard output.
+     * @return The profiler, or null if the games aren't profiled.
+     * */
+    private static TickProfiler CreateProfiler()
+    {
+        String seconds = System.getProperty("pacman.profile");
+        if(seconds == null)
+            return null;
+        TickProfiler profiler = new TickProfiler();
+        profiler.startPeriodicDump(Long.parseLong(seconds)*1000, System.out);
+        return profiler;
+    }
+    
+    /** Creates the controller budget if the system property pacman.budget is set. Its value is the budget of
+     * every decision and the one of all the decisions of a tick, in milliseconds, separated by a comma
+     * (i.e. "5,10"). The controllers then run on a thread per core.
+     * @return The budget, or null if the controllers run on the game thread without any limit.
+     * */
+    private static ControllerBudget CreateBudget()
+    {
+        String budget = System.getProperty("pacman.budget");
+        if(budget == null)
+            return null;
+        String [] millis = budget.split(",");
+        final long actor = Long.parseLong(millis[0].trim())*1000,
+                   tick = millis.length > 1 ? Long.parseLong(millis[1].trim())*1000 : actor;
+        return new ControllerBudget(Runtime.getRuntime().availableProcessors(), actor, tick);
+    }
+    
     /** Inits the user interface, adding menus and so.
      * */
     private void initInterface()
@@ -97,6 +135,11 @@ public class MainWindow extends JFrame
             public void windowOpened(WindowEvent arg0) {}
         });
         
+        // Keyboard controllers are shared by all the games of this window
+        for(KeyboardController kc : mControllers.getKeyboardControllers()) {
+            addKeyListener(kc);
+        }
+        
         // Bar Options Menu 
         menuBar = new JMenuBar();
         addMenuGame();
@@ -123,7 +166,9 @@ public class MainWindow extends JFrame
     	this.remove(mActorsPanel);
     	
     	mGame.destroy();
-    	mGame = new Game(mapName, n_pacmans, n_ghosts,n_ghost_human,mLevel);
+    	mGame = new Game(mapName, n_pacmans, n_ghosts,n_ghost_human,mLevel, mControllers);
+    	mGame.setProfiler(mProfiler);
+    	mGame.setControllerBudget(mBudget);
     	
     	
     	this.validate();
@@ -177,25 +222,21 @@ public class MainWindow extends JFrame
     	// Information panel
         mGameStatusPanel = new GameStatusPanel(mGame,this);
         add(mGameStatusPanel, BorderLayout.NORTH);
-        mGame.setStatusListener(mGameStatusPanel);
+        mGame.setStatusListener(mEventBus.forGame(mGameStatusPanel));
         
         
         // Game panel
-        mGamePanel = new GamePanel();
+        mGamePanel = new GamePanel(mEventBus);
         mGamePanel.setGame(mGame);
         add(mGamePanel, BorderLayout.CENTER);
         
-        for(KeyboardController kc : GameControllers.KeyboardControllers()) {
-            addKeyListener(kc);
-        }
-        
         // Player panels
         mActorsPanel = new JPanel();
         mActorsPanel.setLayout(new BoxLayout(mActorsPanel, BoxLayout.Y_AXIS));
         for(Pacman p : mGame.getPacmans())
-            mActorsPanel.add(new PacmanStatusPanel(p));
+            mActorsPanel.add(new PacmanStatusPanel(p, mEventBus));
         for(Ghost g : mGame.getGhosts())
-            mActorsPanel.add(new GhostStatusPanel(g));
+            mActorsPanel.add(new GhostStatusPanel(g, mEventBus));
         
         add(mActorsPanel, BorderLayout.EAST);
     }
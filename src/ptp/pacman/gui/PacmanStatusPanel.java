@@ -28,11 +28,12 @@ public final class PacmanStatusPanel extends ActorPanel
     
     /** Constructor.
      * @param p The Pacman whose information will be represented.
+     * @param bus The event bus that brings the Pacman updates to the EDT.
      * */
-    public PacmanStatusPanel(Pacman p)
+    public PacmanStatusPanel(Pacman p, SwingEventBus bus)
     {
         super(p);
-        p.setStatusListener(this);
+        p.setStatusListener(bus.forPacman(this));
     }
     
     /** @see ptp.pacman.base.PacmanStatusListener#setLives(int)
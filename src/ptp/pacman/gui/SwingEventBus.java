@@ -0,0 +1,278 @@
+package ptp.pacman.gui;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
+
+import ptp.pacman.base.GameStatusListener;
+import ptp.pacman.base.GhostStatusListener;
+import ptp.pacman.base.PacmanStatusListener;
+
+/**
+ * Carries status updates from the game thread to the Swing panels.
+ * The game talks to proxies returned by forPacman(), forGhost() and forGame(), which only store the latest
+ * value of every update and mark it as dirty. At the end of each frame (see endFrame()), all dirty values
+ * are delivered to the real listeners with a single invokeLater, so the game thread never waits for the EDT,
+ * and a Pacman eating ten points in a frame results in one label update instead of ten.
+ *  @see ptp.pacman.gui.MainWindow
+ * */
+public final class SwingEventBus
+{
+    private final ConcurrentLinkedQueue<Proxy> mDirtyProxies = new ConcurrentLinkedQueue<Proxy>();
+    private final AtomicBoolean mFlushPending = new AtomicBoolean(false);
+    private final Runnable mFlush = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            flush();
+        }
+    };
+
+    /** Wraps a Pacman status listener.
+     * @param target The listener that will receive the updates in the EDT.
+     * @return The listener to be given to the Pacman.
+     * */
+    public PacmanStatusListener forPacman(PacmanStatusListener target)
+    {
+        return new PacmanProxy(target);
+    }
+
+    /** Wraps a ghost status listener.
+     * @param target The listener that will receive the updates in the EDT.
+     * @return The listener to be given to the ghost.
+     * */
+    public GhostStatusListener forGhost(GhostStatusListener target)
+    {
+        return new GhostProxy(target);
+    }
+
+    /** Wraps a game status listener.
+     * @param target The listener that will receive the updates in the EDT.
+     * @return The listener to be given to the game.
+     * */
+    public GameStatusListener forGame(GameStatusListener target)
+    {
+        return new GameProxy(target);
+    }
+
+    /** Closes the current frame, scheduling the delivery of its updates if there are any.
+     * Only one delivery is pending at any time; updates arriving meanwhile are merged into it.
+     * Can be called from any thread and never blocks.
+     * */
+    public void endFrame()
+    {
+        if(!mDirtyProxies.isEmpty() && mFlushPending.compareAndSet(false, true))
+            SwingUtilities.invokeLater(mFlush);
+    }
+
+    // Delivers the updates of all the dirty proxies. Runs in the EDT
+    private void flush()
+    {
+        mFlushPending.set(false);
+        Proxy p;
+        while((p = mDirtyProxies.poll()) != null) {
+            p.deliver();
+        }
+    }
+
+    /** Base class for the listener proxies. Keeps a bit mask with the values that changed since the last delivery.
+     * */
+    private abstract class Proxy
+    {
+        private int mDirtyKeys;
+
+        // Must be called holding the proxy lock, after storing the new value
+        protected final void mark(int key)
+        {
+            if(mDirtyKeys == 0)
+                mDirtyProxies.add(this);
+            mDirtyKeys |= key;
+        }
+
+        // Must be called holding the proxy lock, before copying the values to deliver
+        protected final int takeDirtyKeys()
+        {
+            int keys = mDirtyKeys;
+            mDirtyKeys = 0;
+            return keys;
+        }
+
+        /** Copies the dirty values and calls the target listener with them. Runs in the EDT.
+         * */
+        protected abstract void deliver();
+    }
+
+    private final class PacmanProxy extends Proxy implements PacmanStatusListener
+    {
+        private static final int EATER = 1, LIVES = 2, POINTS = 4;
+
+        private final PacmanStatusListener mTarget;
+        private boolean mEater;
+        private int mLives, mPoints;
+
+        PacmanProxy(PacmanStatusListener target)
+        {
+            mTarget = target;
+        }
+
+        @Override
+        public synchronized void setEater(boolean isEater)
+        {
+            mEater = isEater;
+            mark(EATER);
+        }
+
+        @Override
+        public synchronized void setLives(int lives)
+        {
+            mLives = lives;
+            mark(LIVES);
+        }
+
+        @Override
+        public synchronized void setPoints(int points)
+        {
+            mPoints = points;
+            mark(POINTS);
+        }
+
+        @Override
+        protected void deliver()
+        {
+            int keys, lives, points;
+            boolean eater;
+            synchronized(this) {
+                keys = takeDirtyKeys();
+                eater = mEater;
+                lives = mLives;
+                points = mPoints;
+            }
+            if((keys & EATER) != 0)
+                mTarget.setEater(eater);
+            if((keys & LIVES) != 0)
+                mTarget.setLives(lives);
+            if((keys & POINTS) != 0)
+                mTarget.setPoints(points);
+        }
+    }
+
+    private final class GhostProxy extends Proxy implements GhostStatusListener
+    {
+        private static final int PACMAN_EATEN = 1, EATEN_BY_PACMAN = 2;
+
+        private final GhostStatusListener mTarget;
+        private int mPacmanEaten, mEatenByPacman;
+
+        GhostProxy(GhostStatusListener target)
+        {
+            mTarget = target;
+        }
+
+        @Override
+        public synchronized void setTimesPacmanEaten(int times)
+        {
+            mPacmanEaten = times;
+            mark(PACMAN_EATEN);
+        }
+
+        @Override
+        public synchronized void setTimesEatenByPacman(int times)
+        {
+            mEatenByPacman = times;
+            mark(EATEN_BY_PACMAN);
+        }
+
+        @Override
+        protected void deliver()
+        {
+            int keys, pacmanEaten, eatenByPacman;
+            synchronized(this) {
+                keys = takeDirtyKeys();
+                pacmanEaten = mPacmanEaten;
+                eatenByPacman = mEatenByPacman;
+            }
+            if((keys & PACMAN_EATEN) != 0)
+                mTarget.setTimesPacmanEaten(pacmanEaten);
+            if((keys & EATEN_BY_PACMAN) != 0)
+                mTarget.setTimesEatenByPacman(eatenByPacman);
+        }
+    }
+
+    /** The game proxy also carries one-shot events (start, game over, win), which are delivered once
+     * per frame after the values, as the game over dialogs are modal.
+     * */
+    private final class GameProxy extends Proxy implements GameStatusListener
+    {
+        private static final int TIME = 1, MAP_NAME = 2, STARTED = 4, GAME_OVER = 8, PACMANS_WIN = 16;
+
+        private final GameStatusListener mTarget;
+        private int mCurrentSeconds, mRemainingSeconds;
+        private String mMapName;
+
+        GameProxy(GameStatusListener target)
+        {
+            mTarget = target;
+        }
+
+        @Override
+        public synchronized void setTime(int currentSeconds, int remainingSeconds)
+        {
+            // Called every tick, but the labels only change once per second
+            if(currentSeconds == mCurrentSeconds && remainingSeconds == mRemainingSeconds)
+                return;
+            mCurrentSeconds = currentSeconds;
+            mRemainingSeconds = remainingSeconds;
+            mark(TIME);
+        }
+
+        @Override
+        public synchronized void setMapName(String name)
+        {
+            mMapName = name;
+            mark(MAP_NAME);
+        }
+
+        @Override
+        public synchronized void gameStarted()
+        {
+            mark(STARTED);
+        }
+
+        @Override
+        public synchronized void gameOver()
+        {
+            mark(GAME_OVER);
+        }
+
+        @Override
+        public synchronized void pacmansWin()
+        {
+            mark(PACMANS_WIN);
+        }
+
+        @Override
+        protected void deliver()
+        {
+            int keys, currentSeconds, remainingSeconds;
+            String mapName;
+            synchronized(this) {
+                keys = takeDirtyKeys();
+                currentSeconds = mCurrentSeconds;
+                remainingSeconds = mRemainingSeconds;
+                mapName = mMapName;
+            }
+            if((keys & MAP_NAME) != 0)
+                mTarget.setMapName(mapName);
+            if((keys & STARTED) != 0)
+                mTarget.gameStarted();
+            if((keys & TIME) != 0)
+                mTarget.setTime(currentSeconds, remainingSeconds);
+            if((keys & PACMANS_WIN) != 0)
+                mTarget.pacmansWin();
+            if((keys & GAME_OVER) != 0)
+                mTarget.gameOver();
+        }
+    }
+}
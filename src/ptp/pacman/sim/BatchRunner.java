@@ -0,0 +1,286 @@
+package ptp.pacman.sim;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import ptp.pacman.base.ActorController;
+import ptp.pacman.base.Game;
+import ptp.pacman.base.TickProfiler;
+import ptp.pacman.controller.AStarGhostController;
+import ptp.pacman.controller.Dijkstra2GhostController;
+import ptp.pacman.controller.DijkstraGhostController;
+import ptp.pacman.controller.DumbGhostController;
+import ptp.pacman.controller.DumbPacmanController;
+import ptp.pacman.controller.ManhattanGhostController;
+
+/**
+ * Headless runner that simulates a batch of games, one per seed, on a work-stealing pool with as many
+ * threads as cores. Games are stepped as fast as possible (no sleeps), and their results are streamed
+ * to an optional listener and aggregated into a BatchStatistics.
+ * 
+ * Usage: BatchRunner map games [level [firstSeed [pacmans [ghost1,ghost2,... [replayDir]]]]]
+ * where the ghosts are any of dumb, manhattan, dijkstra, dijkstra2 and astar. If a replay directory is given,
+ * every game is recorded there.
+ *  @see ptp.pacman.base.Game#step()
+ * */
+public class BatchRunner
+{
+    /** Default tick limit for a game. A game lasts 180 seconds per life, so it should never be reached. */
+    public static final int DEFAULT_MAX_TICKS = 100000;
+    // Number of games below which a task is not split anymore
+    private static final int GAMES_PER_TASK = 8;
+    
+    private final String mMapName;
+    private final List<ControllerFactory> mPacmanFactories;
+    private final List<ControllerFactory> mGhostFactories;
+    private final int mLevel;
+    private int mMaxTicks = DEFAULT_MAX_TICKS;
+    private int mParallelism = Runtime.getRuntime().availableProcessors();
+    private GameResultListener mResultListener;
+    private File mReplayDirectory;
+    private TickProfiler mProfiler;
+    
+    /** Constructor.
+     * @param mapName The map where all the games are played.
+     * @param pacmans The factories of the Pacman controllers (one per Pacman).
+     * @param ghosts The factories of the ghost controllers (one per ghost).
+     * @param level The ghost level.
+     * */
+    public BatchRunner(String mapName, List<ControllerFactory> pacmans, List<ControllerFactory> ghosts, int level)
+    {
+        mMapName = mapName;
+        mPacmanFactories = new ArrayList<ControllerFactory>(pacmans);
+        mGhostFactories = new ArrayList<ControllerFactory>(ghosts);
+        mLevel = level;
+    }
+    
+    /** Sets the maximum number of ticks of a game. Games that reach it have no winner.
+     * @param maxTicks The tick limit.
+     * */
+    public void setMaxTicks(int maxTicks)
+    {
+        mMaxTicks = maxTicks;
+    }
+    
+    /** Sets the number of threads used to run the games.
+     * @param parallelism The number of threads. By default, the number of available cores.
+     * */
+    public void setParallelism(int parallelism)
+    {
+        mParallelism = parallelism;
+    }
+    
+    /** Sets the listener that receives every game result as soon as it's available.
+     * @param l The result listener. It will be called from several threads at the same time.
+     * */
+    public void setResultListener(GameResultListener l)
+    {
+        mResultListener = l;
+    }
+    
+    /** Sets the directory where the input log of every game is saved, as seed.replay, so it can be replayed later.
+     * @see ptp.pacman.sim.Replay
+     * @param dir The replay directory, or null to not record the games.
+     * */
+    public void setReplayDirectory(File dir)
+    {
+        mReplayDirectory = dir;
+    }
+    
+    /** Sets a profiler for all the games. It's shared by all the threads, so it adds some contention.
+     * If the system property pacman.profile is set, main() uses one and prints it at the end.
+     * @param p The profiler, or null to not profile the games.
+     * */
+    public void setProfiler(TickProfiler p)
+    {
+        mProfiler = p;
+    }
+    
+    /** Simulates a game for every seed in [firstSeed, firstSeed+games).
+     * @param firstSeed The seed of the first game.
+     * @param games The number of games.
+     * @return The aggregated statistics of all the games.
+     * */
+    public BatchStatistics run(long firstSeed, int games)
+    {
+        ForkJoinPool pool = new ForkJoinPool(mParallelism);
+        try {
+            return pool.invoke(new BatchTask(firstSeed, 0, games));
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    /** Simulates a single game.
+     * @param seed The seed of the game.
+     * @return The result of the game.
+     * */
+    public GameResult runGame(long seed)
+    {
+        Game game = createGame(seed);
+        InputLog log = mReplayDirectory != null ? InputLog.StartRecording(game) : null;
+        
+        game.stepN(mMaxTicks);
+        
+        if(log != null)
+            saveReplay(log);
+        return GameResult.ForGame(game);
+    }
+    
+    /** Creates a game of the batch, with all its actors and controllers, before its first tick.
+     * @param seed The seed of the game.
+     * @return The new game.
+     * */
+    public Game createGame(long seed)
+    {
+        // The map is only read by the first game (see MapCatalog)
+        Game game = new Game(mMapName, mLevel, seed);
+        for(int i=0; i<mPacmanFactories.size(); ++i)
+            game.addPacman(mPacmanFactories.get(i).create(game, i+1));
+        for(int i=0; i<mGhostFactories.size(); ++i)
+            game.addGhost(mGhostFactories.get(i).create(game, i+1));
+        
+        game.setProfiler(mProfiler);
+        return game;
+    }
+    
+    /** @return The maximum number of ticks of a game. */
+    public int getMaxTicks()
+    {
+        return mMaxTicks;
+    }
+    
+    private void saveReplay(InputLog log)
+    {
+        File file = new File(mReplayDirectory, log.getSeed() + Replay.EXTENSION);
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                log.write(out);
+            } finally {
+                out.close();
+            }
+        } catch(IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /** Task that simulates a range of seeds, splitting it in halves while it's big enough.
+     * */
+    private final class BatchTask extends RecursiveTask<BatchStatistics>
+    {
+        private static final long serialVersionUID = -4209634744093818390L;
+        
+        private final long mFirstSeed;
+        private final int mFrom, mTo;
+        
+        public BatchTask(long firstSeed, int from, int to)
+        {
+            mFirstSeed = firstSeed;
+            mFrom = from;
+            mTo = to;
+        }
+        
+        @Override
+        protected BatchStatistics compute()
+        {
+            if(mTo - mFrom <= GAMES_PER_TASK) {
+                BatchStatistics stats = new BatchStatistics();
+                for(int i=mFrom; i<mTo; ++i) {
+                    GameResult r = runGame(mFirstSeed + i);
+                    stats.add(r);
+                    if(mResultListener != null)
+                        mResultListener.gameFinished(r);
+                }
+                return stats;
+            }
+            
+            int middle = (mFrom + mTo) >>> 1;
+            BatchTask left = new BatchTask(mFirstSeed, mFrom, middle);
+            left.fork();
+            BatchStatistics stats = new BatchTask(mFirstSeed, middle, mTo).compute();
+            stats.merge(left.join());
+            return stats;
+        }
+    }
+    
+    /** Returns the factory of a ghost controller, given its name.
+     * @param name One of dumb, manhattan, dijkstra, dijkstra2 or astar.
+     * @return The controller factory.
+     * */
+    public static ControllerFactory GhostFactoryWithName(String name)
+    {
+        if(name.equals("dumb")) {
+            return new ControllerFactory() {
+                public ActorController create(Game game, int index) { return new DumbGhostController(game, index); }
+            };
+        } else if(name.equals("manhattan")) {
+            return new ControllerFactory() {
+                public ActorController create(Game game, int index) { return new ManhattanGhostController(game, index); }
+            };
+        } else if(name.equals("dijkstra")) {
+            return new ControllerFactory() {
+                public ActorController create(Game game, int index) { return new DijkstraGhostController(game, index); }
+            };
+        } else if(name.equals("dijkstra2")) {
+            return new ControllerFactory() {
+                public ActorController create(Game game, int index) { return new Dijkstra2GhostController(game, index); }
+            };
+        } else if(name.equals("astar")) {
+            return new ControllerFactory() {
+                public ActorController create(Game game, int index) { return new AStarGhostController(game, index); }
+            };
+        }
+        throw new IllegalArgumentException("Unknown ghost controller: " + name);
+    }
+    
+    /** Returns the factory of the default Pacman controller for headless games.
+     * @return The controller factory.
+     * */
+    public static ControllerFactory DefaultPacmanFactory()
+    {
+        return new ControllerFactory() {
+            public ActorController create(Game game, int index) { return new DumbPacmanController(game, index); }
+        };
+    }
+    
+    public static void main(String [] args)
+    {
+        if(args.length < 2) {
+            System.err.println("Usage: BatchRunner map games [level [firstSeed [pacmans [ghost1,ghost2,... [replayDir]]]]]");
+            System.exit(1);
+        }
+        String map = args[0];
+        int games = Integer.parseInt(args[1]);
+        int level = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        long firstSeed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+        int pacmans = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+        String ghosts = args.length > 5 ? args[5] : "dijkstra2,dijkstra2,dijkstra,dijkstra2";
+        
+        List<ControllerFactory> pacmanFactories = new ArrayList<ControllerFactory>();
+        for(int i=0; i<pacmans; ++i)
+            pacmanFactories.add(DefaultPacmanFactory());
+        List<ControllerFactory> ghostFactories = new ArrayList<ControllerFactory>();
+        for(String name : ghosts.split(","))
+            ghostFactories.add(GhostFactoryWithName(name.trim()));
+        
+        BatchRunner runner = new BatchRunner(map, pacmanFactories, ghostFactories, level);
+        if(args.length > 6)
+            runner.setReplayDirectory(new File(args[6]));
+        TickProfiler profiler = System.getProperty("pacman.profile") != null ? new TickProfiler() : null;
+        runner.setProfiler(profiler);
+        long start = System.currentTimeMillis();
+        BatchStatistics stats = runner.run(firstSeed, games);
+        long elapsed = System.currentTimeMillis() - start;
+        
+        stats.print(System.out);
+        if(profiler != null)
+            profiler.print(System.out);
+        System.out.println("Elapsed:      " + elapsed + " ms (" + (stats.getTotalTicks()*1000/Math.max(1, elapsed)) + " ticks/s)");
+    }
+}
@@ -0,0 +1,129 @@
+package ptp.pacman.sim;
+
+import java.io.PrintStream;
+
+/**
+ * Aggregated statistics of a batch of simulated games. Every worker fills its own instance,
+ * and they are merged at the end, so this class is not thread-safe.
+ * */
+public final class BatchStatistics
+{
+    private long mGames;
+    private long mPacmanWins, mGhostWins, mUnfinished;
+    private long mTicks, mMinTicks = Long.MAX_VALUE, mMaxTicks;
+    private long mPoints, mDeaths;
+    
+    /** Adds the result of a game.
+     * @param r The game result.
+     * */
+    public void add(GameResult r)
+    {
+        ++mGames;
+        switch(r.getWinner()) {
+        case PACMANS: ++mPacmanWins; break;
+        case GHOSTS:  ++mGhostWins; break;
+        case NONE:    ++mUnfinished; break;
+        }
+        mTicks += r.getTicks();
+        mMinTicks = Math.min(mMinTicks, r.getTicks());
+        mMaxTicks = Math.max(mMaxTicks, r.getTicks());
+        mPoints += r.getPoints();
+        mDeaths += r.getDeaths();
+    }
+    
+    /** Adds the statistics of another batch to these ones.
+     * @param s The statistics to be added.
+     * */
+    public void merge(BatchStatistics s)
+    {
+        mGames += s.mGames;
+        mPacmanWins += s.mPacmanWins;
+        mGhostWins += s.mGhostWins;
+        mUnfinished += s.mUnfinished;
+        mTicks += s.mTicks;
+        mMinTicks = Math.min(mMinTicks, s.mMinTicks);
+        mMaxTicks = Math.max(mMaxTicks, s.mMaxTicks);
+        mPoints += s.mPoints;
+        mDeaths += s.mDeaths;
+    }
+    
+    /** @return The number of games. */
+    public long getGames()
+    {
+        return mGames;
+    }
+    
+    /** @return The number of games won by the Pacmans. */
+    public long getPacmanWins()
+    {
+        return mPacmanWins;
+    }
+    
+    /** @return The number of games won by the ghosts. */
+    public long getGhostWins()
+    {
+        return mGhostWins;
+    }
+    
+    /** @return The number of games that reached the tick limit. */
+    public long getUnfinished()
+    {
+        return mUnfinished;
+    }
+    
+    /** @return The fraction of games won by the Pacmans. */
+    public double getPacmanWinRate()
+    {
+        return mGames == 0 ? 0 : (double)mPacmanWins/mGames;
+    }
+    
+    /** @return The mean number of ticks per game. */
+    public double getMeanTicks()
+    {
+        return mGames == 0 ? 0 : (double)mTicks/mGames;
+    }
+    
+    /** @return The shortest game, in ticks. */
+    public long getMinTicks()
+    {
+        return mGames == 0 ? 0 : mMinTicks;
+    }
+    
+    /** @return The longest game, in ticks. */
+    public long getMaxTicks()
+    {
+        return mMaxTicks;
+    }
+    
+    /** @return The total number of ticks simulated. */
+    public long getTotalTicks()
+    {
+        return mTicks;
+    }
+    
+    /** @return The mean points per game. */
+    public double getMeanPoints()
+    {
+        return mGames == 0 ? 0 : (double)mPoints/mGames;
+    }
+    
+    /** @return The mean Pacman deaths per game. */
+    public double getMeanDeaths()
+    {
+        return mGames == 0 ? 0 : (double)mDeaths/mGames;
+    }
+    
+    /** Prints the statistics.
+     * @param out Where to print them.
+     * */
+    public void print(PrintStream out)
+    {
+        out.println("Games:        " + mGames);
+        out.println("Pacmans win:  " + mPacmanWins + String.format(" (%.2f%%)", 100*getPacmanWinRate()));
+        out.println("Ghosts win:   " + mGhostWins);
+        out.println("Unfinished:   " + mUnfinished);
+        out.println(String.format("Ticks:        mean %.1f, min %d, max %d", getMeanTicks(), getMinTicks(), getMaxTicks()));
+        out.println(String.format("Points:       mean %.1f", getMeanPoints()));
+        out.println(String.format("Deaths:       mean %.2f", getMeanDeaths()));
+    }
+}
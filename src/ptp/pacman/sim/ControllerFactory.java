@@ -0,0 +1,18 @@
+package ptp.pacman.sim;
+
+import ptp.pacman.base.ActorController;
+import ptp.pacman.base.Game;
+
+/**
+ * Interface for objects that create a controller for every simulated game.
+ * Controllers keep per-game state, so a new one is needed for each game.
+ * */
+public interface ControllerFactory
+{
+	/** Creates a controller for the given game.
+	 * @param game The game where the controller will be used.
+	 * @param index The number of the controller in its game, starting at 1.
+	 * @return A new controller.
+	 * */
+    public ActorController create(Game game, int index);
+}
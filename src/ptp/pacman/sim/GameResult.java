@@ -0,0 +1,100 @@
+package ptp.pacman.sim;
+
+import ptp.pacman.base.Game;
+import ptp.pacman.base.Pacman;
+
+/**
+ * Immutable summary of a simulated game.
+ * */
+public final class GameResult
+{
+	/** Enumerate that defines who won a game. NONE means that the game reached the tick limit.
+	 * */
+    public static enum Winner {
+        PACMANS, GHOSTS, NONE
+    }
+    
+    private final long mSeed;
+    private final Winner mWinner;
+    private final long mTicks;
+    private final int mPoints;
+    private final int mDeaths;
+    
+    /** Constructor.
+     * @param seed The seed of the game.
+     * @param winner Who won the game.
+     * @param ticks The number of ticks that the game lasted.
+     * @param points The points of all the Pacmans.
+     * @param deaths The number of times that a Pacman died.
+     * */
+    public GameResult(long seed, Winner winner, long ticks, int points, int deaths)
+    {
+        mSeed = seed;
+        mWinner = winner;
+        mTicks = ticks;
+        mPoints = points;
+        mDeaths = deaths;
+    }
+    
+    /** Creates the result of a game that has been simulated.
+     * @param game The game, finished or not.
+     * @return The result of the game. Its winner is NONE if the game hasn't finished.
+     * */
+    public static GameResult ForGame(Game game)
+    {
+        int points = 0, deaths = 0;
+        for(Pacman p : game.getPacmans()) {
+            points += p.getPoints();
+            deaths += p.getDeaths();
+        }
+        
+        Winner winner;
+        if(!game.isFinished())
+            winner = Winner.NONE;
+        else if(game.getMap().areAllPointsEaten())
+            winner = Winner.PACMANS;
+        else
+            winner = Winner.GHOSTS;
+        
+        return new GameResult(game.getSeed(), winner, game.getTick(), points, deaths);
+    }
+    
+    /** @return The seed of the game. */
+    public long getSeed()
+    {
+        return mSeed;
+    }
+    
+    /** @return Who won the game. */
+    public Winner getWinner()
+    {
+        return mWinner;
+    }
+    
+    /** @return The number of ticks that the game lasted. */
+    public long getTicks()
+    {
+        return mTicks;
+    }
+    
+    /** @return The points of all the Pacmans. */
+    public int getPoints()
+    {
+        return mPoints;
+    }
+    
+    /** @return The number of times that a Pacman died. */
+    public int getDeaths()
+    {
+        return mDeaths;
+    }
+    
+    /** Returns a string with the result, one game per line.
+     * @return A string representation of the result.
+     * */
+    @Override
+    public String toString()
+    {
+        return mSeed + " " + mWinner + " ticks=" + mTicks + " points=" + mPoints + " deaths=" + mDeaths;
+    }
+}
@@ -0,0 +1,13 @@
+package ptp.pacman.sim;
+
+/**
+ * Interface to be implemented by classes that want to receive the result of every simulated game as soon as it finishes.
+ * Games run in parallel, so implementations have to be thread-safe.
+ * */
+public interface GameResultListener
+{
+	/** Called when a game finishes.
+	 * @param result The result of the game.
+	 * */
+    public void gameFinished(GameResult result);
+}
@@ -0,0 +1,196 @@
+package ptp.pacman.sim;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import ptp.pacman.base.Actor;
+import ptp.pacman.base.Actor.Direction;
+import ptp.pacman.base.Game;
+import ptp.pacman.base.Ghost;
+import ptp.pacman.base.InputRecorder;
+import ptp.pacman.base.Pacman;
+
+/**
+ * Log of the directions requested by every actor controller on every tick of a game, together with the
+ * game seed, map and level. As all the randomness of a game comes from its seed, that's all that is needed
+ * to replay it exactly (see Replay).
+ * Directions are stored in 4 bits per actor and tick (Pacmans first, then ghosts), and the file is
+ * compressed, so a game takes a few bytes per tick.
+ *  @see ptp.pacman.sim.Replay
+ * */
+public final class InputLog implements InputRecorder, RecordedGame
+{
+    private static final int MAGIC = 0x504D524C; // "PMRL"
+    private static final int VERSION = 1;
+
+    private final String mMapName;
+    private final int mLevel;
+    private final long mSeed;
+    private final int mPacmans, mGhosts;
+    private final int mBytesPerTick;
+    private byte [] mData;
+    private int mTicks;
+
+    private InputLog(String mapName, int level, long seed, int pacmans, int ghosts)
+    {
+        mMapName = mapName;
+        mLevel = level;
+        mSeed = seed;
+        mPacmans = pacmans;
+        mGhosts = ghosts;
+        mBytesPerTick = (pacmans + ghosts + 1)/2;
+        mData = new byte[Math.max(1, mBytesPerTick)*1024];
+    }
+
+    /** Starts recording a game. It has to be called before its first tick, once all its actors have been added.
+     * @param g The game to be recorded.
+     * @return The log, that will grow on every tick of the game.
+     * */
+    public static InputLog StartRecording(Game g)
+    {
+        if(g.getTick() != 0)
+            throw new IllegalStateException("Games have to be recorded from their first tick");
+        InputLog log = new InputLog(g.getMap().getName(), g.getLevel(), g.getSeed(),
+                g.getPacmans().size(), g.getGhosts().size());
+        g.setInputRecorder(log);
+        return log;
+    }
+
+    /** Appends the directions requested in the last tick.
+     * @see ptp.pacman.base.InputRecorder#record(Game)
+     * */
+    @Override
+    public void record(Game g)
+    {
+        if((mTicks + 1)*mBytesPerTick > mData.length) {
+            byte [] data = new byte[mData.length*2];
+            System.arraycopy(mData, 0, data, 0, mTicks*mBytesPerTick);
+            mData = data;
+        }
+        final List<Pacman> pacmans = g.getPacmans();
+        final List<Ghost> ghosts = g.getGhosts();
+        final int base = mTicks*mBytesPerTick;
+        for(int i=0; i<mPacmans; ++i)
+            setDirection(base, i, pacmans.get(i));
+        for(int i=0; i<mGhosts; ++i)
+            setDirection(base, mPacmans + i, ghosts.get(i));
+        ++mTicks;
+    }
+
+    private void setDirection(int base, int actor, Actor a)
+    {
+        final int value = a.getRequestedDirection().ordinal(),
+                  index = base + actor/2;
+        if((actor & 1) == 0)
+            mData[index] = (byte)(mData[index] & 0xF0 | value);
+        else
+            mData[index] = (byte)(mData[index] & 0x0F | value << 4);
+    }
+
+    /** @see ptp.pacman.sim.RecordedGame#getDirection(long, int)
+     * */
+    @Override
+    public Direction getDirection(long tick, int actor)
+    {
+        if(tick < 1 || tick > mTicks)
+            return Direction.STOPPED;
+        final int value = mData[(int)(tick-1)*mBytesPerTick + actor/2];
+        return Actor.DIRECTIONS[(actor & 1) == 0 ? value & 0x0F : value >> 4 & 0x0F];
+    }
+
+    /** @see ptp.pacman.sim.RecordedGame#getMapName()
+     * */
+    @Override
+    public String getMapName()
+    {
+        return mMapName;
+    }
+
+    /** @see ptp.pacman.sim.RecordedGame#getLevel()
+     * */
+    @Override
+    public int getLevel()
+    {
+        return mLevel;
+    }
+
+    /** @see ptp.pacman.sim.RecordedGame#getSeed()
+     * */
+    @Override
+    public long getSeed()
+    {
+        return mSeed;
+    }
+
+    /** @see ptp.pacman.sim.RecordedGame#getNumberOfPacmans()
+     * */
+    @Override
+    public int getNumberOfPacmans()
+    {
+        return mPacmans;
+    }
+
+    /** @see ptp.pacman.sim.RecordedGame#getNumberOfGhosts()
+     * */
+    @Override
+    public int getNumberOfGhosts()
+    {
+        return mGhosts;
+    }
+
+    /** @see ptp.pacman.sim.RecordedGame#getTicks()
+     * */
+    @Override
+    public int getTicks()
+    {
+        return mTicks;
+    }
+
+    /** Writes the log in its compressed binary form.
+     * @param out The stream where the log is written. It isn't closed.
+     * @throws IOException If the log can't be written.
+     * */
+    public void write(OutputStream out) throws IOException
+    {
+        GZIPOutputStream zip = new GZIPOutputStream(out);
+        DataOutputStream data = new DataOutputStream(zip);
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeUTF(mMapName);
+        data.writeByte(mLevel);
+        data.writeLong(mSeed);
+        data.writeShort(mPacmans);
+        data.writeShort(mGhosts);
+        data.writeInt(mTicks);
+        data.write(mData, 0, mTicks*mBytesPerTick);
+        data.flush();
+        zip.finish();
+    }
+
+    /** Reads a log written by write().
+     * @param in The stream from where the log is read. It isn't closed.
+     * @return The log.
+     * @throws IOException If the log can't be read, or it isn't a log.
+     * */
+    public static InputLog Read(InputStream in) throws IOException
+    {
+        DataInputStream data = new DataInputStream(new GZIPInputStream(in));
+        if(data.readInt() != MAGIC || data.readByte() != VERSION)
+            throw new IOException("Not an input log");
+        String mapName = data.readUTF();
+        int level = data.readByte();
+        long seed = data.readLong();
+        int pacmans = data.readShort(), ghosts = data.readShort();
+        InputLog log = new InputLog(mapName, level, seed, pacmans, ghosts);
+        log.mTicks = data.readInt();
+        log.mData = new byte[Math.max(1, log.mTicks*log.mBytesPerTick)];
+        data.readFully(log.mData, 0, log.mTicks*log.mBytesPerTick);
+        return log;
+    }
+}
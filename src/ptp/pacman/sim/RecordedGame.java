@@ -0,0 +1,36 @@
+package ptp.pacman.sim;
+
+import ptp.pacman.base.Actor.Direction;
+
+/**
+ * Interface for recorded games (input logs, replay archives...): everything that is needed to replay a game,
+ * that is, how it was created and the directions requested by its controllers on every tick.
+ *  @see ptp.pacman.sim.Replay
+ * */
+public interface RecordedGame
+{
+	/** @return The name of the map of the game. */
+    public String getMapName();
+
+	/** @return The ghost level of the game. */
+    public int getLevel();
+
+	/** @return The seed of the game. */
+    public long getSeed();
+
+	/** @return The number of Pacmans of the game. */
+    public int getNumberOfPacmans();
+
+	/** @return The number of ghosts of the game. */
+    public int getNumberOfGhosts();
+
+	/** @return The number of recorded ticks. */
+    public int getTicks();
+
+    /** Returns the direction requested by an actor in a tick.
+     * @param tick The tick, starting at 1 (as returned by Game.getTick() while the actors move).
+     * @param actor The actor: Pacmans first, then ghosts, in the order they were added to the game.
+     * @return The recorded direction, or STOPPED out of the recorded ticks.
+     * */
+    public Direction getDirection(long tick, int actor);
+}
@@ -0,0 +1,71 @@
+package ptp.pacman.sim;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import ptp.pacman.base.Game;
+
+/**
+ * Replays recorded games headless, as fast as possible. The replayed game is created with the seed, map and
+ * level of the log, and every actor is driven by a ReplayController, so it plays exactly as the original one.
+ *
+ * Usage: Replay file.replay [file2.replay ...]
+ *  @see ptp.pacman.sim.InputLog
+ *  @see ptp.pacman.sim.ReplayArchive
+ * */
+public final class Replay
+{
+    /** Extension of the replay files. */
+    public static final String EXTENSION = ".replay";
+
+    private Replay()
+    {
+    }
+
+    /** Creates a game ready to replay a recorded game, with all its actors driven by ReplayControllers.
+     * @param log The recorded game (i.e. an input log).
+     * @return The game, at tick 0.
+     * */
+    public static Game CreateGame(RecordedGame log)
+    {
+        Game game = new Game(log.getMapName(), log.getLevel(), log.getSeed());
+        for(int i=0; i<log.getNumberOfPacmans(); ++i)
+            game.addPacman(new ReplayController(game, log, i));
+        for(int i=0; i<log.getNumberOfGhosts(); ++i)
+            game.addGhost(new ReplayController(game, log, log.getNumberOfPacmans() + i));
+        return game;
+    }
+
+    /** Replays a whole game.
+     * @param log The recorded game (i.e. an input log).
+     * @return The result of the replayed game.
+     * */
+    public static GameResult Run(RecordedGame log)
+    {
+        Game game = CreateGame(log);
+        game.stepN(log.getTicks());
+        return GameResult.ForGame(game);
+    }
+
+    public static void main(String [] args) throws IOException
+    {
+        if(args.length < 1) {
+            System.err.println("Usage: Replay file.replay [file2.replay ...]");
+            System.exit(1);
+        }
+        for(String name : args) {
+            InputStream in = new FileInputStream(name);
+            InputLog log;
+            try {
+                log = InputLog.Read(in);
+            } finally {
+                in.close();
+            }
+            long start = System.nanoTime();
+            GameResult result = Run(log);
+            long elapsed = System.nanoTime() - start;
+            System.out.println(result + " (" + elapsed/1000000 + " ms)");
+        }
+    }
+}
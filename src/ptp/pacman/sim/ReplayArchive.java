@@ -0,0 +1,316 @@
+package ptp.pacman.sim;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import ptp.pacman.base.Actor;
+import ptp.pacman.base.Actor.Direction;
+import ptp.pacman.base.Game;
+import ptp.pacman.base.Pacman;
+
+/**
+ * Recorded game that can be replayed from any tick. Besides the directions requested on every tick
+ * (4 bits per actor, as in InputLog), the archive stores a full game checkpoint every few ticks (a keyframe).
+ * Seeking to a tick restores the previous keyframe and simulates the ticks after it, so it costs the same
+ * whatever the length of the game is.
+ * The file isn't compressed, and it's read through a memory-mapped buffer: opening an archive only reads its
+ * header and index (at the end of the file), and the rest of it is paged in on demand.
+ *
+ * File layout: header, inputs, keyframes, index (offset and length of every keyframe) and a footer with the
+ * index offset. All numbers are big endian.
+ *
+ * Usage: ReplayArchive pack interval file.replay [file2.replay ...]  (writes file.rpa for every log)
+ *        ReplayArchive seek file.rpa tick [tick2 ...]
+ *  @see ptp.pacman.sim.InputLog
+ *  @see ptp.pacman.base.Game#checkpoint()
+ * */
+public final class ReplayArchive implements RecordedGame
+{
+    /** Extension of the replay archives. */
+    public static final String EXTENSION = ".rpa";
+    /** Default number of ticks between keyframes (5 seconds of game). */
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 150;
+
+    private static final int MAGIC = 0x504D5241; // "PMRA"
+    private static final int VERSION = 1;
+    private static final int INDEX_ENTRY_SIZE = 12;
+    private static final int FOOTER_SIZE = 12;
+
+    private final MappedByteBuffer mBuffer;
+    private final String mMapName;
+    private final int mLevel;
+    private final long mSeed;
+    private final int mPacmans, mGhosts;
+    private final int mTicks;
+    private final int mKeyframeInterval;
+    private final int mKeyframes;
+    private final int mBytesPerTick;
+    private final int mInputsOffset;
+    private final int mIndexOffset;
+
+    private ReplayArchive(MappedByteBuffer buffer) throws IOException
+    {
+        mBuffer = buffer;
+        if(buffer.capacity() < FOOTER_SIZE || buffer.getInt(0) != MAGIC || buffer.get(4) != VERSION ||
+                buffer.getInt(buffer.capacity() - 4) != MAGIC)
+            throw new IOException("Not a replay archive");
+
+        ByteBuffer header = buffer.duplicate();
+        header.position(5);
+        byte [] name = new byte[header.getShort() & 0xFFFF];
+        header.get(name);
+        mMapName = new String(name, "UTF-8");
+        mLevel = header.get();
+        mSeed = header.getLong();
+        mPacmans = header.getShort() & 0xFFFF;
+        mGhosts = header.getShort() & 0xFFFF;
+        mTicks = header.getInt();
+        mKeyframeInterval = header.getInt();
+        mKeyframes = header.getInt();
+        mBytesPerTick = (mPacmans + mGhosts + 1)/2;
+        mInputsOffset = header.position();
+        mIndexOffset = (int)buffer.getLong(buffer.capacity() - FOOTER_SIZE);
+    }
+
+    /** Opens an archive, mapping it in memory.
+     * @param file The archive file.
+     * @return The archive, ready to be replayed.
+     * @throws IOException If the file can't be read, or it isn't an archive.
+     * */
+    public static ReplayArchive Open(File file) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            // The mapping stays valid after the file is closed
+            return new ReplayArchive(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    /** Writes an archive for a recorded game, replaying it once to take its keyframes.
+     * @param log The recorded game (i.e. an input log).
+     * @param keyframeInterval The number of ticks between keyframes. Seeking simulates up to this number of ticks.
+     * @param file The archive file.
+     * @throws IOException If the file can't be written.
+     * */
+    public static void Write(RecordedGame log, int keyframeInterval, File file) throws IOException
+    {
+        final int actors = log.getNumberOfPacmans() + log.getNumberOfGhosts(),
+                  bytesPerTick = (actors + 1)/2;
+
+        // Keyframes, one every keyframeInterval ticks starting at tick 0
+        Game game = Replay.CreateGame(log);
+        List<ByteBuffer> keyframes = new ArrayList<ByteBuffer>();
+        keyframes.add(game.checkpoint());
+        for(long tick=keyframeInterval; tick<=log.getTicks(); tick+=keyframeInterval) {
+            game.stepN(keyframeInterval);
+            keyframes.add(game.checkpoint());
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        byte [] name = log.getMapName().getBytes("UTF-8");
+        out.writeShort(name.length);
+        out.write(name);
+        out.writeByte(log.getLevel());
+        out.writeLong(log.getSeed());
+        out.writeShort(log.getNumberOfPacmans());
+        out.writeShort(log.getNumberOfGhosts());
+        out.writeInt(log.getTicks());
+        out.writeInt(keyframeInterval);
+        out.writeInt(keyframes.size());
+
+        // Inputs
+        for(int tick=1; tick<=log.getTicks(); ++tick) {
+            for(int i=0; i<bytesPerTick; ++i) {
+                int value = log.getDirection(tick, 2*i).ordinal();
+                if(2*i+1 < actors)
+                    value |= log.getDirection(tick, 2*i+1).ordinal() << 4;
+                out.writeByte(value);
+            }
+        }
+
+        // Keyframes and their index
+        long [] offsets = new long[keyframes.size()];
+        for(int i=0; i<keyframes.size(); ++i) {
+            ByteBuffer keyframe = keyframes.get(i);
+            offsets[i] = out.size();
+            out.write(keyframe.array(), keyframe.arrayOffset() + keyframe.position(), keyframe.remaining());
+        }
+        long indexOffset = out.size();
+        for(int i=0; i<keyframes.size(); ++i) {
+            out.writeLong(offsets[i]);
+            out.writeInt(keyframes.get(i).remaining());
+        }
+        out.writeLong(indexOffset);
+        out.writeInt(MAGIC);
+        out.flush();
+
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            bytes.writeTo(fos);
+        } finally {
+            fos.close();
+        }
+    }
+
+    /** Creates a game to be moved through the archive with seek().
+     * @return A new game, at tick 0.
+     * */
+    public Game createGame()
+    {
+        return Replay.CreateGame(this);
+    }
+
+    /** Moves a game to the given tick. If the tick is a bit ahead of the current one, the game is simply stepped;
+     * otherwise, the closest keyframe before the tick is restored first. Either way, at most a keyframe interval
+     * of ticks is simulated.
+     * @param game A game created with createGame().
+     * @param tick The tick to go to. It's clamped to the recorded ticks.
+     * */
+    public void seek(Game game, long tick)
+    {
+        tick = Math.max(0, Math.min(tick, mTicks));
+        final int keyframe = (int)Math.min(tick/mKeyframeInterval, mKeyframes - 1);
+        final long keyframeTick = (long)keyframe*mKeyframeInterval,
+                   current = game.getTick();
+        if(current > tick || current < keyframeTick)
+            game.restore(getKeyframe(keyframe));
+        while(game.getTick() < tick && game.step());
+    }
+
+    /** Returns a keyframe, read from the mapped file.
+     * @param i The index of the keyframe, that is the state of the game at tick i*getKeyframeInterval().
+     * @return A read-only buffer with the checkpoint, to be given to Game.restore().
+     * */
+    public ByteBuffer getKeyframe(int i)
+    {
+        final int entry = mIndexOffset + i*INDEX_ENTRY_SIZE;
+        final int offset = (int)mBuffer.getLong(entry), length = mBuffer.getInt(entry + 8);
+        ByteBuffer keyframe = mBuffer.asReadOnlyBuffer();
+        keyframe.limit(offset + length);
+        keyframe.position(offset);
+        return keyframe;
+    }
+
+    /** @return The number of ticks between keyframes. */
+    public int getKeyframeInterval()
+    {
+        return mKeyframeInterval;
+    }
+
+    /** @return The number of keyframes. */
+    public int getNumberOfKeyframes()
+    {
+        return mKeyframes;
+    }
+
+    /** @see ptp.pacman.sim.RecordedGame#getDirection(long, int)
+     * */
+    @Override
+    public Direction getDirection(long tick, int actor)
+    {
+        if(tick < 1 || tick > mTicks)
+            return Direction.STOPPED;
+        final int value = mBuffer.get(mInputsOffset + (int)(tick-1)*mBytesPerTick + actor/2);
+        return Actor.DIRECTIONS[(actor & 1) == 0 ? value & 0x0F : value >> 4 & 0x0F];
+    }
+
+    /** @see ptp.pacman.sim.RecordedGame#getMapName()
+     * */
+    @Override
+    public String getMapName()
+    {
+        return mMapName;
+    }
+
+    /** @see ptp.pacman.sim.RecordedGame#getLevel()
+     * */
+    @Override
+    public int getLevel()
+    {
+        return mLevel;
+    }
+
+    /** @see ptp.pacman.sim.RecordedGame#getSeed()
+     * */
+    @Override
+    public long getSeed()
+    {
+        return mSeed;
+    }
+
+    /** @see ptp.pacman.sim.RecordedGame#getNumberOfPacmans()
+     * */
+    @Override
+    public int getNumberOfPacmans()
+    {
+        return mPacmans;
+    }
+
+    /** @see ptp.pacman.sim.RecordedGame#getNumberOfGhosts()
+     * */
+    @Override
+    public int getNumberOfGhosts()
+    {
+        return mGhosts;
+    }
+
+    /** @see ptp.pacman.sim.RecordedGame#getTicks()
+     * */
+    @Override
+    public int getTicks()
+    {
+        return mTicks;
+    }
+
+    public static void main(String [] args) throws IOException
+    {
+        if(args.length >= 3 && args[0].equals("pack")) {
+            int interval = Integer.parseInt(args[1]);
+            for(int i=2; i<args.length; ++i) {
+                InputStream in = new FileInputStream(args[i]);
+                InputLog log;
+                try {
+                    log = InputLog.Read(in);
+                } finally {
+                    in.close();
+                }
+                String name = args[i].endsWith(Replay.EXTENSION) ?
+                        args[i].substring(0, args[i].length() - Replay.EXTENSION.length()) : args[i];
+                Write(log, interval, new File(name + EXTENSION));
+            }
+        } else if(args.length >= 3 && args[0].equals("seek")) {
+            ReplayArchive archive = Open(new File(args[1]));
+            Game game = archive.createGame();
+            for(int i=2; i<args.length; ++i) {
+                long start = System.nanoTime();
+                archive.seek(game, Long.parseLong(args[i]));
+                long elapsed = System.nanoTime() - start;
+                StringBuilder sb = new StringBuilder("tick=" + game.getTick());
+                for(Pacman p : game.getPacmans())
+                    sb.append(" pacman=").append(p.getCell().x).append(',').append(p.getCell().y)
+                      .append(" points=").append(p.getPoints());
+                System.out.println(sb + " (" + elapsed/1000 + " us)");
+            }
+        } else {
+            System.err.println("Usage: ReplayArchive pack interval file.replay [file2.replay ...]");
+            System.err.println("       ReplayArchive seek file.rpa tick [tick2 ...]");
+            System.exit(1);
+        }
+    }
+}
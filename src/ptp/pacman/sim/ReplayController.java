@@ -0,0 +1,45 @@
+package ptp.pacman.sim;
+
+import ptp.pacman.base.ActorController;
+import ptp.pacman.base.Game;
+import ptp.pacman.base.Actor.Direction;
+
+/**
+ * Controller that plays back the directions recorded for one actor of a recorded game.
+ *  @see ptp.pacman.sim.RecordedGame
+ * */
+public final class ReplayController implements ActorController
+{
+    private final Game mGame;
+    private final RecordedGame mLog;
+    private final int mActor;
+
+    /** Constructor.
+     * @param g The game being replayed.
+     * @param log The recorded game.
+     * @param actor The index of the actor in the log (Pacmans first, then ghosts).
+     * */
+    public ReplayController(Game g, RecordedGame log, int actor)
+    {
+        mGame = g;
+        mLog = log;
+        mActor = actor;
+    }
+
+    /** Returns the direction recorded for the current tick of the game.
+     * @see ptp.pacman.base.ActorController#getNextDirection()
+     * */
+    @Override
+    public Direction getNextDirection()
+    {
+        return mLog.getDirection(mGame.getTick(), mActor);
+    }
+
+    /** @see ptp.pacman.base.ActorController#getName()
+     * */
+    @Override
+    public String getName()
+    {
+        return "Replay #" + (mActor+1);
+    }
+}
@@ -0,0 +1,26 @@
+package ptp.pacman.bench;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Fails if any tick of a game, or the drawing of its snapshot, allocates a single byte after the warm-up.
+ *  @see ptp.pacman.bench.AllocationCheck
+ * */
+public class AllocationTest
+{
+    private static final int GAMES = 10;
+    private static final int WARMUP_GAMES = 20;
+
+    @Test
+    public void ticksDontAllocateAfterWarmup()
+    {
+        assumeTrue("this JVM can't count the allocated memory of a thread", AllocationCheck.IsSupported());
+        List<String> failures = AllocationCheck.Check(GAMES, WARMUP_GAMES);
+        assertTrue("ticks allocated after the warm-up: " + failures, failures.isEmpty());
+    }
+}
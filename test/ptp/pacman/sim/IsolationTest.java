@@ -0,0 +1,155 @@
+package ptp.pacman.sim;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import ptp.pacman.base.Actor;
+import ptp.pacman.base.Game;
+
+/**
+ * Checks that games running side by side don't interfere. It plays a batch of games one after another, and then
+ * creates the same games all at once and plays them in rounds on a pool of threads: in every round, every game
+ * that hasn't finished advances a few ticks, so all of them are alive and interleaved until the end. Then:
+ * - no game shares its map, navigation, controllers list, actors or actor controllers with any other one,
+ * - every game ends exactly as it did when it ran alone.
+ * The navigation graph and distance table of a map are immutable, and they are meant to be shared, so they
+ * aren't checked.
+ *  @see ptp.pacman.sim.BatchRunner
+ * */
+public class IsolationTest
+{
+    private static final String MAP = "map1.map";
+    private static final int GAMES = 10000;
+    // At least 4 threads, so that games overlap even with a single core
+    private static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+    private static final int TICKS_PER_ROUND = 16;
+    private static final int GAMES_PER_TASK = 64;
+    // Number of failures reported before the rest are only counted
+    private static final int MAX_REPORTED_FAILURES = 20;
+
+    private final List<String> mFailures = new ArrayList<String>();
+    private int mNumberOfFailures;
+
+    @Test
+    public void gamesPlayedTogetherEndAsPlayedAlone() throws InterruptedException
+    {
+        final BatchRunner runner = CreateRunner();
+        final String [] expected = new String[GAMES];
+        for(int i=0; i<GAMES; ++i)
+            expected[i] = runner.runGame(i + 1).toString();
+
+        final Game [] games = new Game[GAMES];
+        for(int i=0; i<GAMES; ++i)
+            games[i] = runner.createGame(i + 1);
+        checkNothingShared(games);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            while(playRound(pool, games, runner.getMaxTicks()))
+                ;
+        } finally {
+            pool.shutdown();
+        }
+
+        // Again, in case something was shared after the games started
+        checkNothingShared(games);
+        for(int i=0; i<GAMES; ++i) {
+            String result = GameResult.ForGame(games[i]).toString();
+            if(!result.equals(expected[i]))
+                fail("seed " + games[i].getSeed() + " played alone: " + expected[i] + ", played with others: " +
+                        result);
+        }
+        assertTrue(mNumberOfFailures + " failed checks: " + mFailures, mNumberOfFailures == 0);
+    }
+
+    private static BatchRunner CreateRunner()
+    {
+        List<ControllerFactory> pacmans = new ArrayList<ControllerFactory>();
+        pacmans.add(BatchRunner.DefaultPacmanFactory());
+        List<ControllerFactory> ghosts = new ArrayList<ControllerFactory>();
+        for(String name : new String[] {"dijkstra2", "dijkstra2", "dijkstra", "astar"})
+            ghosts.add(BatchRunner.GhostFactoryWithName(name));
+        return new BatchRunner(MAP, pacmans, ghosts, 2);
+    }
+
+    // Advances every game that hasn't ended a few ticks, on the pool. Returns if any game goes on
+    private boolean playRound(ExecutorService pool, final Game [] games, final int maxTicks)
+            throws InterruptedException
+    {
+        List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+        for(int first=0; first<games.length; first+=GAMES_PER_TASK) {
+            final int from = first, to = Math.min(games.length, first + GAMES_PER_TASK);
+            tasks.add(new Callable<Boolean>() {
+                public Boolean call()
+                {
+                    boolean playing = false;
+                    for(int i=from; i<to; ++i) {
+                        Game game = games[i];
+                        if(game.isFinished() || game.getTick() >= maxTicks)
+                            continue;
+                        game.stepN((int)Math.min(TICKS_PER_ROUND, maxTicks - game.getTick()));
+                        playing = true;
+                    }
+                    return playing;
+                }
+            });
+        }
+
+        boolean playing = false;
+        for(Future<Boolean> f : pool.invokeAll(tasks)) {
+            try {
+                playing |= f.get();
+            } catch(ExecutionException e) {
+                throw new AssertionError("a game crashed: " + e.getCause(), e.getCause());
+            }
+        }
+        return playing;
+    }
+
+    private void checkNothingShared(Game [] games)
+    {
+        IdentityHashMap<Object, Long> owners = new IdentityHashMap<Object, Long>();
+        for(Game game : games) {
+            for(Object o : ObjectsOf(game)) {
+                if(o == null)
+                    continue;
+                Long owner = owners.put(o, game.getSeed());
+                if(owner != null && owner != game.getSeed())
+                    fail("seed " + game.getSeed() + " shares a " + o.getClass().getName() + " with seed " + owner);
+            }
+        }
+    }
+
+    private static List<Object> ObjectsOf(Game game)
+    {
+        List<Object> objects = new ArrayList<Object>();
+        objects.add(game.getMap());
+        objects.add(game.getNavigation());
+        objects.add(game.getControllers());
+        for(Actor a : game.getPacmans()) {
+            objects.add(a);
+            objects.add(a.getActorController());
+        }
+        for(Actor a : game.getGhosts()) {
+            objects.add(a);
+            objects.add(a.getActorController());
+        }
+        return objects;
+    }
+
+    private void fail(String message)
+    {
+        if(++mNumberOfFailures <= MAX_REPORTED_FAILURES)
+            mFailures.add(message);
+    }
+}